@@ -0,0 +1,70 @@
+package balbucio.sms4j.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import balbucio.sms4j.at.AtChannel;
+import balbucio.sms4j.at.AtResponse;
+import balbucio.sms4j.sim.ModemSimulator;
+
+/**
+ * Round trips through {@link AtChannel} against the in-memory {@link ModemSimulator} with no latency:
+ * measures the write path, the reader thread hand-off and the parser's per-byte loop and line handling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtChannelBenchmark {
+
+    private static final String PDU = "0011000B916407281553F80000AA0AE8329BFD4697D9EC37";
+
+    private ModemSimulator simulator;
+    private AtChannel channel;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulator = new ModemSimulator();
+        simulator.setEcho(false);
+        simulator.respond("AT+CSQ", "+CSQ: 20,99", "", "OK");
+        channel = new AtChannel(simulator);
+        payload = (PDU + (char) 0x1A).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.close();
+        simulator.close();
+    }
+
+    @Benchmark
+    public AtResponse sendCommand() {
+        return channel.sendCommand("AT");
+    }
+
+    @Benchmark
+    public AtResponse sendCommandWithIntermediateLine() {
+        return channel.sendCommand("AT+CSQ");
+    }
+
+    @Benchmark
+    public AtResponse sendCommandWithPayload() {
+        return channel.sendCommandWithPayload("AT+CMGS=23", payload, 5_000L);
+    }
+}
@@ -0,0 +1,60 @@
+package balbucio.sms4j.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import balbucio.sms4j.Sms4jException;
+import balbucio.sms4j.modem.DriverRegistry;
+import balbucio.sms4j.modem.ModemDriverFactory;
+import balbucio.sms4j.modem.zte.ZteMf710Driver;
+
+/**
+ * {@link DriverRegistry#resolve(List)} with many registered models: exact hits and the "contains" fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DriverRegistryBenchmark {
+
+    @Param({"10", "1000"})
+    public int models;
+
+    private DriverRegistry registry;
+    private List<String> exactLines;
+    private List<String> containsLines;
+
+    @Setup
+    public void setUp() {
+        registry = DriverRegistry.createEmpty();
+        for (int i = 0; i < models; i++) {
+            registry.register("MODEL" + i, ZteMf710Driver::new);
+        }
+        exactLines = List.of("ATI", "MODEL" + (models / 2), "OK");
+        containsLines = List.of("Manufacturer: ACME Model: MODEL" + (models - 1) + " Revision: 1.0", "OK");
+    }
+
+    @Benchmark
+    public ModemDriverFactory resolveExact() throws Sms4jException {
+        return registry.resolve(exactLines);
+    }
+
+    @Benchmark
+    public ModemDriverFactory resolveContains() throws Sms4jException {
+        return registry.resolve(containsLines);
+    }
+}
@@ -0,0 +1,64 @@
+package balbucio.sms4j.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import balbucio.sms4j.pdu.DeliverPdu;
+import balbucio.sms4j.pdu.GsmAlphabet;
+import balbucio.sms4j.pdu.PduDecoder;
+import balbucio.sms4j.pdu.PduEncoder;
+import balbucio.sms4j.pdu.SubmitPdu;
+
+/**
+ * GSM 03.38 septet counting and PDU encoding/decoding: the CPU work done per message before the modem is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PduBenchmark {
+
+    private static final String NUMBER = "+5511999999999";
+    private static final String GSM_TEXT = "Your verification code is 482913. It expires in 10 minutes. {Do not share}";
+    private static final String UCS2_TEXT = "Seu código de verificação é 482913 — válido por 10 minutos.";
+    private static final String LONG_TEXT = GSM_TEXT.repeat(8);
+    private static final String DELIVER =
+            "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37";
+
+    @Benchmark
+    public int septetCount() {
+        return GsmAlphabet.septetCount(GSM_TEXT);
+    }
+
+    @Benchmark
+    public SubmitPdu encodeGsm7() {
+        return PduEncoder.encodeSubmit(NUMBER, GSM_TEXT);
+    }
+
+    @Benchmark
+    public SubmitPdu encodeUcs2() {
+        return PduEncoder.encodeSubmit(NUMBER, UCS2_TEXT);
+    }
+
+    @Benchmark
+    public List<SubmitPdu> encodeConcatenated() {
+        return PduEncoder.encodeSubmitParts(NUMBER, LONG_TEXT, 7, false);
+    }
+
+    @Benchmark
+    public DeliverPdu decodeDeliver() {
+        return PduDecoder.decodeDeliver(DELIVER);
+    }
+}
@@ -0,0 +1,69 @@
+package balbucio.sms4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import balbucio.sms4j.Sms4jException;
+import balbucio.sms4j.SmsSendResult;
+import balbucio.sms4j.at.AtChannel;
+import balbucio.sms4j.modem.zte.ZteMf710Driver;
+import balbucio.sms4j.sim.ModemSimulator;
+
+/**
+ * {@link ZteMf710Driver#sendSms(String, String)} end to end against the simulator: number normalization,
+ * PDU encoding, the CMGS prompt round trip and message reference extraction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZteDriverBenchmark {
+
+    private ModemSimulator simulator;
+    private AtChannel channel;
+    private ZteMf710Driver driver;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Sms4jException {
+        simulator = new ModemSimulator();
+        channel = new AtChannel(simulator);
+        driver = new ZteMf710Driver(channel);
+        driver.initialize();
+        simulator.setEcho(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.close();
+        simulator.close();
+    }
+
+    @Benchmark
+    public SmsSendResult sendInternational() {
+        return driver.sendSms("+5511999999999", "Your code is 482913");
+    }
+
+    @Benchmark
+    public SmsSendResult sendWithDoubleZeroPrefix() {
+        return driver.sendSms("005511999999999", "Your code is 482913");
+    }
+
+    @Benchmark
+    public SmsSendResult sendConcatenated() {
+        return driver.sendSms("+5511999999999", "Your code is 482913. ".repeat(12));
+    }
+}
@@ -0,0 +1,13 @@
+package balbucio.sms4j;
+
+/**
+ * What {@link Sms4j#sendSmsAsync(String, String)} does when the modem's submission queue is full.
+ */
+public enum Backpressure {
+
+    /** Fail the returned future immediately with {@link SendQueueFullException}. */
+    REJECT,
+
+    /** Block the caller until there is room in the queue (or the modem is closed). */
+    BLOCK
+}
@@ -0,0 +1,77 @@
+package balbucio.sms4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Drives a bulk send for {@link Sms4j} and {@link Sms4jPool}: pulls recipients from the iterator one at a time,
+ * renders the template and submits, keeping at most {@code window} sends queued or in flight. Memory use
+ * depends on the window, not on the number of recipients.
+ */
+final class BulkSender {
+
+    /** Most sends a bulk job keeps queued per modem, leaving queue room for other traffic. */
+    static final int MAX_WINDOW_PER_MODEM = 64;
+
+    /** Submits one rendered message; {@link Sms4j#sendSmsAsync(String, String, Priority)} or the pool's. */
+    interface Submitter {
+        CompletableFuture<SmsSendResult> submit(String phoneNumber, String message, Priority priority);
+    }
+
+    private BulkSender() {
+    }
+
+    /**
+     * Sends to every recipient and waits until the last result has gone to {@code sink}.
+     *
+     * @return number of successful sends
+     * @throws Sms4jException if interrupted; sends already submitted still complete and reach the sink
+     */
+    static long send(Iterable<Recipient> recipients, MessageTemplate template, Priority priority, int window,
+                     Submitter submitter, BiConsumer<Recipient, SmsSendResult> sink) throws Sms4jException {
+        Semaphore permits = new Semaphore(window);
+        LongAdder succeeded = new LongAdder();
+        try {
+            for (Recipient recipient : recipients) {
+                permits.acquire();
+                String message;
+                try {
+                    message = template.render(recipient);
+                } catch (IllegalArgumentException e) {
+                    permits.release();
+                    emit(sink, recipient, SmsSendResult.failure(e.getMessage(), ""));
+                    continue;
+                }
+                submitter.submit(recipient.getPhoneNumber(), message, priority).whenComplete((result, error) -> {
+                    SmsSendResult outcome = result != null ? result : SmsSendResult.failure(describe(error), "");
+                    if (outcome.isSuccess()) {
+                        succeeded.increment();
+                    }
+                    emit(sink, recipient, outcome);
+                    permits.release();
+                });
+            }
+            permits.acquire(window);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Sms4jException("Interrupted during bulk send", e);
+        }
+        return succeeded.sum();
+    }
+
+    private static String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    private static void emit(BiConsumer<Recipient, SmsSendResult> sink, Recipient recipient, SmsSendResult result) {
+        try {
+            sink.accept(recipient, result);
+        } catch (RuntimeException e) {
+            // A faulty sink must not stall the job
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package balbucio.sms4j;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Final delivery outcome of a sent message, from its status reports (+CDS).
+ * For a message sent as several segments it is the outcome of the whole message: delivered only if every
+ * segment was, failed as soon as one segment failed.
+ */
+public final class DeliveryStatus {
+
+    /**
+     * What the status reports said.
+     */
+    public enum Outcome {
+        /** The service centre delivered the message. */
+        DELIVERED,
+        /** The service centre gave up (e.g. unknown subscriber, validity period expired). */
+        FAILED,
+        /** No final report arrived within the tracking timeout. */
+        EXPIRED
+    }
+
+    private final Outcome outcome;
+    private final int statusCode;
+    private final String recipient;
+    private final OffsetDateTime dischargeTime;
+    private final long latencyMs;
+
+    DeliveryStatus(Outcome outcome, int statusCode, String recipient, OffsetDateTime dischargeTime, long latencyMs) {
+        this.outcome = outcome;
+        this.statusCode = statusCode;
+        this.recipient = recipient;
+        this.dischargeTime = dischargeTime;
+        this.latencyMs = latencyMs;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public boolean isDelivered() {
+        return outcome == Outcome.DELIVERED;
+    }
+
+    /**
+     * Returns TP-ST of the deciding report (see 3GPP TS 23.040), or -1 if {@link Outcome#EXPIRED}.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the destination number the message was sent to.
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * Returns the discharge time of the deciding report, or null if {@link Outcome#EXPIRED}.
+     */
+    public OffsetDateTime getDischargeTime() {
+        return dischargeTime;
+    }
+
+    /**
+     * Returns the time from the modem accepting the message to the deciding report, in milliseconds.
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryStatus{" + outcome + ", to=" + recipient + ", st=" + statusCode + ", latencyMs=" + latencyMs
+                + "}";
+    }
+}
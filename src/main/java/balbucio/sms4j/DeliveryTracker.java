@@ -0,0 +1,357 @@
+package balbucio.sms4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import balbucio.sms4j.at.Urc;
+import balbucio.sms4j.at.UrcListener;
+import balbucio.sms4j.pdu.PduDecoder;
+import balbucio.sms4j.pdu.StatusReportPdu;
+
+/**
+ * Matches status reports (+CDS) to sent messages and completes their {@link DeliveryStatus} futures.
+ * <p>
+ * The index has one slot per TP-MR value (0-255), each holding at most {@value #MAX_PER_SLOT} segments oldest
+ * first. After the 8-bit reference wraps, a slot can hold several sends with the same MR; a report matches the
+ * oldest one with the same recipient. Segments with no final report within the timeout, or pushed out of a full
+ * slot, complete as {@link DeliveryStatus.Outcome#EXPIRED}, so the index never holds more than 256 x
+ * {@value #MAX_PER_SLOT} segments. Reports that arrive before their send is registered (the +CDS can overtake
+ * the +CMGS response) are kept briefly and matched on registration.
+ * <p>
+ * Reports are decoded and futures completed on a dedicated thread, never on the serial reader thread.
+ */
+final class DeliveryTracker implements UrcListener {
+
+    private static final int SLOTS = 256;
+    private static final int MAX_PER_SLOT = 8;
+    private static final int MAX_ORPHANS = 64;
+    private static final long ORPHAN_TTL_MS = 60_000L;
+    private static final long SWEEP_INTERVAL_MS = 1_000L;
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
+
+    private final long timeoutMs;
+    private final List<ArrayDeque<Segment>> slots = new ArrayList<>(SLOTS);
+    private final ArrayDeque<Segment> byAge = new ArrayDeque<>();
+    private final ArrayDeque<Orphan> orphans = new ArrayDeque<>();
+    private final ScheduledExecutorService executor;
+
+    private int tracked;
+    private long delivered;
+    private long undelivered;
+    private double averageLatencyMs;
+
+    /**
+     * @param threadName name of the thread that handles reports and expiry
+     * @param timeoutMs  how long to wait for a final report before completing as expired
+     */
+    DeliveryTracker(String threadName, long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        for (int i = 0; i < SLOTS; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> evictExpired(System.currentTimeMillis()),
+                SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onUrc(Urc urc) {
+        if (!"+CDS".equals(urc.getName()) || urc.getData() == null) {
+            return;
+        }
+        String pdu = urc.getData();
+        try {
+            executor.execute(() -> {
+                StatusReportPdu report;
+                try {
+                    report = PduDecoder.decodeStatusReport(pdu);
+                } catch (IllegalArgumentException e) {
+                    return;
+                }
+                onReport(report, System.currentTimeMillis());
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing
+        }
+    }
+
+    /**
+     * Starts tracking a message sent as the given segments.
+     *
+     * @param recipient destination number
+     * @param refs      TP-MR of each segment, as returned by +CMGS
+     * @return future completed with the delivery outcome
+     */
+    CompletableFuture<DeliveryStatus> track(String recipient, List<String> refs, long nowMs) {
+        List<Runnable> completions = new ArrayList<>();
+        Message message = new Message(recipient, nowMs);
+        synchronized (this) {
+            evictExpired(nowMs, completions);
+            for (String ref : refs) {
+                int mr = parseReference(ref);
+                if (mr < 0) {
+                    continue;
+                }
+                Segment segment = new Segment(message, mr, nowMs);
+                message.segments.add(segment);
+                ArrayDeque<Segment> slot = slots.get(mr);
+                if (slot.size() >= MAX_PER_SLOT) {
+                    Segment oldest = slot.pollFirst();
+                    expire(oldest, nowMs, completions);
+                }
+                slot.addLast(segment);
+                byAge.addLast(segment);
+                tracked++;
+            }
+            message.remaining = message.segments.size();
+            for (Segment segment : new ArrayList<>(message.segments)) {
+                Orphan orphan = takeOrphan(segment.mr, recipient, nowMs);
+                if (orphan != null && !segment.done) {
+                    slots.get(segment.mr).remove(segment);
+                    apply(segment, orphan.report, orphan.receivedAtMs, completions);
+                }
+            }
+            compactAgeQueue();
+        }
+        completions.forEach(Runnable::run);
+        if (message.segments.isEmpty()) {
+            message.future.completeExceptionally(new Sms4jException("Modem returned no message reference"));
+        }
+        return message.future;
+    }
+
+    /**
+     * Applies a status report. Reports that say the service centre is still trying are ignored.
+     */
+    void onReport(StatusReportPdu report, long nowMs) {
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (this) {
+            evictExpired(nowMs, completions);
+            if (report.isFinal()) {
+                Segment match = null;
+                for (Segment segment : slots.get(report.getMessageReference())) {
+                    if (!segment.done && sameNumber(segment.message.recipient, report.getRecipient())) {
+                        match = segment;
+                        break;
+                    }
+                }
+                if (match != null) {
+                    slots.get(match.mr).remove(match);
+                    apply(match, report, nowMs, completions);
+                } else {
+                    if (orphans.size() >= MAX_ORPHANS) {
+                        orphans.pollFirst();
+                    }
+                    orphans.addLast(new Orphan(report, nowMs));
+                }
+            }
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    /**
+     * Completes as expired every segment tracked for longer than the timeout.
+     */
+    void evictExpired(long nowMs) {
+        List<Runnable> completions = new ArrayList<>();
+        synchronized (this) {
+            evictExpired(nowMs, completions);
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    synchronized int size() {
+        return tracked;
+    }
+
+    synchronized long delivered() {
+        return delivered;
+    }
+
+    /**
+     * Returns messages that failed or expired.
+     */
+    synchronized long undelivered() {
+        return undelivered;
+    }
+
+    synchronized double averageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    /**
+     * Stops the report thread. Messages still tracked are left incomplete.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    private void evictExpired(long nowMs, List<Runnable> completions) {
+        Segment head;
+        while ((head = byAge.peekFirst()) != null) {
+            if (!head.done && nowMs - head.trackedAtMs < timeoutMs) {
+                break;
+            }
+            byAge.pollFirst();
+            if (!head.done) {
+                slots.get(head.mr).remove(head);
+                expire(head, nowMs, completions);
+            }
+        }
+        while (!orphans.isEmpty() && nowMs - orphans.peekFirst().receivedAtMs > ORPHAN_TTL_MS) {
+            orphans.pollFirst();
+        }
+    }
+
+    /**
+     * Drops finished segments stuck behind an older pending one, so the age queue stays bounded too.
+     */
+    private void compactAgeQueue() {
+        if (byAge.size() > 2 * SLOTS * MAX_PER_SLOT) {
+            byAge.removeIf(segment -> segment.done);
+        }
+    }
+
+    private void expire(Segment segment, long nowMs, List<Runnable> completions) {
+        segment.done = true;
+        tracked--;
+        if (!segment.message.done) {
+            finish(segment.message, new DeliveryStatus(DeliveryStatus.Outcome.EXPIRED, -1,
+                    segment.message.recipient, null, nowMs - segment.message.trackedAtMs), completions);
+        }
+    }
+
+    private void apply(Segment segment, StatusReportPdu report, long receivedAtMs, List<Runnable> completions) {
+        segment.done = true;
+        tracked--;
+        Message message = segment.message;
+        if (message.done) {
+            return;
+        }
+        long latencyMs = Math.max(0, receivedAtMs - message.trackedAtMs);
+        if (!report.isDelivered()) {
+            finish(message, new DeliveryStatus(DeliveryStatus.Outcome.FAILED, report.getStatus(), message.recipient,
+                    report.getDischargeTime(), latencyMs), completions);
+        } else if (--message.remaining == 0) {
+            finish(message, new DeliveryStatus(DeliveryStatus.Outcome.DELIVERED, report.getStatus(),
+                    message.recipient, report.getDischargeTime(), latencyMs), completions);
+        }
+    }
+
+    private void finish(Message message, DeliveryStatus status, List<Runnable> completions) {
+        message.done = true;
+        for (Segment other : message.segments) {
+            if (!other.done) {
+                other.done = true;
+                tracked--;
+                slots.get(other.mr).remove(other);
+            }
+        }
+        if (status.isDelivered()) {
+            delivered++;
+            averageLatencyMs = averageLatencyMs == 0 ? status.getLatencyMs()
+                    : averageLatencyMs + LATENCY_EWMA_WEIGHT * (status.getLatencyMs() - averageLatencyMs);
+        } else {
+            undelivered++;
+        }
+        completions.add(() -> message.future.complete(status));
+    }
+
+    private Orphan takeOrphan(int mr, String recipient, long nowMs) {
+        Iterator<Orphan> it = orphans.iterator();
+        while (it.hasNext()) {
+            Orphan orphan = it.next();
+            if (orphan.report.getMessageReference() == mr && sameNumber(recipient, orphan.report.getRecipient())
+                    && nowMs - orphan.receivedAtMs <= ORPHAN_TTL_MS) {
+                it.remove();
+                return orphan;
+            }
+        }
+        return null;
+    }
+
+    private static int parseReference(String ref) {
+        try {
+            return Integer.parseInt(ref.trim()) & 0xFF;
+        } catch (NumberFormatException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Compares digits only, allowing one side to lack the country code (reports may use national format).
+     */
+    static boolean sameNumber(String a, String b) {
+        String x = digits(a);
+        String y = digits(b);
+        if (x.isEmpty() || y.isEmpty()) {
+            return true;
+        }
+        return x.endsWith(y) || y.endsWith(x);
+    }
+
+    private static String digits(String number) {
+        if (number == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Message {
+
+        final String recipient;
+        final long trackedAtMs;
+        final List<Segment> segments = new ArrayList<>(1);
+        final CompletableFuture<DeliveryStatus> future = new CompletableFuture<>();
+        int remaining;
+        boolean done;
+
+        Message(String recipient, long trackedAtMs) {
+            this.recipient = recipient;
+            this.trackedAtMs = trackedAtMs;
+        }
+    }
+
+    private static final class Segment {
+
+        final Message message;
+        final int mr;
+        final long trackedAtMs;
+        boolean done;
+
+        Segment(Message message, int mr, long trackedAtMs) {
+            this.message = message;
+            this.mr = mr;
+            this.trackedAtMs = trackedAtMs;
+        }
+    }
+
+    private static final class Orphan {
+
+        final StatusReportPdu report;
+        final long receivedAtMs;
+
+        Orphan(StatusReportPdu report, long receivedAtMs) {
+            this.report = report;
+            this.receivedAtMs = receivedAtMs;
+        }
+    }
+}
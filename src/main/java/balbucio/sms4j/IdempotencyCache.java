@@ -0,0 +1,258 @@
+package balbucio.sms4j;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers recent sends so that a repeated one gets the original result instead of another round trip to the
+ * modem. Set it with {@link Sms4j#setIdempotencyCache(IdempotencyCache)} or
+ * {@link Sms4jPool#setIdempotencyCache(IdempotencyCache)}. Sends are keyed by the caller's request id if given,
+ * else by number and body, reduced to a 64-bit hash.
+ * <p>
+ * A duplicate arriving while the first send is queued or in flight gets the same pending future; one arriving
+ * later gets the completed result, until the entry expires. Failed or rejected sends are forgotten as soon as
+ * they complete, so a retry is sent again.
+ * <p>
+ * Storage is allocated up front and holds no per-entry objects besides the futures: an open-addressing table of
+ * {@code long} keys pointing into a ring of entries in insertion order. With one time-to-live for all entries,
+ * insertion order is expiry order, so expired entries are dropped from the head of the ring, and when the ring
+ * is full the oldest entry makes room. Thread-safe; operations take a short lock.
+ */
+public final class IdempotencyCache {
+
+    private static final long EMPTY = 0L;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final long[] tableKeys;
+    private final int[] tableEntries;
+    private final int mask;
+    private final long[] entryKeys;
+    private final long[] entryExpires;
+    private final CompletableFuture<?>[] entryFutures;
+    private int head;
+    private int count;
+    private int live;
+    private long hits;
+
+    /**
+     * @param capacity most sends remembered at once; the oldest is forgotten first
+     * @param ttlMs    how long a send is remembered
+     */
+    public IdempotencyCache(int capacity, long ttlMs) {
+        if (capacity <= 0 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^28: " + capacity);
+        }
+        if (ttlMs <= 0) {
+            throw new IllegalArgumentException("ttlMs must be positive: " + ttlMs);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        // At most half full, so probe sequences stay short
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        this.tableKeys = new long[tableSize];
+        this.tableEntries = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.entryKeys = new long[capacity];
+        this.entryExpires = new long[capacity];
+        this.entryFutures = new CompletableFuture<?>[capacity];
+    }
+
+    /**
+     * Returns the number of sends currently remembered, including expired ones not yet dropped.
+     */
+    public synchronized int size() {
+        return live;
+    }
+
+    /**
+     * Returns how many sends were answered from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Forgets every send.
+     */
+    public synchronized void clear() {
+        Arrays.fill(tableKeys, EMPTY);
+        Arrays.fill(entryFutures, null);
+        head = 0;
+        count = 0;
+        live = 0;
+    }
+
+    /**
+     * Returns the key of a caller-supplied request id.
+     */
+    static long keyOf(String requestId) {
+        return finish(hash(0x6A09E667F3BCC909L, requestId));
+    }
+
+    /**
+     * Returns the key of a send without request id: number and body. The number is keyed in its E.164 form, so
+     * "+55 11 99999-9999" and "005511999999999" are the same send; an invalid one is keyed as given. A null number
+     * or body is keyed as empty, so the send itself reports it.
+     */
+    static long keyOf(String phoneNumber, String message) {
+        String number;
+        try {
+            number = PhoneNumber.parse(phoneNumber).toString();
+        } catch (IllegalArgumentException e) {
+            number = phoneNumber == null ? "" : phoneNumber;
+        }
+        long h = hash(0xBB67AE8584CAA73BL, number);
+        return finish(hash(h * 0x100000001B3L, message == null ? "" : message));
+    }
+
+    /**
+     * Returns the remembered future for {@code key}, or remembers and returns the one {@code send} starts.
+     */
+    CompletableFuture<SmsSendResult> dedupe(long key, Supplier<CompletableFuture<SmsSendResult>> send) {
+        CompletableFuture<SmsSendResult> placeholder = new CompletableFuture<>();
+        CompletableFuture<SmsSendResult> existing = putIfAbsent(key, placeholder, System.nanoTime());
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<SmsSendResult> started;
+        try {
+            started = send.get();
+        } catch (RuntimeException e) {
+            remove(key, placeholder);
+            throw e;
+        }
+        started.whenComplete((result, error) -> {
+            if (error != null || !result.isSuccess()) {
+                // Forget first, so a retry triggered by this completion is sent
+                remove(key, placeholder);
+            }
+            if (error != null) {
+                placeholder.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                placeholder.complete(result);
+            }
+        });
+        return placeholder;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized CompletableFuture<SmsSendResult> putIfAbsent(long key, CompletableFuture<SmsSendResult> future,
+                                                              long nowNanos) {
+        dropExpired(nowNanos);
+        int slot = find(key);
+        if (slot >= 0) {
+            int entry = tableEntries[slot];
+            if (entryExpires[entry] - nowNanos > 0) {
+                hits++;
+                return (CompletableFuture<SmsSendResult>) entryFutures[entry];
+            }
+            entryFutures[entry] = null;
+            live--;
+            deleteSlot(slot);
+        }
+        if (count == capacity) {
+            dropHead();
+        }
+        int entry = (head + count) % capacity;
+        count++;
+        entryKeys[entry] = key;
+        entryExpires[entry] = nowNanos + ttlNanos;
+        entryFutures[entry] = future;
+        live++;
+        insert(key, entry);
+        return null;
+    }
+
+    /**
+     * Forgets {@code key} if it still maps to {@code future}.
+     */
+    synchronized void remove(long key, CompletableFuture<SmsSendResult> future) {
+        int slot = find(key);
+        if (slot >= 0 && entryFutures[tableEntries[slot]] == future) {
+            entryFutures[tableEntries[slot]] = null;
+            live--;
+            deleteSlot(slot);
+        }
+    }
+
+    /**
+     * Drops expired entries and removed ones (failed sends) from the head of the ring.
+     */
+    private void dropExpired(long nowNanos) {
+        while (count > 0 && (entryFutures[head] == null || entryExpires[head] - nowNanos <= 0)) {
+            dropHead();
+        }
+    }
+
+    private void dropHead() {
+        if (entryFutures[head] != null) {
+            entryFutures[head] = null;
+            live--;
+            int slot = find(entryKeys[head]);
+            if (slot >= 0 && tableEntries[slot] == head) {
+                deleteSlot(slot);
+            }
+        }
+        head = (head + 1) % capacity;
+        count--;
+    }
+
+    private int find(long key) {
+        for (int slot = (int) key & mask; tableKeys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (tableKeys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long key, int entry) {
+        int slot = (int) key & mask;
+        while (tableKeys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableEntries[slot] = entry;
+    }
+
+    /**
+     * Linear-probing delete: shifts later keys of the same probe run back so lookups need no tombstones.
+     */
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & mask; tableKeys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = (int) tableKeys[next] & mask;
+            // Move the key into the hole unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                tableKeys[hole] = tableKeys[next];
+                tableEntries[hole] = tableEntries[next];
+                hole = next;
+            }
+        }
+        tableKeys[hole] = EMPTY;
+    }
+
+    private static long hash(long seed, String s) {
+        long h = seed;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return h ^ s.length();
+    }
+
+    /**
+     * Spreads the bits (SplitMix64 finalizer) so the low bits index the table well; never returns the empty key.
+     */
+    private static long finish(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return h == EMPTY ? 1 : h;
+    }
+}
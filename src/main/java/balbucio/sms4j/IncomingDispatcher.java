@@ -0,0 +1,96 @@
+package balbucio.sms4j;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import balbucio.sms4j.at.Urc;
+import balbucio.sms4j.at.UrcListener;
+import balbucio.sms4j.modem.ModemDriver;
+
+/**
+ * Turns +CMT and +CMTI codes into {@link IncomingSms} callbacks on one dedicated thread.
+ * <p>
+ * The reader thread only hands work off: +CMT PDUs are decoded on the incoming thread, and a burst of +CMTI
+ * codes schedules a single {@link ModemDriver#fetchStoredMessages()} that reads and deletes them all.
+ */
+final class IncomingDispatcher implements UrcListener {
+
+    private final ModemDriver driver;
+    private final List<Consumer<IncomingSms>> listeners;
+    private final ExecutorService executor;
+    private final AtomicBoolean fetchScheduled = new AtomicBoolean();
+
+    IncomingDispatcher(String threadName, ModemDriver driver, List<Consumer<IncomingSms>> listeners) {
+        this.driver = driver;
+        this.listeners = listeners;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void onUrc(Urc urc) {
+        if ("+CMT".equals(urc.getName()) && urc.getData() != null) {
+            String pdu = urc.getData();
+            execute(() -> {
+                IncomingSms sms;
+                try {
+                    sms = IncomingSms.fromPdu(pdu);
+                } catch (IllegalArgumentException e) {
+                    return;
+                }
+                deliver(sms);
+            });
+        } else if ("+CMTI".equals(urc.getName())) {
+            scheduleFetch();
+        }
+    }
+
+    /**
+     * Schedules a read of the modem's storage unless one is already waiting to run.
+     */
+    void scheduleFetch() {
+        if (fetchScheduled.compareAndSet(false, true)) {
+            execute(this::fetch);
+        }
+    }
+
+    /**
+     * Stops the incoming thread after the task it is running, if any.
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    private void fetch() {
+        // Clear first: a +CMTI arriving during the read schedules another pass
+        fetchScheduled.set(false);
+        for (IncomingSms sms : driver.fetchStoredMessages()) {
+            deliver(sms);
+        }
+    }
+
+    private void deliver(IncomingSms sms) {
+        for (Consumer<IncomingSms> listener : listeners) {
+            try {
+                listener.accept(sms);
+            } catch (RuntimeException e) {
+                // A failing listener must not stop delivery to the others
+            }
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closing
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package balbucio.sms4j;
+
+import java.time.OffsetDateTime;
+
+import balbucio.sms4j.pdu.DeliverPdu;
+import balbucio.sms4j.pdu.PduDecoder;
+
+/**
+ * SMS received by the modem, as passed to {@link Sms4j#onIncoming(java.util.function.Consumer)}.
+ * Segments of a concatenated message arrive as separate messages; {@link #getUserDataHeader()} carries their
+ * concatenation header.
+ */
+public final class IncomingSms {
+
+    private final String originator;
+    private final String text;
+    private final OffsetDateTime timestamp;
+    private final String serviceCenter;
+    private final byte[] userDataHeader;
+
+    public IncomingSms(String originator, String text, OffsetDateTime timestamp, String serviceCenter,
+                       byte[] userDataHeader) {
+        this.originator = originator;
+        this.text = text;
+        this.timestamp = timestamp;
+        this.serviceCenter = serviceCenter;
+        this.userDataHeader = userDataHeader;
+    }
+
+    /**
+     * Decodes an SMS-DELIVER PDU as reported by +CMT or AT+CMGL in PDU mode.
+     *
+     * @throws IllegalArgumentException if the PDU is malformed or not an SMS-DELIVER
+     */
+    public static IncomingSms fromPdu(String hex) {
+        DeliverPdu pdu = PduDecoder.decodeDeliver(hex);
+        return new IncomingSms(pdu.getOriginator(), pdu.getText(), pdu.getTimestamp(), pdu.getServiceCenter(),
+                pdu.getUserDataHeader());
+    }
+
+    /**
+     * Returns the sender: a number ("+" for international format) or an alphanumeric name.
+     */
+    public String getOriginator() {
+        return originator;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the service centre time stamp.
+     */
+    public OffsetDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the service centre address, or null if the modem did not report it.
+     */
+    public String getServiceCenter() {
+        return serviceCenter;
+    }
+
+    /**
+     * Returns the user data header without its length octet (e.g. concatenation info), or null if absent.
+     */
+    public byte[] getUserDataHeader() {
+        return userDataHeader;
+    }
+
+    @Override
+    public String toString() {
+        return "IncomingSms{from=" + originator + ", at=" + timestamp + ", text=" + text + "}";
+    }
+}
@@ -0,0 +1,104 @@
+package balbucio.sms4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Message text with {@code {name}} placeholders, parsed once and filled in per {@link Recipient}
+ * (e.g. {@code "Hi {name}, your code is {code}"}). Two opening braces stand for a literal one. Immutable and
+ * thread-safe.
+ */
+public final class MessageTemplate {
+
+    private final String source;
+    /** Literal text before each variable, then the text after the last one: variables.length + 1 entries. */
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+
+    private MessageTemplate(String source, String[] literals, String[] variables) {
+        this.source = source;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @throws IllegalArgumentException if a placeholder is not closed or has an empty name
+     */
+    public static MessageTemplate compile(String template) {
+        if (template == null) {
+            throw new IllegalArgumentException("template must not be null");
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c != '{') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            if (template.startsWith("{{", i)) {
+                literal.append('{');
+                i += 2;
+                continue;
+            }
+            int close = template.indexOf('}', i + 1);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + i + ": " + template);
+            }
+            String name = template.substring(i + 1, close).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty placeholder at " + i + ": " + template);
+            }
+            literals.add(literal.toString());
+            variables.add(name);
+            literal.setLength(0);
+            i = close + 1;
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(template, literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the message for {@code recipient}.
+     *
+     * @throws IllegalArgumentException if the recipient has no value for a placeholder
+     */
+    public String render(Recipient recipient) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+        StringBuilder sb = new StringBuilder(literalLength + 16 * variables.length);
+        for (int i = 0; i < variables.length; i++) {
+            sb.append(literals[i]);
+            String value = recipient.get(variables[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for {" + variables[i] + "} for " + recipient);
+            }
+            sb.append(value);
+        }
+        return sb.append(literals[variables.length]).toString();
+    }
+
+    /**
+     * Returns the placeholder names in order of appearance.
+     */
+    public List<String> getVariables() {
+        return List.of(variables);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
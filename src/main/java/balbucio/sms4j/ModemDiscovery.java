@@ -0,0 +1,249 @@
+package balbucio.sms4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import balbucio.sms4j.at.AtChannel;
+import balbucio.sms4j.modem.DriverRegistry;
+import balbucio.sms4j.modem.ModemDriverFactory;
+import balbucio.sms4j.modem.ModemProfile;
+import balbucio.sms4j.serial.SerialConnectionFactory;
+import balbucio.sms4j.serial.SerialPortAccess;
+import balbucio.sms4j.serial.SerialPortInfo;
+
+/**
+ * Finds the modems attached to this machine: lists the serial ports, skips the diagnostic, NMEA and similar
+ * interfaces that composite USB modems expose next to the AT port, and probes the rest in parallel (AT, ATI,
+ * AT+CGSN) with short timeouts. Configure with the setters, then call {@link #discover()};
+ * {@link Sms4j#discover()} uses the defaults.
+ */
+public final class ModemDiscovery {
+
+    /** Skips ports whose name or description mentions a diagnostic, NMEA/GPS, download or Bluetooth interface. */
+    public static final Predicate<SerialPortInfo> DEFAULT_PORT_FILTER = port -> {
+        String text = (port.getName() + " " + port.getDescription()).toLowerCase(Locale.ROOT);
+        for (String marker : new String[] {"diag", "nmea", "gps", "gnss", "qdloader", "qcdm", "dm port", "sahara",
+                "bluetooth"}) {
+            if (text.contains(marker)) {
+                return false;
+            }
+        }
+        return true;
+    };
+
+    private static final long DEFAULT_PROBE_TIMEOUT_MS = 1000L;
+    private static final int MAX_PARALLEL_PROBES = 64;
+    /** Slack on top of the command timeouts for opening and closing a port. */
+    private static final long PORT_OPEN_ALLOWANCE_MS = 5000L;
+
+    private Supplier<List<SerialPortInfo>> portLister = SerialPortInfo::listSystemPorts;
+    private Predicate<SerialPortInfo> portFilter = DEFAULT_PORT_FILTER;
+    private SerialConnectionFactory connectionFactory = SerialConnectionFactory.system();
+    private DriverRegistry registry = DriverRegistry.getDefault();
+    private long probeTimeoutMs = DEFAULT_PROBE_TIMEOUT_MS;
+
+    /**
+     * Sets where candidate ports come from (default: every port jSerialComm lists).
+     */
+    public void setPortLister(Supplier<List<SerialPortInfo>> portLister) {
+        this.portLister = portLister != null ? portLister : SerialPortInfo::listSystemPorts;
+    }
+
+    /**
+     * Sets which ports are probed (default {@link #DEFAULT_PORT_FILTER}).
+     */
+    public void setPortFilter(Predicate<SerialPortInfo> portFilter) {
+        this.portFilter = portFilter != null ? portFilter : DEFAULT_PORT_FILTER;
+    }
+
+    /**
+     * Sets how ports are opened, both for probing and by the returned instances.
+     */
+    public void setConnectionFactory(SerialConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory != null ? connectionFactory : SerialConnectionFactory.system();
+    }
+
+    /**
+     * Sets the registry that maps ATI answers to drivers (default {@link DriverRegistry#getDefault()}).
+     */
+    public void setRegistry(DriverRegistry registry) {
+        this.registry = registry != null ? registry : DriverRegistry.getDefault();
+    }
+
+    /**
+     * Sets how long each probe command may take (default one second).
+     *
+     * @param probeTimeoutMs timeout per command, must be positive
+     */
+    public void setProbeTimeoutMs(long probeTimeoutMs) {
+        if (probeTimeoutMs <= 0) {
+            throw new IllegalArgumentException("probeTimeoutMs must be positive: " + probeTimeoutMs);
+        }
+        this.probeTimeoutMs = probeTimeoutMs;
+    }
+
+    /**
+     * Probes every candidate port at once and returns one instance per modem with a registered driver, keyed by
+     * IMEI (or by port name if the modem does not report one). The instances are not open yet, so they can be
+     * configured first; their driver is already resolved, so {@link Sms4j#open()} skips the AT/ATI probe.
+     * When a modem answers on several ports, the port that sorts first is kept, comparing numbers in port names by
+     * value (ttyUSB2 before ttyUSB10, COM3 before COM10).
+     *
+     * @return modems by IMEI, in port name order; empty if none was found
+     */
+    public Map<String, Sms4j> discover() {
+        List<SerialPortInfo> candidates = new ArrayList<>();
+        for (SerialPortInfo port : portLister.get()) {
+            if (portFilter.test(port)) {
+                candidates.add(port);
+            }
+        }
+        candidates.sort(Comparator.comparing(SerialPortInfo::getName, ModemDiscovery::comparePortNames));
+        Map<String, Sms4j> modems = new LinkedHashMap<>();
+        if (candidates.isEmpty()) {
+            return modems;
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(candidates.size(), MAX_PARALLEL_PROBES),
+                r -> {
+                    Thread thread = new Thread(r, "sms4j-discover-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<Future<Probe>> probes = new ArrayList<>(candidates.size());
+            for (SerialPortInfo port : candidates) {
+                probes.add(executor.submit(() -> probe(port.getName())));
+            }
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(3 * probeTimeoutMs + PORT_OPEN_ALLOWANCE_MS);
+            for (Future<Probe> future : probes) {
+                Probe probe = await(future, deadline);
+                if (probe != null) {
+                    modems.putIfAbsent(probe.imei != null ? probe.imei : probe.portName,
+                            new Sms4j(probe.portName, probe.driverFactory, registry, connectionFactory));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return modems;
+    }
+
+    /**
+     * Opens one port, identifies the modem and closes the port again. Returns null if no supported modem answers.
+     */
+    private Probe probe(String portName) {
+        SerialPortAccess connection;
+        try {
+            connection = connectionFactory.open(portName);
+        } catch (Sms4jException | RuntimeException e) {
+            return null;
+        }
+        AtChannel channel = new AtChannel(connection);
+        try {
+            ModemDriverFactory factory = registry.probe(channel, probeTimeoutMs);
+            String imei = ModemProfile.parseImei(channel.sendCommand("AT+CGSN", probeTimeoutMs));
+            return new Probe(portName, factory, imei);
+        } catch (Sms4jException | RuntimeException e) {
+            return null;
+        } finally {
+            channel.close();
+            connection.close();
+        }
+    }
+
+    /**
+     * Compares port names with runs of digits compared by value, so ttyUSB2 sorts before ttyUSB10.
+     */
+    static int comparePortNames(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                int startA = i;
+                int startB = j;
+                while (i < a.length() && Character.isDigit(a.charAt(i))) {
+                    i++;
+                }
+                while (j < b.length() && Character.isDigit(b.charAt(j))) {
+                    j++;
+                }
+                int diff = compareDigits(a.substring(startA, i), b.substring(startB, j));
+                if (diff != 0) {
+                    return diff;
+                }
+            } else {
+                if (ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+        int diff = (a.length() - i) - (b.length() - j);
+        return diff != 0 ? diff : a.compareTo(b);
+    }
+
+    /**
+     * Compares two digit strings by value; leading zeros only break ties.
+     */
+    private static int compareDigits(String a, String b) {
+        String x = stripLeadingZeros(a);
+        String y = stripLeadingZeros(b);
+        if (x.length() != y.length()) {
+            return x.length() - y.length();
+        }
+        return x.compareTo(y);
+    }
+
+    private static String stripLeadingZeros(String digits) {
+        int start = 0;
+        while (start < digits.length() - 1 && digits.charAt(start) == '0') {
+            start++;
+        }
+        return digits.substring(start);
+    }
+
+    private static Probe await(Future<Probe> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            future.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return null;
+        }
+    }
+
+    private static final class Probe {
+
+        final String portName;
+        final ModemDriverFactory driverFactory;
+        final String imei;
+
+        Probe(String portName, ModemDriverFactory driverFactory, String imei) {
+            this.portName = portName;
+            this.driverFactory = driverFactory;
+            this.imei = imei;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package balbucio.sms4j;
+
+/**
+ * Snapshot of one modem's send counters, as returned by {@link Sms4j#getStats()} and {@link Sms4jPool#getStats()}.
+ */
+public final class ModemStats {
+
+    private final String portName;
+    private final boolean healthy;
+    private final int pendingSends;
+    private final long sent;
+    private final long failed;
+    private final double averageLatencyMs;
+    private final double throughputPerSecond;
+    private final long delivered;
+    private final long undelivered;
+    private final double averageDeliveryLatencyMs;
+
+    ModemStats(String portName, boolean healthy, int pendingSends, long sent, long failed,
+               double averageLatencyMs, double throughputPerSecond, long delivered, long undelivered,
+               double averageDeliveryLatencyMs) {
+        this.portName = portName;
+        this.healthy = healthy;
+        this.pendingSends = pendingSends;
+        this.sent = sent;
+        this.failed = failed;
+        this.averageLatencyMs = averageLatencyMs;
+        this.throughputPerSecond = throughputPerSecond;
+        this.delivered = delivered;
+        this.undelivered = undelivered;
+        this.averageDeliveryLatencyMs = averageDeliveryLatencyMs;
+    }
+
+    ModemStats withHealthy(boolean healthy) {
+        return new ModemStats(portName, healthy, pendingSends, sent, failed, averageLatencyMs, throughputPerSecond,
+                delivered, undelivered, averageDeliveryLatencyMs);
+    }
+
+    public String getPortName() {
+        return portName;
+    }
+
+    /**
+     * Returns whether the modem is open, not reconnecting, and (in a pool) in rotation.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Returns the number of sends queued or in flight.
+     */
+    public int getPendingSends() {
+        return pendingSends;
+    }
+
+    /**
+     * Returns the number of successful sends since open.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Returns the number of failed sends since open.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Returns the moving average of the time the modem took per send (excluding queueing), in milliseconds.
+     */
+    public double getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    /**
+     * Returns completed sends per second over the last few seconds.
+     */
+    public double getThroughputPerSecond() {
+        return throughputPerSecond;
+    }
+
+    /**
+     * Returns the number of messages confirmed delivered by a status report since open (0 without reports).
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Returns the number of messages whose status report said failed, or that got no report in time.
+     */
+    public long getUndelivered() {
+        return undelivered;
+    }
+
+    /**
+     * Returns undelivered / (delivered + undelivered), or 0 if no outcome is known yet.
+     */
+    public double getDeliveryFailureRate() {
+        long total = delivered + undelivered;
+        return total == 0 ? 0 : (double) undelivered / total;
+    }
+
+    /**
+     * Returns the moving average of the time from the modem accepting a message to its delivery report.
+     */
+    public double getAverageDeliveryLatencyMs() {
+        return averageDeliveryLatencyMs;
+    }
+
+    @Override
+    public String toString() {
+        return portName + " healthy=" + healthy + " pending=" + pendingSends + " sent=" + sent + " failed=" + failed
+                + " latencyMs=" + String.format("%.1f", averageLatencyMs)
+                + " throughput=" + String.format("%.2f/s", throughputPerSecond)
+                + " delivered=" + delivered + " undelivered=" + undelivered
+                + " deliveryLatencyMs=" + String.format("%.0f", averageDeliveryLatencyMs);
+    }
+}
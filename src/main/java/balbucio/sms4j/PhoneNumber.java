@@ -0,0 +1,212 @@
+package balbucio.sms4j;
+
+/**
+ * Destination number validated as E.164: a known country code followed by the national number, at most
+ * 15 digits. Stored as the digits in one {@code long} plus the E.164 string sent to the modem.
+ * <p>
+ * {@link #parse(String)} reads the text in one pass. It accepts a leading "+" or "00" international prefix (a bare
+ * digit string is taken as international too), and spaces, dashes, dots and parentheses between digits. It
+ * rejects anything else, unknown country codes and lengths that cannot be valid, so a bad number fails before it
+ * costs a modem round trip. Recently parsed strings are cached, so repeated recipients parse without allocating.
+ */
+public final class PhoneNumber {
+
+    private static final int MIN_DIGITS = 7;
+    private static final int MAX_DIGITS = 15;
+    private static final long[] POW10 = new long[MAX_DIGITS + 1];
+    /** Assigned ITU-T E.164 country codes (ranges include a few spare codes). Prefix-free, 1 to 3 digits. */
+    private static final String COUNTRY_CODES = "1,7,20,27,30-34,36,39,40,41,43-49,51-58,60-66,81,82,84,86,90-95,98,"
+            + "211-218,220-258,260-269,290-299,350-359,370-389,420-429,500-509,590-599,670-692,800,808,850-856,"
+            + "870-888,960-979,990-998";
+    /** National number length (min, max) for codes whose numbering plan has a fixed length, by country code. */
+    private static final int[][] NATIONAL_LENGTHS = {
+            {1, 10, 10}, {7, 10, 10}, {33, 9, 9}, {34, 9, 9}, {44, 9, 10}, {52, 10, 10}, {55, 10, 11},
+            {61, 9, 9}, {86, 9, 11}, {91, 10, 10}};
+    private static final boolean[] KNOWN_CODES = new boolean[1000];
+    private static final byte[] MIN_NATIONAL = new byte[1000];
+    private static final byte[] MAX_NATIONAL = new byte[1000];
+    private static final int CACHE_SIZE = 256;
+    private static final CacheEntry[] CACHE = new CacheEntry[CACHE_SIZE];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        for (String part : COUNTRY_CODES.split(",")) {
+            int dash = part.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? part : part.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(part.substring(dash + 1));
+            for (int code = from; code <= to; code++) {
+                KNOWN_CODES[code] = true;
+            }
+        }
+        for (int[] lengths : NATIONAL_LENGTHS) {
+            MIN_NATIONAL[lengths[0]] = (byte) lengths[1];
+            MAX_NATIONAL[lengths[0]] = (byte) lengths[2];
+        }
+    }
+
+    private final long digits;
+    private final byte length;
+    private final short countryCode;
+    private final String e164;
+
+    private PhoneNumber(long digits, int length, int countryCode) {
+        this.digits = digits;
+        this.length = (byte) length;
+        this.countryCode = (short) countryCode;
+        this.e164 = "+" + digits;
+    }
+
+    /**
+     * Parses and validates a number such as "+55 11 99999-9999" or "0044 20 7946 0958".
+     *
+     * @throws IllegalArgumentException with the reason, if the number is not a valid E.164 number
+     */
+    public static PhoneNumber parse(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("Phone number is null");
+        }
+        int slot = slot(text);
+        CacheEntry cached = CACHE[slot];
+        if (cached != null && cached.text.equals(text)) {
+            return cached.number;
+        }
+        PhoneNumber number = parseUncached(text);
+        CACHE[slot] = new CacheEntry(text, number);
+        if (!text.equals(number.e164)) {
+            // The normalized form is what gets queued and parsed again at send time
+            CACHE[slot(number.e164)] = new CacheEntry(number.e164, number);
+        }
+        return number;
+    }
+
+    private static int slot(String text) {
+        int h = text.hashCode();
+        return (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Returns whether {@code text} parses; see {@link #parse(String)}.
+     */
+    public static boolean isValid(String text) {
+        try {
+            parse(text);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static PhoneNumber parseUncached(String text) {
+        int i = 0;
+        int end = text.length();
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        if (i < end && text.charAt(i) == '+') {
+            i++;
+        } else if (i + 1 < end && text.charAt(i) == '0' && text.charAt(i + 1) == '0') {
+            i += 2;
+        }
+        long value = 0;
+        int count = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (count == 0 && c == '0') {
+                    throw new IllegalArgumentException("Invalid phone number (no country code): " + text);
+                }
+                if (++count > MAX_DIGITS) {
+                    throw new IllegalArgumentException("Invalid phone number (more than 15 digits): " + text);
+                }
+                value = value * 10 + (c - '0');
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')' && !Character.isWhitespace(c)) {
+                throw new IllegalArgumentException("Invalid phone number (character '" + c + "'): " + text);
+            }
+        }
+        if (count < MIN_DIGITS) {
+            throw new IllegalArgumentException("Invalid phone number (too short): " + text);
+        }
+        int countryCode = countryCode(value, count);
+        if (countryCode < 0) {
+            throw new IllegalArgumentException("Invalid phone number (unknown country code): " + text);
+        }
+        int national = count - (countryCode < 10 ? 1 : countryCode < 100 ? 2 : 3);
+        if (MIN_NATIONAL[countryCode] != 0
+                && (national < MIN_NATIONAL[countryCode] || national > MAX_NATIONAL[countryCode])) {
+            throw new IllegalArgumentException("Invalid phone number (wrong length for +" + countryCode + "): "
+                    + text);
+        }
+        return new PhoneNumber(value, count, countryCode);
+    }
+
+    /**
+     * Returns the country code the digits start with, or -1 if none is known. Codes are prefix-free, so the
+     * first match is the only one.
+     */
+    private static int countryCode(long value, int count) {
+        for (int width = 1; width <= 3; width++) {
+            int code = (int) (value / POW10[count - width]);
+            if (KNOWN_CODES[code]) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the country calling code, e.g. 55 for Brazil.
+     */
+    public int getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * Returns the national significant number: the digits after the country code.
+     */
+    public String getNationalNumber() {
+        int ccDigits = countryCode < 10 ? 1 : countryCode < 100 ? 2 : 3;
+        return e164.substring(1 + ccDigits);
+    }
+
+    /**
+     * Returns the number of digits, country code included.
+     */
+    public int getDigitCount() {
+        return length;
+    }
+
+    /**
+     * Returns the E.164 form, e.g. "+5511999999999".
+     */
+    @Override
+    public String toString() {
+        return e164;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PhoneNumber && ((PhoneNumber) o).digits == digits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(digits);
+    }
+
+    /**
+     * Direct-mapped cache slot. Immutable, so a racing reader sees either the old or the new entry whole.
+     */
+    private static final class CacheEntry {
+
+        final String text;
+        final PhoneNumber number;
+
+        CacheEntry(String text, PhoneNumber number) {
+            this.text = text;
+            this.number = number;
+        }
+    }
+}
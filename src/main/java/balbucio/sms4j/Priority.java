@@ -0,0 +1,18 @@
+package balbucio.sms4j;
+
+/**
+ * Priority class of a send. Each modem keeps one queue lane per class and always starts the most urgent send
+ * next, counting time already waited (see {@link Sms4j#setPriorityAgingMs(long)}) so lower classes are never
+ * starved. A send that has started is never interrupted.
+ */
+public enum Priority {
+
+    /** Time-critical messages such as one-time passwords. */
+    HIGH,
+
+    /** Default for {@link Sms4j#sendSmsAsync(String, String)}. */
+    NORMAL,
+
+    /** Bulk and marketing traffic. */
+    LOW
+}
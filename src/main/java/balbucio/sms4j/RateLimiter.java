@@ -0,0 +1,98 @@
+package balbucio.sms4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets for one SIM: up to three budgets (per second, minute and day), each refilled continuously at
+ * budget per window and starting full. One token is one SMS segment, and a send takes one token per segment from
+ * every bucket, so bursts are capped by the shortest window and sustained volume by the longest. A message with more
+ * segments than a bucket holds waits for that bucket to be full and leaves it in debt. Times are
+ * {@link System#nanoTime()} values passed in.
+ */
+final class RateLimiter {
+
+    private static final long[] WINDOW_NANOS = {
+            TimeUnit.SECONDS.toNanos(1), TimeUnit.MINUTES.toNanos(1), TimeUnit.DAYS.toNanos(1)};
+
+    private final int[] budgets;
+    private final double[] tokens = new double[WINDOW_NANOS.length];
+    private long refilledAt;
+
+    /**
+     * @param perSecond SMS (segments) per second, or 0 for no limit
+     * @param perMinute SMS (segments) per minute, or 0 for no limit
+     * @param perDay    SMS (segments) per day, or 0 for no limit
+     */
+    RateLimiter(int perSecond, int perMinute, int perDay, long nowNanos) {
+        if (perSecond < 0 || perMinute < 0 || perDay < 0) {
+            throw new IllegalArgumentException(
+                    "Budgets must not be negative: " + perSecond + ", " + perMinute + ", " + perDay);
+        }
+        this.budgets = new int[] {perSecond, perMinute, perDay};
+        for (int i = 0; i < budgets.length; i++) {
+            tokens[i] = budgets[i];
+        }
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes one token from every bucket if all have one and returns 0; otherwise takes nothing and returns how
+     * many nanoseconds until they will.
+     */
+    synchronized long tryAcquire(long nowNanos) {
+        return tryAcquire(nowNanos, 1);
+    }
+
+    /**
+     * Takes {@code permits} tokens (one send of that many segments) from every bucket if all have them, or are
+     * full when {@code permits} exceeds their budget, and returns 0; otherwise takes nothing and returns how many
+     * nanoseconds until they will.
+     */
+    synchronized long tryAcquire(long nowNanos, int permits) {
+        refill(nowNanos);
+        double wait = 0;
+        for (int i = 0; i < budgets.length; i++) {
+            double needed = Math.min(permits, budgets[i]);
+            if (budgets[i] > 0 && tokens[i] < needed) {
+                wait = Math.max(wait, (needed - tokens[i]) * WINDOW_NANOS[i] / budgets[i]);
+            }
+        }
+        long waitNanos = (long) Math.ceil(wait);
+        if (waitNanos == 0) {
+            for (int i = 0; i < budgets.length; i++) {
+                if (budgets[i] > 0) {
+                    tokens[i] -= permits;
+                }
+            }
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Returns nanoseconds until {@code permits} tokens are available in every bucket, 0 if they are now.
+     * Used to estimate how long a send waits for budget behind the segments queued before it.
+     */
+    synchronized long nanosUntil(int permits, long nowNanos) {
+        refill(nowNanos);
+        double wait = 0;
+        for (int i = 0; i < budgets.length; i++) {
+            if (budgets[i] > 0 && tokens[i] < permits) {
+                wait = Math.max(wait, (permits - tokens[i]) * WINDOW_NANOS[i] / budgets[i]);
+            }
+        }
+        return (long) Math.ceil(wait);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - refilledAt;
+        if (elapsed <= 0) {
+            return;
+        }
+        refilledAt = nowNanos;
+        for (int i = 0; i < budgets.length; i++) {
+            if (budgets[i] > 0) {
+                tokens[i] = Math.min(budgets[i], tokens[i] + (double) elapsed * budgets[i] / WINDOW_NANOS[i]);
+            }
+        }
+    }
+}
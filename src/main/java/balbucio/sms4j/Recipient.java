@@ -0,0 +1,48 @@
+package balbucio.sms4j;
+
+import java.util.Map;
+
+/**
+ * One destination of a {@link Sms4j#sendBulk bulk send}: the number and the values filled into the
+ * {@link MessageTemplate} for it.
+ */
+public final class Recipient {
+
+    private final String phoneNumber;
+    private final Map<String, String> variables;
+
+    /**
+     * @param phoneNumber destination number
+     * @param variables   template values by name; not copied, so a row object can be wrapped without copying
+     */
+    public Recipient(String phoneNumber, Map<String, String> variables) {
+        if (phoneNumber == null) {
+            throw new IllegalArgumentException("phoneNumber must not be null");
+        }
+        this.phoneNumber = phoneNumber;
+        this.variables = variables != null ? variables : Map.of();
+    }
+
+    /**
+     * Creates a recipient without template values.
+     */
+    public Recipient(String phoneNumber) {
+        this(phoneNumber, null);
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    /**
+     * Returns the value of a template variable, or null if not set.
+     */
+    public String get(String name) {
+        return variables.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return phoneNumber;
+    }
+}
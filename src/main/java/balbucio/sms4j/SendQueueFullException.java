@@ -0,0 +1,11 @@
+package balbucio.sms4j;
+
+/**
+ * Thrown (as the cause of a failed future) when a send is rejected because the modem's submission queue is full.
+ */
+public class SendQueueFullException extends Sms4jException {
+
+    public SendQueueFullException(String message) {
+        super(message);
+    }
+}
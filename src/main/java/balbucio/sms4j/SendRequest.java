@@ -0,0 +1,63 @@
+package balbucio.sms4j;
+
+import java.util.concurrent.CompletableFuture;
+
+import balbucio.sms4j.pdu.PduEncoder;
+
+/**
+ * One queued send: destination, body, priority and the future handed back to the caller.
+ */
+final class SendRequest {
+
+    private final String phoneNumber;
+    private final String message;
+    private final CompletableFuture<SmsSendResult> future = new CompletableFuture<>();
+    private final long enqueuedNanos = System.nanoTime();
+    private final Priority priority;
+    private final int segments;
+
+    SendRequest(String phoneNumber, String message) {
+        this(phoneNumber, message, Priority.NORMAL);
+    }
+
+    /**
+     * @param priority queue lane; null means {@link Priority#NORMAL}
+     */
+    SendRequest(String phoneNumber, String message, Priority priority) {
+        this.phoneNumber = phoneNumber;
+        this.message = message;
+        this.priority = priority != null ? priority : Priority.NORMAL;
+        this.segments = segmentsOf(message);
+    }
+
+    /**
+     * Returns how many SMS segments {@code message} goes out as, the unit of the rate limit; 1 for null.
+     */
+    static int segmentsOf(String message) {
+        return message != null ? PduEncoder.segmentCount(message) : 1;
+    }
+
+    String phoneNumber() {
+        return phoneNumber;
+    }
+
+    String message() {
+        return message;
+    }
+
+    CompletableFuture<SmsSendResult> future() {
+        return future;
+    }
+
+    long enqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    Priority priority() {
+        return priority;
+    }
+
+    int segments() {
+        return segments;
+    }
+}
@@ -0,0 +1,271 @@
+package balbucio.sms4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Bounded submission queue in front of one modem, drained by a single worker thread.
+ * The worker is the only thread that talks to the driver, so callers never wait on the radio.
+ * <p>
+ * The queue has one FIFO lane per {@link Priority}, sharing the capacity. Between sends the worker takes the lane
+ * head with the lowest {@code priority - waited / aging}, so a send that has waited one aging period counts as
+ * one class more urgent; ties go to the higher class. Only lane heads are compared, since they waited longest.
+ * A send whose future the caller cancels while it is queued is dropped when its turn comes.
+ */
+final class SendWorker {
+
+    static final long DEFAULT_AGING_MS = 10_000L;
+
+    private final Function<SendRequest, SmsSendResult> sender;
+    private final int capacity;
+    private final Backpressure backpressure;
+    private final long agingNanos;
+    private final List<ArrayDeque<SendRequest>> lanes;
+    /** SMS segments queued in each lane, for rate limit estimates. */
+    private final int[] laneSegments = new int[Priority.values().length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final Thread thread;
+
+    private boolean accepting = true;
+    private boolean stopped;
+    private int queued;
+    private SendRequest inFlight;
+
+    /**
+     * @param name         worker thread name
+     * @param sender       performs one send on the modem (called on the worker thread only)
+     * @param capacity     maximum number of queued (not yet started) sends
+     * @param backpressure behaviour when the queue is full
+     */
+    SendWorker(String name, Function<SendRequest, SmsSendResult> sender, int capacity, Backpressure backpressure) {
+        this(name, sender, capacity, backpressure, DEFAULT_AGING_MS);
+    }
+
+    /**
+     * @param agingMs how long a queued send waits before it competes with the next class up
+     */
+    SendWorker(String name, Function<SendRequest, SmsSendResult> sender, int capacity, Backpressure backpressure,
+               long agingMs) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (agingMs <= 0) {
+            throw new IllegalArgumentException("agingMs must be positive: " + agingMs);
+        }
+        this.sender = sender;
+        this.capacity = capacity;
+        this.backpressure = backpressure != null ? backpressure : Backpressure.REJECT;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMs);
+        this.lanes = new ArrayList<>(Priority.values().length);
+        for (int i = 0; i < Priority.values().length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a send. Never blocks with {@link Backpressure#REJECT}; with {@link Backpressure#BLOCK} waits for room.
+     *
+     * @return future completed by the worker, or already failed if rejected
+     */
+    CompletableFuture<SmsSendResult> submit(SendRequest request) {
+        lock.lock();
+        try {
+            while (accepting && queued >= capacity) {
+                if (backpressure == Backpressure.REJECT) {
+                    request.future().completeExceptionally(
+                            new SendQueueFullException("Send queue full (" + capacity + " pending)"));
+                    return request.future();
+                }
+                notFull.awaitUninterruptibly();
+            }
+            if (!accepting) {
+                request.future().completeExceptionally(new Sms4jException("Modem closed"));
+                return request.future();
+            }
+            enqueue(request);
+        } finally {
+            lock.unlock();
+        }
+        return request.future();
+    }
+
+    /**
+     * Queues a send ignoring the capacity, for replaying journaled sends when the modem opens.
+     */
+    CompletableFuture<SmsSendResult> submitUnbounded(SendRequest request) {
+        lock.lock();
+        try {
+            if (!accepting) {
+                request.future().completeExceptionally(new Sms4jException("Modem closed"));
+                return request.future();
+            }
+            enqueue(request);
+        } finally {
+            lock.unlock();
+        }
+        return request.future();
+    }
+
+    /**
+     * Returns the number of sends waiting in the queue plus the one in flight, if any.
+     */
+    int pending() {
+        lock.lock();
+        try {
+            return queued + (inFlight != null ? 1 : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of sends a new send of {@code priority} would likely wait for: the one in flight plus
+     * those queued in its lane and the more urgent ones.
+     */
+    int pendingAhead(Priority priority) {
+        lock.lock();
+        try {
+            int ahead = inFlight != null ? 1 : 0;
+            for (int i = 0; i <= priority.ordinal(); i++) {
+                ahead += lanes.get(i).size();
+            }
+            return ahead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #pendingAhead(Priority)}, counting SMS segments instead of sends.
+     */
+    int segmentsAhead(Priority priority) {
+        lock.lock();
+        try {
+            int ahead = inFlight != null ? inFlight.segments() : 0;
+            for (int i = 0; i <= priority.ordinal(); i++) {
+                ahead += laneSegments[i];
+            }
+            return ahead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting sends and lets the worker finish the queue, waiting at most {@code drainTimeoutMs}.
+     * Sends still queued after that fail with {@link Sms4jException}; the one in flight is left to finish.
+     */
+    void close(long drainTimeoutMs) {
+        lock.lock();
+        try {
+            accepting = false;
+            notFull.signalAll();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, drainTimeoutMs));
+            while ((queued > 0 || inFlight != null) && remaining > 0) {
+                try {
+                    remaining = drained.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            stopped = true;
+            for (ArrayDeque<SendRequest> lane : lanes) {
+                SendRequest left;
+                while ((left = lane.pollFirst()) != null) {
+                    left.future().completeExceptionally(new Sms4jException("Modem closed before send"));
+                }
+            }
+            queued = 0;
+            Arrays.fill(laneSegments, 0);
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            SendRequest request;
+            lock.lock();
+            try {
+                while (queued == 0 && !stopped) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (stopped) {
+                    return;
+                }
+                request = takeNext(System.nanoTime());
+                inFlight = request;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (!request.future().isDone()) {
+                    request.future().complete(sender.apply(request));
+                }
+            } catch (RuntimeException e) {
+                request.future().completeExceptionally(e);
+            } finally {
+                lock.lock();
+                try {
+                    inFlight = null;
+                    if (queued == 0) {
+                        drained.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called with {@code lock} held.
+     */
+    private void enqueue(SendRequest request) {
+        lanes.get(request.priority().ordinal()).addLast(request);
+        laneSegments[request.priority().ordinal()] += request.segments();
+        queued++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes and returns the most urgent lane head, counting aging. Must be called with {@code lock} held and
+     * at least one send queued.
+     */
+    private SendRequest takeNext(long nowNanos) {
+        int best = -1;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < lanes.size(); i++) {
+            SendRequest head = lanes.get(i).peekFirst();
+            if (head == null) {
+                continue;
+            }
+            double score = i - (double) (nowNanos - head.enqueuedNanos()) / agingNanos;
+            if (score < bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        queued--;
+        SendRequest next = lanes.get(best).pollFirst();
+        laneSegments[best] -= next.segments();
+        return next;
+    }
+}
@@ -1,26 +1,97 @@
 package balbucio.sms4j;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import balbucio.sms4j.at.AdaptiveTimeouts;
 import balbucio.sms4j.at.AtChannel;
+import balbucio.sms4j.at.AtTrace;
+import balbucio.sms4j.metrics.Sms4jMetrics;
 import balbucio.sms4j.modem.DriverRegistry;
 import balbucio.sms4j.modem.ModemDriver;
 import balbucio.sms4j.modem.ModemDriverFactory;
-import balbucio.sms4j.serial.SerialConnection;
+import balbucio.sms4j.modem.ModemProfile;
+import balbucio.sms4j.modem.ModemProfileCache;
+import balbucio.sms4j.outbox.Outbox;
+import balbucio.sms4j.outbox.OutboxEntry;
+import balbucio.sms4j.serial.SerialConnectionFactory;
+import balbucio.sms4j.serial.SerialPortAccess;
 
 /**
  * Main API: one instance manages one modem on the given serial port.
  * The driver can be selected automatically (AT + ATI probe) or set manually.
  * Call {@link #open()} before {@link #sendSms(String, String)}, then {@link #close()} when done.
+ * <p>
+ * Sends go through a bounded per-modem queue drained by one worker thread;
+ * {@link #sendSmsAsync(String, String)} returns immediately with a future. The queue has one lane per
+ * {@link Priority}, so urgent sends overtake queued bulk traffic.
+ * Received messages are delivered to the listeners registered with {@link #onIncoming(Consumer)}.
+ * With an {@link Outbox} set, every send is journaled first and unfinished sends are replayed on the next open.
+ * With {@link #setAutoReconnect(boolean)}, a modem that drops off the bus is reopened in the background while
+ * sends keep queueing. {@link #setRateLimit(int, int, int)} paces sends to what the carrier tolerates.
  */
 public class Sms4j {
 
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final long DEFAULT_DRAIN_TIMEOUT_MS = 30_000L;
+    private static final double LATENCY_EWMA_WEIGHT = 0.2;
+    private static final long DEFAULT_DELIVERY_REPORT_TIMEOUT_MS = 3_600_000L;
+    private static final long DEFAULT_RECONNECT_INITIAL_BACKOFF_MS = 500L;
+    private static final long DEFAULT_RECONNECT_MAX_BACKOFF_MS = 30_000L;
+    /** Commands in a row without a byte from the modem after which the link is considered lost. */
+    private static final int LINK_FAILURE_THRESHOLD = 3;
+    private static final long RECONNECT_STOP_TIMEOUT_MS = 5000L;
+    private static final long HEALTH_CHECK_TIMEOUT_MS = 1000L;
+
     private final String portName;
     private final ModemDriverFactory explicitDriverFactory;
     private final DriverRegistry registry;
+    private final SerialConnectionFactory connectionFactory;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private volatile ThroughputMeter throughput = new ThroughputMeter();
+    private volatile double averageLatencyMs;
 
-    private SerialConnection connection;
-    private AtChannel atChannel;
-    private ModemDriver driver;
-    private boolean open;
+    private volatile SerialPortAccess connection;
+    private volatile AtChannel atChannel;
+    private volatile ModemDriver driver;
+    private volatile SendWorker worker;
+    private volatile boolean open;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private Backpressure backpressure = Backpressure.REJECT;
+    private long priorityAgingMs = SendWorker.DEFAULT_AGING_MS;
+    private volatile Outbox outbox;
+    private final List<Consumer<IncomingSms>> incomingListeners = new CopyOnWriteArrayList<>();
+    private IncomingDispatcher incoming;
+    private boolean deliveryReports;
+    private long deliveryReportTimeoutMs = DEFAULT_DELIVERY_REPORT_TIMEOUT_MS;
+    private volatile DeliveryTracker deliveryTracker;
+    private volatile Sms4jMetrics metrics = Sms4jMetrics.NOOP;
+    private volatile AtTrace trace;
+    private volatile Consumer<String> traceOnFailure;
+    private volatile ModemProfileCache profiles = new ModemProfileCache();
+    private volatile RateLimiter rateLimiter;
+    private volatile IdempotencyCache idempotency;
+    private volatile boolean autoReconnect;
+    private volatile long reconnectInitialBackoffMs = DEFAULT_RECONNECT_INITIAL_BACKOFF_MS;
+    private volatile long reconnectMaxBackoffMs = DEFAULT_RECONNECT_MAX_BACKOFF_MS;
+    private volatile AdaptiveTimeouts adaptiveTimeouts;
+    /** Set when a health check after a timeout went unanswered, cleared by one that is answered. */
+    private volatile boolean unresponsive;
+    private final Object linkLock = new Object();
+    /** True while the link is lost and being reopened; guarded by {@code linkLock}. */
+    private boolean linkDown;
+    /** Thread reopening the link, if any; guarded by {@code linkLock}. */
+    private Thread reconnector;
 
     /**
      * Creates an SMS4J instance for the given port. On {@link #open()}, the modem is probed (AT then ATI)
@@ -52,14 +123,40 @@ public class Sms4j {
      * @param registry registry used when auto-detecting (ignored if driverFactory is non-null)
      */
     public Sms4j(String portName, ModemDriverFactory driverFactory, DriverRegistry registry) {
+        this(portName, driverFactory, registry, SerialConnectionFactory.system());
+    }
+
+    /**
+     * Creates an SMS4J instance that opens its port through the given factory (e.g. a simulator or test double).
+     *
+     * @param portName          port name passed to the factory
+     * @param driverFactory     optional factory; if null, driver is auto-detected via registry
+     * @param registry          registry used when auto-detecting (ignored if driverFactory is non-null)
+     * @param connectionFactory opens the serial connection on {@link #open()}
+     */
+    public Sms4j(String portName, ModemDriverFactory driverFactory, DriverRegistry registry,
+                 SerialConnectionFactory connectionFactory) {
         this.portName = portName;
         this.explicitDriverFactory = driverFactory;
         this.registry = registry != null ? registry : DriverRegistry.getDefault();
+        this.connectionFactory = connectionFactory != null ? connectionFactory : SerialConnectionFactory.system();
     }
 
     /**
-     * Opens the port and initializes the modem. If no driver was set explicitly, sends AT then ATI to detect
-     * the model and selects the driver from the registry; then initializes the driver.
+     * Finds every supported modem on this machine, probing all serial ports in parallel and skipping diagnostic
+     * and NMEA interfaces. See {@link ModemDiscovery} to change the filter, timeouts or registry.
+     *
+     * @return unopened instances keyed by IMEI, with their driver already resolved
+     */
+    public static Map<String, Sms4j> discover() {
+        return new ModemDiscovery().discover();
+    }
+
+    /**
+     * Opens the port and initializes the modem. If the modem was opened on this port before (see
+     * {@link #setProfileCache(ModemProfileCache)}), the driver only verifies it and repairs lost settings.
+     * Otherwise, if no driver was set explicitly, sends AT then ATI to detect the model and selects the driver
+     * from the registry; then initializes the driver.
      *
      * @throws PortInUseException if the port cannot be opened
      * @throws Sms4jException     if the port is not found, probe fails, or modem init fails
@@ -68,32 +165,117 @@ public class Sms4j {
         if (open) {
             return;
         }
-        connection = new SerialConnection(portName);
-        connection.open();
-        atChannel = new AtChannel(connection);
-
-        if (explicitDriverFactory != null) {
-            driver = explicitDriverFactory.create(atChannel);
-        } else {
-            ModemDriverFactory factory = registry.probe(atChannel);
-            driver = factory.create(atChannel);
+        deliveryTracker = null;
+        synchronized (linkLock) {
+            linkDown = false;
+        }
+        SerialPortAccess opened = connectionFactory.open(portName);
+        try {
+            connect(opened);
+            if (deliveryReports) {
+                startDeliveryReports();
+            }
+        } catch (Sms4jException | RuntimeException e) {
+            close(0);
+            throw e;
         }
 
-        driver.initialize();
+        sentCount.reset();
+        failedCount.reset();
+        throughput = new ThroughputMeter();
+        averageLatencyMs = 0;
+        worker = new SendWorker("sms4j-send-" + portName, this::dispatch, queueCapacity, backpressure,
+                priorityAgingMs);
         open = true;
+        replayOutbox();
+        if (!incomingListeners.isEmpty()) {
+            try {
+                startIncoming();
+            } catch (Sms4jException e) {
+                close(0);
+                throw e;
+            }
+        }
     }
 
     /**
-     * Closes the serial port and releases resources. Safe to call if already closed.
+     * Builds the channel and driver on a freshly opened port: resumes through the cached profile, or probes (unless
+     * a driver was set) and initializes from scratch.
+     */
+    private void connect(SerialPortAccess opened) throws Sms4jException {
+        connection = opened;
+        AtChannel channel = new AtChannel(opened);
+        channel.setMetrics(metrics);
+        channel.setTrace(trace);
+        channel.setAdaptiveTimeouts(adaptiveTimeouts);
+        atChannel = channel;
+        ModemDriver resolved = resumeFromProfile();
+        if (resolved == null) {
+            ModemDriverFactory factory = explicitDriverFactory != null ? explicitDriverFactory
+                    : registry.probe(channel);
+            resolved = factory.create(channel);
+            ModemProfile profile = new ModemProfile(portName, factory);
+            resolved.initialize(profile);
+            ModemProfileCache cache = profiles;
+            if (cache != null) {
+                cache.put(profile);
+            }
+        }
+        driver = resolved;
+        unresponsive = false;
+        if (autoReconnect) {
+            channel.setDisconnectListener(() -> linkLost(channel));
+            opened.setDisconnectListener(() -> linkLost(channel));
+        }
+    }
+
+    /**
+     * Returns a driver brought back through the cached profile for this port, or null to probe from scratch.
+     */
+    private ModemDriver resumeFromProfile() {
+        ModemProfileCache cache = profiles;
+        ModemProfile profile = cache != null ? cache.get(portName) : null;
+        if (profile == null) {
+            return null;
+        }
+        ModemDriverFactory factory = explicitDriverFactory != null ? explicitDriverFactory
+                : profile.getDriverFactory();
+        ModemDriver resumed = factory.create(atChannel);
+        if (resumed.resume(profile)) {
+            return resumed;
+        }
+        cache.invalidate(portName);
+        return null;
+    }
+
+    /**
+     * Closes the modem, first waiting up to 30 seconds for queued sends to finish.
+     * Safe to call if already closed.
      */
     public void close() {
-        if (connection != null) {
-            connection.close();
-            connection = null;
+        close(DEFAULT_DRAIN_TIMEOUT_MS);
+    }
+
+    /**
+     * Stops accepting sends, waits up to {@code drainTimeoutMs} for queued sends to finish (sends still queued
+     * after that fail), then closes the serial port and releases resources. Safe to call if already closed.
+     *
+     * @param drainTimeoutMs maximum time to wait for the queue to drain; 0 to fail queued sends immediately
+     */
+    public void close(long drainTimeoutMs) {
+        open = false;
+        stopReconnector();
+        stopIncoming();
+        if (worker != null) {
+            worker.close(drainTimeoutMs);
+            worker = null;
+        }
+        closeLink();
+        DeliveryTracker tracker = deliveryTracker;
+        if (tracker != null) {
+            tracker.close();
         }
-        atChannel = null;
         driver = null;
-        open = false;
     }
 
     public boolean isOpen() {
@@ -101,18 +283,733 @@ public class Sms4j {
     }
 
     /**
-     * Sends an SMS. Phone number should be in international format (e.g. +5511999999999).
+     * Returns whether the modem is open but lost its port and is reconnecting; sends wait until it is back.
+     */
+    boolean isReconnecting() {
+        synchronized (linkLock) {
+            return open && linkDown;
+        }
+    }
+
+    /**
+     * Returns whether the modem is open and reachable: open, not in the middle of a reconnect, and not silent since
+     * a send timed out.
+     */
+    public boolean isConnected() {
+        synchronized (linkLock) {
+            return open && !linkDown && !unresponsive;
+        }
+    }
+
+    /**
+     * Sends an SMS and waits for the result. Phone number should be in international format (e.g. +5511999999999);
+     * one that {@link PhoneNumber#parse(String)} rejects fails at once, without being queued.
+     * The send is queued behind any pending {@link #sendSmsAsync(String, String)} calls.
      *
      * @param phoneNumber destination number
      * @param message     SMS body (encoding: UTF-8; see modem docs for GSM 7-bit limits)
      * @return result with success/failure and optional message ref
-     * @throws Sms4jException if modem is not open
+     * @throws Sms4jException if modem is not open, or the send was rejected or aborted
      */
     public SmsSendResult sendSms(String phoneNumber, String message) throws Sms4jException {
-        if (!open || driver == null) {
-            throw new Sms4jException("Modem not open. Call open() first.");
+        return sendSms(phoneNumber, message, Priority.NORMAL);
+    }
+
+    /**
+     * Like {@link #sendSms(String, String)}, queued in the lane of {@code priority}.
+     */
+    public SmsSendResult sendSms(String phoneNumber, String message, Priority priority) throws Sms4jException {
+        CompletableFuture<SmsSendResult> future = sendSmsAsync(phoneNumber, message, priority);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Sms4jException("Interrupted while waiting for send", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Sms4jException) {
+                throw (Sms4jException) cause;
+            }
+            throw new Sms4jException("Send failed: " + cause, cause);
+        }
+    }
+
+    /**
+     * Queues an SMS and returns immediately. The future completes when the modem has answered; it fails with
+     * {@link SendQueueFullException} if the queue is full and backpressure is {@link Backpressure#REJECT},
+     * or with {@link Sms4jException} if the modem is not open or is closed before the send starts.
+     *
+     * @param phoneNumber destination number
+     * @param message     SMS body
+     * @return future with the send result
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message) {
+        return sendSmsAsync(phoneNumber, message, Priority.NORMAL);
+    }
+
+    /**
+     * Like {@link #sendSmsAsync(String, String)}, queued in the lane of {@code priority}: a {@link Priority#HIGH}
+     * send (e.g. a one-time password) starts as soon as the send in flight finishes, ahead of queued bulk traffic.
+     * The capacity is shared by all lanes.
+     *
+     * @param priority queue lane; null means {@link Priority#NORMAL}
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message, Priority priority) {
+        return sendSmsAsync(phoneNumber, message, priority, null);
+    }
+
+    /**
+     * Like {@link #sendSmsAsync(String, String, Priority)}, deduplicated by {@code requestId} when an
+     * {@link #setIdempotencyCache(IdempotencyCache) idempotency cache} is set: a send with the id of a recent or
+     * pending one returns that send's future without queueing anything.
+     *
+     * @param requestId caller's id for this send (e.g. the upstream request id); null keys by number and body
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message, Priority priority,
+                                                         String requestId) {
+        IdempotencyCache cache = idempotency;
+        if (cache == null) {
+            return submit(phoneNumber, message, priority);
+        }
+        long key = requestId != null ? IdempotencyCache.keyOf(requestId)
+                : IdempotencyCache.keyOf(phoneNumber, message);
+        return cache.dedupe(key, () -> submit(phoneNumber, message, priority));
+    }
+
+    private CompletableFuture<SmsSendResult> submit(String phoneNumber, String message, Priority priority) {
+        SendWorker current = worker;
+        if (!open || current == null) {
+            return CompletableFuture.failedFuture(new Sms4jException("Modem not open. Call open() first."));
+        }
+        String number;
+        try {
+            number = PhoneNumber.parse(phoneNumber).toString();
+        } catch (IllegalArgumentException e) {
+            // Rejected before queueing: never worth a modem round trip or an outbox entry
+            return CompletableFuture.completedFuture(SmsSendResult.failure(e.getMessage(), ""));
+        }
+        Outbox box = outbox;
+        if (box == null) {
+            return current.submit(new SendRequest(number, message, priority));
+        }
+        long id;
+        try {
+            id = box.append(number, message);
+        } catch (Sms4jException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<SmsSendResult> future = current.submit(new SendRequest(number, message, priority));
+        track(box, id, future);
+        return future;
+    }
+
+    /**
+     * Sends {@code template} to every recipient at {@link Priority#LOW} and blocks until all have finished.
+     * See {@link #sendBulk(Iterable, MessageTemplate, Priority, BiConsumer)}.
+     */
+    public long sendBulk(Iterable<Recipient> recipients, MessageTemplate template,
+                         BiConsumer<Recipient, SmsSendResult> sink) throws Sms4jException {
+        return sendBulk(recipients, template, Priority.LOW, sink);
+    }
+
+    /**
+     * Sends {@code template} to every recipient and blocks until all have finished. Recipients are pulled from
+     * the iterable one at a time as queue room frees up (at most 64 queued at once, fewer with a smaller queue),
+     * so a large source such as a database cursor is never held in memory. Each result goes to {@code sink} as
+     * soon as it is known, on the send worker thread; a recipient without a value for a placeholder gets a
+     * failed result without being sent. Keep the sink fast and thread-safe.
+     *
+     * @param recipients destinations, iterated once
+     * @param template   compiled message text
+     * @param priority   queue lane of every send
+     * @param sink       receives every recipient with its result
+     * @return number of successful sends
+     * @throws Sms4jException if interrupted while waiting for queue room or for the last results
+     */
+    public long sendBulk(Iterable<Recipient> recipients, MessageTemplate template, Priority priority,
+                         BiConsumer<Recipient, SmsSendResult> sink) throws Sms4jException {
+        return BulkSender.send(recipients, template, priority, bulkWindow(), this::sendSmsAsync, sink);
+    }
+
+    /**
+     * Returns how many sends of one bulk job may be queued on this modem at once.
+     */
+    int bulkWindow() {
+        return Math.min(queueCapacity, BulkSender.MAX_WINDOW_PER_MODEM);
+    }
+
+    /**
+     * Registers a listener for received SMS. Messages the modem delivers directly (+CMT) are decoded as they
+     * arrive; messages it stores (+CMTI) are read and deleted from storage in batches, starting with whatever
+     * the storage already holds. Listeners run on a dedicated thread per modem, one message at a time.
+     * <p>
+     * May be called before {@link #open()} (receiving starts on open) or while open.
+     *
+     * @param listener called for each received message
+     * @throws Sms4jException if the modem is open and its driver cannot receive messages
+     */
+    public void onIncoming(Consumer<IncomingSms> listener) throws Sms4jException {
+        if (listener == null) {
+            return;
+        }
+        incomingListeners.add(listener);
+        if (open) {
+            startIncoming();
+        }
+    }
+
+    /**
+     * Returns the number of sends queued or in flight on this modem.
+     */
+    public int getPendingSends() {
+        SendWorker current = worker;
+        return current != null ? current.pending() : 0;
+    }
+
+    /**
+     * Returns the sends a new send of {@code priority} would wait for: the one in flight and those queued at the
+     * same or a more urgent priority.
+     */
+    int pendingAhead(Priority priority) {
+        SendWorker current = worker;
+        return current != null ? current.pendingAhead(priority) : 0;
+    }
+
+    /**
+     * Like {@link #pendingAhead(Priority)}, counting SMS segments instead of sends.
+     */
+    int segmentsAhead(Priority priority) {
+        SendWorker current = worker;
+        return current != null ? current.segmentsAhead(priority) : 0;
+    }
+
+    /**
+     * Sets the maximum number of queued sends. Takes effect on the next {@link #open()}.
+     *
+     * @param queueCapacity capacity, must be positive
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Sets what happens when the queue is full (default {@link Backpressure#REJECT}).
+     * Takes effect on the next {@link #open()}.
+     */
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure != null ? backpressure : Backpressure.REJECT;
+    }
+
+    /**
+     * Sets how long a queued send waits before it competes with sends one {@link Priority} class higher
+     * (default 10 seconds): a {@link Priority#LOW} send queued for 20 seconds goes before a fresh
+     * {@link Priority#HIGH} one. Shorter values favour fairness, longer ones the latency of urgent sends.
+     * Takes effect on the next {@link #open()}.
+     *
+     * @param agingMs aging period, must be positive
+     */
+    public void setPriorityAgingMs(long agingMs) {
+        if (agingMs <= 0) {
+            throw new IllegalArgumentException("agingMs must be positive: " + agingMs);
+        }
+        this.priorityAgingMs = agingMs;
+    }
+
+    /**
+     * Suppresses repeated sends: while a send is pending, and after it succeeded until the cache entry expires, a
+     * send with the same request id (or, without one, the same number and body) gets the original future and
+     * never reaches the modem. Failed sends are forgotten, so retrying them works. Null (the default) turns
+     * deduplication off. When the modem is in a {@link Sms4jPool}, set the cache on the pool instead.
+     */
+    public void setIdempotencyCache(IdempotencyCache cache) {
+        this.idempotency = cache;
+    }
+
+    /**
+     * Journals every send in {@code outbox} before queueing it. Sends the modem answered are marked sent or failed;
+     * sends rejected by a full queue are marked failed; sends still queued or in flight when the modem is closed
+     * (or the process dies) stay pending and are replayed on the next {@link #open()}, so delivery is at least
+     * once. Use one outbox per modem. Set before {@link #open()}; null disables journaling.
+     */
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * Requests a status report for every message and tracks it: {@link SmsSendResult#getDeliveryStatus()}
+     * completes when the final report arrives, or as {@link DeliveryStatus.Outcome#EXPIRED} after the
+     * report timeout. Delivery counts and latency appear in {@link #getStats()}. Takes effect on the next
+     * {@link #open()}, which fails if the driver cannot request reports.
+     */
+    public void setDeliveryReports(boolean deliveryReports) {
+        this.deliveryReports = deliveryReports;
+    }
+
+    /**
+     * Sets how long to wait for a final status report (default one hour). Takes effect on the next {@link #open()}.
+     *
+     * @param timeoutMs timeout, must be positive
+     */
+    public void setDeliveryReportTimeoutMs(long timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("timeoutMs must be positive: " + timeoutMs);
+        }
+        this.deliveryReportTimeoutMs = timeoutMs;
+    }
+
+    /**
+     * Sets where what was learned about the modem on open (driver, IMEI, unsupported settings) is kept. When the
+     * same modem is opened again on this port, {@link #open()} verifies it with one round trip and re-sends only
+     * lost settings instead of probing and initializing from scratch. Each instance has its own cache by
+     * default; share one to keep profiles across instances, or pass null to always probe.
+     */
+    public void setProfileCache(ModemProfileCache profiles) {
+        this.profiles = profiles;
+    }
+
+    /**
+     * Paces sends on this SIM so that carriers do not throttle or block it: at most {@code perSecond} SMS in any
+     * second, {@code perMinute} in any minute and {@code perDay} in any day (token buckets that start full and
+     * refill continuously). Budgets count SMS segments, so a long message sent as three parts uses three. The send
+     * worker waits for budget before each send, and queued sends wait behind it;
+     * {@link Sms4jPool} routes to the modem whose budget frees up first. Budgets are kept across {@link #open()}
+     * but not across processes. Pass 0 for a window without limit; all zeros (the default) turns pacing off.
+     *
+     * @param perSecond SMS (segments) per second, or 0
+     * @param perMinute SMS (segments) per minute, or 0
+     * @param perDay    SMS (segments) per day, or 0
+     */
+    public void setRateLimit(int perSecond, int perMinute, int perDay) {
+        this.rateLimiter = perSecond == 0 && perMinute == 0 && perDay == 0 ? null
+                : new RateLimiter(perSecond, perMinute, perDay, System.nanoTime());
+    }
+
+    /**
+     * Reopens the port by itself when the modem goes away: jSerialComm reports the port as disconnected, the
+     * input stream ends or fails, or three commands in a row get no byte back. The port is reopened with
+     * exponential backoff (see {@link #setReconnectBackoff(long, long)}) and the driver initialized again; delivery
+     * reports and incoming messages resume. Meanwhile sends keep queueing (up to the queue capacity), and the
+     * send that ran into the outage is retried once the modem is back, so it may reach the network twice.
+     * Off by default. Takes effect on the next {@link #open()}.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Sets the wait before the first reopen attempt (default 500 ms), doubled after every failed attempt up to
+     * {@code maxMs} (default 30 seconds).
+     *
+     * @param initialMs first wait, must be positive
+     * @param maxMs     longest wait, at least {@code initialMs}
+     */
+    public void setReconnectBackoff(long initialMs, long maxMs) {
+        if (initialMs <= 0 || maxMs < initialMs) {
+            throw new IllegalArgumentException("Invalid reconnect backoff: " + initialMs + ", " + maxMs);
+        }
+        this.reconnectInitialBackoffMs = initialMs;
+        this.reconnectMaxBackoffMs = maxMs;
+    }
+
+    /**
+     * Bounds every AT command by a deadline learned from this modem's recent latency for that command, instead of
+     * the fixed timeouts (5 s, 30 s for AT+CMGS), which stay as ceilings. A wedged modem then fails a send in a
+     * few seconds. Whenever a send times out, adaptive or not, the modem is health-checked with a bare AT; if that
+     * goes unanswered too, {@link #isConnected()} turns false (taking the modem out of {@link Sms4jPool} rotation),
+     * the link is reopened if {@link #setAutoReconnect(boolean) auto-reconnect} is on, and until the modem answers
+     * again each send checks it first instead of waiting out another timeout.
+     * <p>
+     * Use one instance per modem. Null (the default) keeps the fixed timeouts. Takes effect on the next
+     * {@link #open()}; what was learned is kept across reconnects.
+     */
+    public void setAdaptiveTimeouts(AdaptiveTimeouts timeouts) {
+        this.adaptiveTimeouts = timeouts;
+    }
+
+    /**
+     * Sends per-command latencies and byte counts (including the probe and init commands) and the outcome of
+     * every send to {@code metrics}, e.g. a {@link balbucio.sms4j.metrics.MetricsRecorder}. Set before
+     * {@link #open()}; null records nothing.
+     */
+    public void setMetrics(Sms4jMetrics metrics) {
+        this.metrics = metrics != null ? metrics : Sms4jMetrics.NOOP;
+    }
+
+    /**
+     * Records the raw AT traffic of this modem in {@code trace}, to be read with {@link AtTrace#dump()}.
+     * Off (null) by default. Can be switched on or off while the modem is open, without reopening it.
+     */
+    public void setTrace(AtTrace trace) {
+        setTrace(trace, null);
+    }
+
+    /**
+     * Like {@link #setTrace(AtTrace)}, and also passes the dump to {@code onSendFailure} (on the send thread)
+     * every time a send fails, prefixed with one line naming the port, recipient and error.
+     */
+    public void setTrace(AtTrace trace, Consumer<String> onSendFailure) {
+        this.trace = trace;
+        this.traceOnFailure = onSendFailure;
+        AtChannel channel = atChannel;
+        if (channel != null) {
+            channel.setTrace(trace);
+        }
+    }
+
+    /**
+     * Returns a snapshot of this modem's send counters since the last {@link #open()}.
+     */
+    public ModemStats getStats() {
+        DeliveryTracker tracker = deliveryTracker;
+        return new ModemStats(portName, isConnected(), getPendingSends(), sentCount.sum(), failedCount.sum(),
+                averageLatencyMs, throughput.ratePerSecond(),
+                tracker != null ? tracker.delivered() : 0,
+                tracker != null ? tracker.undelivered() : 0,
+                tracker != null ? tracker.averageLatencyMs() : 0);
+    }
+
+    double averageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    /**
+     * Returns how long, in milliseconds, until the rate limit allows {@code segments} more SMS segments; 0 without
+     * a limit.
+     */
+    double rateLimitWaitMs(int segments) {
+        RateLimiter limiter = rateLimiter;
+        return limiter == null ? 0 : limiter.nanosUntil(segments, System.nanoTime()) / 1_000_000.0;
+    }
+
+    /**
+     * Requests status reports and listens for them. After a reconnect the existing tracker is kept, so reports for
+     * messages sent before the outage still complete.
+     */
+    private void startDeliveryReports() throws Sms4jException {
+        if (!driver.enableStatusReports()) {
+            throw new Sms4jException("Driver " + driver.getClass().getSimpleName() + " cannot request status reports");
+        }
+        DeliveryTracker tracker = deliveryTracker;
+        if (tracker == null) {
+            tracker = new DeliveryTracker("sms4j-reports-" + portName, deliveryReportTimeoutMs);
+        }
+        atChannel.addUrcListener(tracker);
+        deliveryTracker = tracker;
+    }
+
+    private synchronized void startIncoming() throws Sms4jException {
+        if (incoming != null || driver == null) {
+            // Already running, or the link is down and the reconnect will start it
+            return;
+        }
+        IncomingDispatcher dispatcher = new IncomingDispatcher("sms4j-incoming-" + portName, driver,
+                incomingListeners);
+        atChannel.addUrcListener(dispatcher);
+        boolean enabled;
+        try {
+            enabled = driver.enableIncoming();
+        } catch (Sms4jException | RuntimeException e) {
+            atChannel.removeUrcListener(dispatcher);
+            dispatcher.close();
+            throw e;
+        }
+        if (!enabled) {
+            atChannel.removeUrcListener(dispatcher);
+            dispatcher.close();
+            throw new Sms4jException("Driver " + driver.getClass().getSimpleName() + " cannot receive SMS");
+        }
+        incoming = dispatcher;
+        // Drain what the storage already holds
+        dispatcher.scheduleFetch();
+    }
+
+    private synchronized void stopIncoming() {
+        if (incoming == null) {
+            return;
+        }
+        if (atChannel != null) {
+            atChannel.removeUrcListener(incoming);
+        }
+        incoming.close();
+        incoming = null;
+    }
+
+    /**
+     * Starts reopening the link unless {@code lost} is no longer the current channel (already replaced) or a
+     * reconnect is under way.
+     */
+    private void linkLost(AtChannel lost) {
+        synchronized (linkLock) {
+            if (!autoReconnect || !open || linkDown || lost != atChannel) {
+                return;
+            }
+            linkDown = true;
+            Thread thread = new Thread(this::reconnect, "sms4j-reconnect-" + portName);
+            thread.setDaemon(true);
+            reconnector = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Runs on the reconnect thread: drops the dead link, then reopens and initializes with exponential backoff
+     * until it works or the instance is closed.
+     */
+    private void reconnect() {
+        long backoffMs = reconnectInitialBackoffMs;
+        while (open) {
+            closeLink();
+            try {
+                connect(connectionFactory.open(portName));
+                if (deliveryTracker != null) {
+                    startDeliveryReports();
+                }
+                if (!incomingListeners.isEmpty()) {
+                    startIncoming();
+                }
+                synchronized (linkLock) {
+                    if (open) {
+                        linkDown = false;
+                        reconnector = null;
+                        linkLock.notifyAll();
+                        return;
+                    }
+                }
+            } catch (Sms4jException | RuntimeException e) {
+                // Modem not back yet, or not ready: try again after the backoff
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, reconnectMaxBackoffMs);
+        }
+    }
+
+    /**
+     * Stops a reconnect in progress and wakes the worker if it waits for the link. Called by close.
+     */
+    private void stopReconnector() {
+        Thread thread;
+        synchronized (linkLock) {
+            thread = reconnector;
+            reconnector = null;
+            linkLock.notifyAll();
+        }
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(RECONNECT_STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops incoming delivery and closes the channel and port, keeping the delivery tracker.
+     */
+    private void closeLink() {
+        stopIncoming();
+        AtChannel channel = atChannel;
+        if (channel != null) {
+            channel.setDisconnectListener(null);
+            DeliveryTracker tracker = deliveryTracker;
+            if (tracker != null) {
+                channel.removeUrcListener(tracker);
+            }
+            channel.close();
+        }
+        SerialPortAccess current = connection;
+        if (current != null) {
+            current.setDisconnectListener(null);
+            current.close();
+        }
+        atChannel = null;
+        connection = null;
+    }
+
+    /**
+     * Waits while the link is being reopened. Returns false if the instance was closed first.
+     */
+    private boolean awaitLink() {
+        synchronized (linkLock) {
+            while (linkDown && open) {
+                try {
+                    linkLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return !linkDown;
+        }
+    }
+
+    /**
+     * Waits until the rate limit allows a send of {@code segments} SMS segments and takes them. Returns false if the
+     * instance was closed first.
+     */
+    private boolean awaitBudget(int segments) {
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null) {
+            return true;
+        }
+        synchronized (linkLock) {
+            long waitNanos;
+            while (open && (waitNanos = limiter.tryAcquire(System.nanoTime(), segments)) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(linkLock, waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return open;
+        }
+    }
+
+    /**
+     * Sends a bare AT and records whether the modem answered it. A modem that answers after a timed-out send is
+     * slow, not stuck.
+     */
+    private boolean healthCheck(AtChannel channel) {
+        channel.sendCommand("AT", HEALTH_CHECK_TIMEOUT_MS);
+        boolean alive = !channel.isLastCommandTimedOut() && !channel.isDisconnected();
+        unresponsive = !alive;
+        return alive;
+    }
+
+    /**
+     * Returns whether a failed send on {@code channel} means the link is gone rather than the message rejected.
+     */
+    private boolean isLinkFailure(AtChannel channel) {
+        return autoReconnect && open && channel != null
+                && (channel.isDisconnected() || channel.getConsecutiveFailures() >= LINK_FAILURE_THRESHOLD);
+    }
+
+    private void replayOutbox() {
+        Outbox box = outbox;
+        SendWorker current = worker;
+        if (box == null || current == null) {
+            return;
+        }
+        for (OutboxEntry entry : box.pending()) {
+            CompletableFuture<SmsSendResult> future = current.submitUnbounded(
+                    new SendRequest(entry.getPhoneNumber(), entry.getMessage()));
+            track(box, entry.getId(), future);
+        }
+    }
+
+    private static void track(Outbox box, long id, CompletableFuture<SmsSendResult> future) {
+        future.whenComplete((result, error) -> {
+            try {
+                if (result != null) {
+                    if (result.isSuccess()) {
+                        box.markSent(id);
+                    } else {
+                        box.markFailed(id);
+                    }
+                } else if (error instanceof SendQueueFullException || error instanceof CancellationException) {
+                    box.markFailed(id);
+                }
+            } catch (Sms4jException e) {
+                // Outbox closed: the entry stays pending and is replayed by the next open
+            }
+        });
+    }
+
+    private SmsSendResult dispatch(SendRequest request) {
+        PhoneNumber to;
+        try {
+            // Cached since submit; only an entry replayed from an older outbox can fail here
+            to = PhoneNumber.parse(request.phoneNumber());
+        } catch (IllegalArgumentException e) {
+            return SmsSendResult.failure(e.getMessage(), "");
+        }
+        long start;
+        SmsSendResult result;
+        while (true) {
+            boolean linked = awaitLink();
+            if (!linked || !awaitBudget(request.segments())) {
+                // Closed while waiting: fail without an answer from the modem, so an outbox entry stays pending
+                Sms4jException closed = new Sms4jException(
+                        linked ? "Modem closed while waiting for rate limit" : "Modem closed while reconnecting");
+                request.future().completeExceptionally(closed);
+                return SmsSendResult.failure(closed.getMessage(), "");
+            }
+            ModemDriver current = driver;
+            AtChannel channel = atChannel;
+            if (current == null) {
+                return SmsSendResult.failure("Modem not open", "");
+            }
+            start = System.nanoTime();
+            if (unresponsive && channel != null && !healthCheck(channel)) {
+                result = SmsSendResult.failure("Modem not responding", "");
+                break;
+            }
+            try {
+                result = current.sendSms(to, request.message());
+            } catch (RuntimeException e) {
+                if (isLinkFailure(channel)) {
+                    linkLost(channel);
+                    continue;
+                }
+                failedCount.increment();
+                metrics.recordSend(false, System.nanoTime() - start);
+                dumpTrace(request, String.valueOf(e));
+                throw e;
+            }
+            if (!result.isSuccess() && channel != null && channel.isLastCommandTimedOut()
+                    && !healthCheck(channel)) {
+                // Wedged rather than slow. Not retried: the modem may still send it once it recovers
+                linkLost(channel);
+                break;
+            }
+            if (result.isSuccess() || !isLinkFailure(channel)) {
+                break;
+            }
+            // The modem went away mid-send: send again once it is back
+            linkLost(channel);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        metrics.recordSend(result.isSuccess(), elapsedNanos);
+        double elapsedMs = elapsedNanos / 1_000_000.0;
+        // Only the worker thread writes the average, so a plain read-modify-write is safe
+        averageLatencyMs = averageLatencyMs == 0 ? elapsedMs
+                : averageLatencyMs + LATENCY_EWMA_WEIGHT * (elapsedMs - averageLatencyMs);
+        throughput.mark();
+        if (result.isSuccess()) {
+            sentCount.increment();
+            DeliveryTracker tracker = deliveryTracker;
+            if (tracker != null) {
+                result = result.withDeliveryStatus(
+                        tracker.track(request.phoneNumber(), result.getMessageRefs(), System.currentTimeMillis()));
+            }
+        } else {
+            failedCount.increment();
+            dumpTrace(request, result.getErrorMessage());
+        }
+        return result;
+    }
+
+    private void dumpTrace(SendRequest request, String error) {
+        AtTrace current = trace;
+        Consumer<String> sink = traceOnFailure;
+        if (current == null || sink == null) {
+            return;
+        }
+        try {
+            sink.accept("Send to " + request.phoneNumber() + " failed on " + portName + ": " + error + "\n"
+                    + current.dump());
+        } catch (RuntimeException e) {
+            // A faulty sink must not fail the send
         }
-        return driver.sendSms(phoneNumber, message);
     }
 
     /**
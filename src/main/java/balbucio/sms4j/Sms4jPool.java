@@ -0,0 +1,555 @@
+package balbucio.sms4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import balbucio.sms4j.metrics.LatencyWindow;
+
+/**
+ * Spreads sends over several modems, each an {@link Sms4j} with its own queue and worker thread.
+ * <p>
+ * Each send goes to the healthy modem with the lowest expected wait: (sends ahead of it + 1) times its average
+ * send latency, where only sends of the same or a more urgent {@link Priority} count as ahead, or, if longer, the
+ * time until its {@link Sms4j#setRateLimit(int, int, int) rate limit} allows that many sends. SIMs with budget left
+ * are kept busy while a SIM that is out of budget gets nothing new. A modem whose sends fail
+ * {@link #setMaxConsecutiveFailures(int) several times in a row}, whose send failed with the modem no longer
+ * {@link Sms4j#isConnected() connected} (e.g. stuck, see {@link Sms4j#setAdaptiveTimeouts}), or that is closed,
+ * is taken out of rotation; after {@link #setQuarantineMs(long) a cool-down} it is tried again, and one more
+ * failure sends it straight back. Sends rejected by one modem (queue full, closed) are tried on the next.
+ * <p>
+ * With {@link #setHedging(double, double)}, a {@link Priority#HIGH} send that is slow to complete is also sent on
+ * a second modem, and the first success wins.
+ */
+public class Sms4jPool {
+
+    private static final int DEFAULT_MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long DEFAULT_QUARANTINE_MS = 30_000L;
+    private static final int HEDGE_WINDOW = 256;
+    /** HIGH sends seen before the first hedge, so the percentile means something. */
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    /** Most hedges that can be saved up while sends are fast, so a sudden slowdown cannot trigger a burst. */
+    private static final double HEDGE_MAX_BURST = 5;
+
+    private final List<Member> members = new ArrayList<>();
+    private volatile int maxConsecutiveFailures = DEFAULT_MAX_CONSECUTIVE_FAILURES;
+    private volatile long quarantineNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_QUARANTINE_MS);
+    private volatile IdempotencyCache idempotency;
+    private volatile double hedgePercentile;
+    private volatile double hedgeRatio;
+    private final LatencyWindow hedgeLatencies = new LatencyWindow(HEDGE_WINDOW);
+    private final LongAdder hedgeCount = new LongAdder();
+    /** Hedges that may be started now; earned per HIGH send, guarded by {@code this}. */
+    private double hedgeTokens;
+    /** Timer for hedges; created on first use, guarded by {@code this}. */
+    private ScheduledThreadPoolExecutor hedgeTimer;
+
+    /**
+     * Creates a pool that owns the given modems. They may be opened already or opened through {@link #open()}.
+     *
+     * @param modems modems to balance across; the pool closes them on {@link #close()}
+     */
+    public Sms4jPool(Collection<Sms4j> modems) {
+        if (modems == null || modems.isEmpty()) {
+            throw new IllegalArgumentException("Pool needs at least one modem");
+        }
+        for (Sms4j modem : modems) {
+            members.add(new Member(modem));
+        }
+    }
+
+    /**
+     * Creates a pool with one auto-detected {@link Sms4j} per port.
+     *
+     * @param portNames system port descriptors (e.g. "COM3", "/dev/ttyUSB0")
+     */
+    public static Sms4jPool ofPorts(String... portNames) {
+        List<Sms4j> modems = new ArrayList<>();
+        for (String portName : portNames) {
+            modems.add(new Sms4j(portName));
+        }
+        return new Sms4jPool(modems);
+    }
+
+    /**
+     * Opens every modem that is not open yet. Modems that fail to open stay out of rotation.
+     *
+     * @throws Sms4jException if no modem could be opened (the first failure is the cause)
+     */
+    public void open() throws Sms4jException {
+        Sms4jException firstFailure = null;
+        int opened = 0;
+        for (Member member : members) {
+            try {
+                member.modem.open();
+                member.reset();
+                opened++;
+            } catch (Sms4jException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (opened == 0) {
+            throw new Sms4jException("No modem in the pool could be opened", firstFailure);
+        }
+    }
+
+    /**
+     * Closes all modems, each draining its queue first. Safe to call if already closed.
+     */
+    public void close() {
+        synchronized (this) {
+            if (hedgeTimer != null) {
+                hedgeTimer.shutdownNow();
+                hedgeTimer = null;
+            }
+        }
+        for (Member member : members) {
+            member.modem.close();
+        }
+    }
+
+    /**
+     * Sends an SMS on the best available modem and waits for the result.
+     *
+     * @throws Sms4jException if no modem is available or the send was rejected everywhere
+     */
+    public SmsSendResult sendSms(String phoneNumber, String message) throws Sms4jException {
+        return sendSms(phoneNumber, message, Priority.NORMAL);
+    }
+
+    /**
+     * Like {@link #sendSms(String, String)}, with the given priority.
+     */
+    public SmsSendResult sendSms(String phoneNumber, String message, Priority priority) throws Sms4jException {
+        try {
+            return sendSmsAsync(phoneNumber, message, priority).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Sms4jException("Interrupted while waiting for send", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Sms4jException) {
+                throw (Sms4jException) cause;
+            }
+            throw new Sms4jException("Send failed: " + cause, cause);
+        }
+    }
+
+    /**
+     * Queues an SMS on the best available modem and returns immediately.
+     * The future fails with {@link Sms4jException} if every modem is out of rotation or rejects the send. An invalid
+     * number gives a failed result without reaching any modem or counting against its health.
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message) {
+        return sendSmsAsync(phoneNumber, message, Priority.NORMAL);
+    }
+
+    /**
+     * Like {@link #sendSmsAsync(String, String)}, with the given priority. See {@link Sms4j#sendSmsAsync(String,
+     * String, Priority)}.
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message, Priority priority) {
+        return sendSmsAsync(phoneNumber, message, priority, null);
+    }
+
+    /**
+     * Like {@link #sendSmsAsync(String, String, Priority)}, deduplicated across all modems by {@code requestId}
+     * (or number and body if null) when an idempotency cache is set. See
+     * {@link Sms4j#setIdempotencyCache(IdempotencyCache)}.
+     */
+    public CompletableFuture<SmsSendResult> sendSmsAsync(String phoneNumber, String message, Priority priority,
+                                                         String requestId) {
+        IdempotencyCache cache = idempotency;
+        if (cache == null) {
+            return route(phoneNumber, message, priority);
+        }
+        long key = requestId != null ? IdempotencyCache.keyOf(requestId)
+                : IdempotencyCache.keyOf(phoneNumber, message);
+        return cache.dedupe(key, () -> route(phoneNumber, message, priority));
+    }
+
+    private CompletableFuture<SmsSendResult> route(String phoneNumber, String message, Priority priority) {
+        try {
+            phoneNumber = PhoneNumber.parse(phoneNumber).toString();
+        } catch (IllegalArgumentException e) {
+            // Bad input says nothing about the modems, so it must not count against their health
+            return CompletableFuture.completedFuture(SmsSendResult.failure(e.getMessage(), ""));
+        }
+        Priority lane = priority != null ? priority : Priority.NORMAL;
+        int segments = SendRequest.segmentsOf(message);
+        List<Member> candidates = rank(System.nanoTime(), lane, segments);
+        if (candidates.isEmpty()) {
+            return CompletableFuture.failedFuture(new Sms4jException("No healthy modem available in the pool"));
+        }
+        if (lane == Priority.HIGH && hedgePercentile > 0) {
+            return hedged(candidates, phoneNumber, message, segments);
+        }
+        return submit(candidates, 0, phoneNumber, message, lane, null).future;
+    }
+
+    /**
+     * Sends on the best modem and, if that is still running after the hedge delay, on the next best as well.
+     */
+    private CompletableFuture<SmsSendResult> hedged(List<Member> candidates, String phoneNumber, String message,
+                                                    int segments) {
+        long start = System.nanoTime();
+        Attempt primary = submit(candidates, 0, phoneNumber, message, Priority.HIGH, null);
+        if (primary.member == null) {
+            return primary.future;
+        }
+        HedgedSend race = new HedgedSend(primary);
+        race.result.whenComplete((result, error) -> {
+            if (error == null && result.isSuccess()) {
+                hedgeLatencies.record(System.nanoTime() - start);
+            }
+        });
+        long delayNanos = hedgeDelayNanos();
+        if (delayNanos < 0 || members.size() < 2) {
+            return race.result;
+        }
+        try {
+            ScheduledFuture<?> timer = hedgeTimer().schedule(
+                    () -> startHedge(race, primary.member, phoneNumber, message, segments), delayNanos,
+                    TimeUnit.NANOSECONDS);
+            race.result.whenComplete((result, error) -> timer.cancel(false));
+        } catch (RejectedExecutionException e) {
+            // Pool closed meanwhile: no hedge
+        }
+        return race.result;
+    }
+
+    /**
+     * Runs on the hedge timer: sends a second copy on the best other modem, if the hedge budget allows.
+     */
+    private void startHedge(HedgedSend race, Member primary, String phoneNumber, String message, int segments) {
+        if (race.result.isDone()) {
+            return;
+        }
+        List<Member> others = rank(System.nanoTime(), Priority.HIGH, segments);
+        others.remove(primary);
+        if (others.isEmpty() || !takeHedgeToken()) {
+            return;
+        }
+        Attempt hedge = submit(others, 0, phoneNumber, message, Priority.HIGH, null);
+        if (hedge.member != null) {
+            hedgeCount.increment();
+            race.add(hedge);
+        }
+    }
+
+    /**
+     * Returns how long a HIGH send may run before it is hedged, or -1 if hedging is off or the pool has not seen
+     * enough sends yet. Earns the hedge budget of one send.
+     */
+    private long hedgeDelayNanos() {
+        double percentile = hedgePercentile;
+        synchronized (this) {
+            hedgeTokens = Math.min(HEDGE_MAX_BURST, hedgeTokens + hedgeRatio);
+        }
+        if (percentile <= 0 || hedgeLatencies.getCount() < HEDGE_MIN_SAMPLES) {
+            return -1;
+        }
+        return hedgeLatencies.percentile(percentile);
+    }
+
+    private synchronized boolean takeHedgeToken() {
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor hedgeTimer() {
+        if (hedgeTimer == null) {
+            hedgeTimer = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "sms4j-hedge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            hedgeTimer.setRemoveOnCancelPolicy(true);
+        }
+        return hedgeTimer;
+    }
+
+    /**
+     * Sends {@code template} to every recipient at {@link Priority#LOW}, spread over the modems like single
+     * sends, and blocks until all have finished. See {@link Sms4j#sendBulk(Iterable, MessageTemplate, Priority,
+     * BiConsumer)}; here up to 64 sends per modem are queued at once.
+     */
+    public long sendBulk(Iterable<Recipient> recipients, MessageTemplate template,
+                         BiConsumer<Recipient, SmsSendResult> sink) throws Sms4jException {
+        return sendBulk(recipients, template, Priority.LOW, sink);
+    }
+
+    /**
+     * Like {@link #sendBulk(Iterable, MessageTemplate, BiConsumer)}, with the given priority.
+     */
+    public long sendBulk(Iterable<Recipient> recipients, MessageTemplate template, Priority priority,
+                         BiConsumer<Recipient, SmsSendResult> sink) throws Sms4jException {
+        int window = 0;
+        for (Member member : members) {
+            window += member.modem.bulkWindow();
+        }
+        return BulkSender.send(recipients, template, priority, window, this::sendSmsAsync, sink);
+    }
+
+    /**
+     * Returns per-modem stats; {@link ModemStats#isHealthy()} reflects whether the modem is in rotation.
+     */
+    public List<ModemStats> getStats() {
+        long now = System.nanoTime();
+        List<ModemStats> stats = new ArrayList<>(members.size());
+        for (Member member : members) {
+            stats.add(member.modem.getStats().withHealthy(member.isAvailable(now)));
+        }
+        return stats;
+    }
+
+    /**
+     * Returns how many hedge copies were sent since the pool was created; see {@link #setHedging(double, double)}.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * Returns completed sends per second across all modems over the last few seconds.
+     */
+    public double getThroughputPerSecond() {
+        double total = 0;
+        for (Member member : members) {
+            total += member.modem.getStats().getThroughputPerSecond();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the modems owned by this pool.
+     */
+    public List<Sms4j> getModems() {
+        List<Sms4j> modems = new ArrayList<>(members.size());
+        for (Member member : members) {
+            modems.add(member.modem);
+        }
+        return modems;
+    }
+
+    /**
+     * Sets how many failed sends in a row take a modem out of rotation (default 3).
+     */
+    public void setMaxConsecutiveFailures(int maxConsecutiveFailures) {
+        if (maxConsecutiveFailures <= 0) {
+            throw new IllegalArgumentException("maxConsecutiveFailures must be positive: " + maxConsecutiveFailures);
+        }
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+    }
+
+    /**
+     * Sets how long a failing modem stays out of rotation before it is tried again (default 30 s).
+     */
+    public void setQuarantineMs(long quarantineMs) {
+        this.quarantineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, quarantineMs));
+    }
+
+    /**
+     * Suppresses repeated sends across all modems of the pool; see
+     * {@link Sms4j#setIdempotencyCache(IdempotencyCache)}. Null (the default) turns deduplication off.
+     */
+    public void setIdempotencyCache(IdempotencyCache cache) {
+        this.idempotency = cache;
+    }
+
+    /**
+     * Hedges {@link Priority#HIGH} sends, the latency-critical ones (e.g. one-time passwords): a HIGH send that has
+     * not completed after the {@code percentile} of recent HIGH send times (e.g. 0.95) is sent again on the next
+     * best modem. The first copy to succeed completes the future; the other is dropped if still queued, otherwise
+     * it goes out too, so the recipient may get the message twice. At most {@code maxExtraRatio} hedges per HIGH
+     * send are started (e.g. 0.05 for 5% extra sends), so a congested pool does not double its own load. Hedging
+     * starts once 20 HIGH sends have completed. A percentile of 0 (the default) turns it off.
+     *
+     * @param percentile    fraction of recent HIGH sends that complete before a hedge, between 0 and 1
+     * @param maxExtraRatio hedges allowed per HIGH send, between 0 and 1
+     */
+    public void setHedging(double percentile, double maxExtraRatio) {
+        if (percentile < 0 || percentile >= 1 || maxExtraRatio < 0 || maxExtraRatio > 1) {
+            throw new IllegalArgumentException("Invalid hedging: " + percentile + ", " + maxExtraRatio);
+        }
+        this.hedgeRatio = maxExtraRatio;
+        this.hedgePercentile = percentile;
+    }
+
+    private Attempt submit(List<Member> candidates, int index, String phoneNumber, String message,
+                           Priority priority, Throwable lastRejection) {
+        if (index >= candidates.size()) {
+            return new Attempt(null, null, CompletableFuture.failedFuture(lastRejection != null ? lastRejection
+                    : new Sms4jException("No healthy modem available in the pool")));
+        }
+        Member member = candidates.get(index);
+        CompletableFuture<SmsSendResult> future = member.modem.sendSmsAsync(phoneNumber, message, priority);
+        if (future.isCompletedExceptionally()) {
+            Throwable cause = future.handle((r, t) -> t).join();
+            return submit(candidates, index + 1, phoneNumber, message, priority, cause);
+        }
+        return new Attempt(member, future, future.whenComplete((result, error) -> {
+            // A hedge copy cancelled because the other won says nothing about this modem
+            if (!(error instanceof CancellationException)) {
+                member.record(error == null && result.isSuccess());
+            }
+        }));
+    }
+
+    /**
+     * Returns available members, best first, for a send of {@code segments} SMS segments.
+     */
+    private List<Member> rank(long now, Priority priority, int segments) {
+        List<Candidate> available = new ArrayList<>(members.size());
+        for (Member member : members) {
+            if (member.isAvailable(now)) {
+                available.add(new Candidate(member, member.expectedWait(priority, segments)));
+            }
+        }
+        available.sort((a, b) -> Double.compare(a.score, b.score));
+        List<Member> ranked = new ArrayList<>(available.size());
+        for (Candidate candidate : available) {
+            ranked.add(candidate.member);
+        }
+        return ranked;
+    }
+
+    /**
+     * A send accepted by {@code member} (null if every candidate rejected it). {@code sent} is the modem's own
+     * future, to cancel; {@code future} completes after the member's health was updated.
+     */
+    private static final class Attempt {
+
+        private final Member member;
+        private final CompletableFuture<SmsSendResult> sent;
+        private final CompletableFuture<SmsSendResult> future;
+
+        Attempt(Member member, CompletableFuture<SmsSendResult> sent, CompletableFuture<SmsSendResult> future) {
+            this.member = member;
+            this.sent = sent;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Copies of one hedged send. The first success completes {@link #result} and cancels the others; if every copy
+     * fails, the last failure does.
+     */
+    private static final class HedgedSend {
+
+        private final CompletableFuture<SmsSendResult> result = new CompletableFuture<>();
+        private final List<Attempt> copies = new ArrayList<>(2);
+        private int running;
+
+        HedgedSend(Attempt primary) {
+            add(primary);
+        }
+
+        void add(Attempt copy) {
+            synchronized (this) {
+                if (result.isDone()) {
+                    copy.sent.cancel(false);
+                    return;
+                }
+                copies.add(copy);
+                running++;
+            }
+            copy.future.whenComplete(this::settle);
+        }
+
+        private void settle(SmsSendResult outcome, Throwable error) {
+            List<Attempt> losers;
+            synchronized (this) {
+                running--;
+                boolean success = error == null && outcome.isSuccess();
+                if (result.isDone() || !success && running > 0) {
+                    return;
+                }
+                losers = success ? new ArrayList<>(copies) : List.of();
+            }
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                result.complete(outcome);
+            }
+            for (Attempt loser : losers) {
+                loser.sent.cancel(false);
+            }
+        }
+    }
+
+    private static final class Candidate {
+
+        private final Member member;
+        private final double score;
+
+        Candidate(Member member, double score) {
+            this.member = member;
+            this.score = score;
+        }
+    }
+
+    private final class Member {
+
+        private final Sms4j modem;
+        private int consecutiveFailures;
+        private long quarantinedUntil;
+        private boolean quarantined;
+
+        Member(Sms4j modem) {
+            this.modem = modem;
+        }
+
+        synchronized void reset() {
+            consecutiveFailures = 0;
+            quarantined = false;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            // Sends to a reconnecting modem wait instead of failing, so it would look idle and take new traffic
+            if (!modem.isOpen() || modem.isReconnecting()) {
+                return false;
+            }
+            return !quarantined || now - quarantinedUntil >= 0;
+        }
+
+        synchronized void record(boolean success) {
+            if (success) {
+                consecutiveFailures = 0;
+                quarantined = false;
+                return;
+            }
+            consecutiveFailures++;
+            // A modem that stopped answering is out at once rather than after more sends wait out their timeouts
+            if (consecutiveFailures >= maxConsecutiveFailures || !modem.isConnected()) {
+                quarantined = true;
+                quarantinedUntil = System.nanoTime() + quarantineNanos;
+                // One more failure after the cool-down sends it straight back to quarantine
+                consecutiveFailures = maxConsecutiveFailures - 1;
+            }
+        }
+
+        double expectedWait(Priority priority, int segments) {
+            double latency = modem.averageLatencyMs();
+            int ahead = modem.pendingAhead(priority) + 1;
+            return Math.max(ahead * (latency > 0 ? latency : 1.0),
+                    modem.rateLimitWaitMs(modem.segmentsAhead(priority) + segments));
+        }
+    }
+}
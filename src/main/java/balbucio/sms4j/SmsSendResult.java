@@ -1,20 +1,29 @@
 package balbucio.sms4j;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
- * Result of a single SMS send attempt.
+ * Result of a single SMS send attempt. A long message sent as several concatenated segments has one
+ * modem reference per segment ({@link #getMessageRefs()}).
  */
 public final class SmsSendResult {
 
     private final boolean success;
-    private final String messageRef;
+    private final List<String> messageRefs;
     private final String rawResponse;
     private final String errorMessage;
+    private final CompletableFuture<DeliveryStatus> deliveryStatus;
 
-    private SmsSendResult(boolean success, String messageRef, String rawResponse, String errorMessage) {
+    private SmsSendResult(boolean success, List<String> messageRefs, String rawResponse, String errorMessage,
+                          CompletableFuture<DeliveryStatus> deliveryStatus) {
         this.success = success;
-        this.messageRef = messageRef;
+        this.messageRefs = messageRefs;
         this.rawResponse = rawResponse;
         this.errorMessage = errorMessage;
+        this.deliveryStatus = deliveryStatus;
     }
 
     /**
@@ -24,7 +33,17 @@ public final class SmsSendResult {
      * @param rawResponse raw AT response lines, for debugging
      */
     public static SmsSendResult success(String messageRef, String rawResponse) {
-        return new SmsSendResult(true, messageRef, rawResponse, null);
+        return new SmsSendResult(true, messageRef == null ? List.of() : List.of(messageRef), rawResponse, null, null);
+    }
+
+    /**
+     * Creates a successful result for a message sent as several segments.
+     *
+     * @param messageRefs references of the segments in sending order (null entries are dropped)
+     * @param rawResponse raw AT response lines, for debugging
+     */
+    public static SmsSendResult success(List<String> messageRefs, String rawResponse) {
+        return new SmsSendResult(true, copyRefs(messageRefs), rawResponse, null, null);
     }
 
     /**
@@ -34,15 +53,56 @@ public final class SmsSendResult {
      * @param rawResponse raw AT response lines, for debugging
      */
     public static SmsSendResult failure(String errorMessage, String rawResponse) {
-        return new SmsSendResult(false, null, rawResponse, errorMessage);
+        return new SmsSendResult(false, List.of(), rawResponse, errorMessage, null);
+    }
+
+    /**
+     * Creates a failed result for a multi-segment message of which some segments were already accepted.
+     *
+     * @param errorMessage description of the failure
+     * @param messageRefs  references of the segments accepted before the failure
+     * @param rawResponse  raw AT response lines, for debugging
+     */
+    public static SmsSendResult failure(String errorMessage, List<String> messageRefs, String rawResponse) {
+        return new SmsSendResult(false, copyRefs(messageRefs), rawResponse, errorMessage, null);
+    }
+
+    /**
+     * Returns a copy of this result carrying the delivery report future.
+     */
+    SmsSendResult withDeliveryStatus(CompletableFuture<DeliveryStatus> deliveryStatus) {
+        return new SmsSendResult(success, messageRefs, rawResponse, errorMessage, deliveryStatus);
+    }
+
+    private static List<String> copyRefs(List<String> refs) {
+        if (refs == null) {
+            return List.of();
+        }
+        List<String> copy = new ArrayList<>(refs.size());
+        for (String ref : refs) {
+            if (ref != null) {
+                copy.add(ref);
+            }
+        }
+        return Collections.unmodifiableList(copy);
     }
 
     public boolean isSuccess() {
         return success;
     }
 
+    /**
+     * Returns the modem reference of the (first) segment, or null if there is none.
+     */
     public String getMessageRef() {
-        return messageRef;
+        return messageRefs.isEmpty() ? null : messageRefs.get(0);
+    }
+
+    /**
+     * Returns the references of all segments in sending order; empty if the modem reported none.
+     */
+    public List<String> getMessageRefs() {
+        return messageRefs;
     }
 
     public String getRawResponse() {
@@ -52,4 +112,12 @@ public final class SmsSendResult {
     public String getErrorMessage() {
         return errorMessage;
     }
+
+    /**
+     * Returns the future completed when the status reports for this message arrive, or null if delivery
+     * reports were not requested ({@link Sms4j#setDeliveryReports(boolean)}) or the send failed.
+     */
+    public CompletableFuture<DeliveryStatus> getDeliveryStatus() {
+        return deliveryStatus;
+    }
 }
@@ -0,0 +1,51 @@
+package balbucio.sms4j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events in one-second buckets over a short sliding window; lock-free.
+ * The rate excludes the current (partial) second.
+ */
+final class ThroughputMeter {
+
+    private static final int WINDOW_SECONDS = 10;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS + 1);
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS + 1);
+    private final long origin = System.nanoTime();
+
+    void mark() {
+        long second = currentSecond();
+        int slot = (int) (second % counts.length());
+        long owner = seconds.get(slot);
+        if (owner != second && seconds.compareAndSet(slot, owner, second)) {
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    /**
+     * Returns events per second averaged over the last complete seconds of the window.
+     */
+    double ratePerSecond() {
+        long now = currentSecond();
+        long elapsed = Math.min(WINDOW_SECONDS, now - 1);
+        if (elapsed == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (long second = now - elapsed; second < now; second++) {
+            int slot = (int) (second % counts.length());
+            if (seconds.get(slot) == second) {
+                total += counts.get(slot);
+            }
+        }
+        return (double) total / elapsed;
+    }
+
+    private long currentSecond() {
+        // +1 so that second 0 is never confused with an unused slot
+        return (System.nanoTime() - origin) / NANOS_PER_SECOND + 1;
+    }
+}
@@ -0,0 +1,102 @@
+package balbucio.sms4j.at;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import balbucio.sms4j.metrics.LatencyWindow;
+
+/**
+ * Per-command deadlines learned from how fast one modem answers. For each command name (AT+CMGS, AT+CSQ, ...)
+ * the latencies of the last {@value #WINDOW} answered commands are kept; once {@value #MIN_SAMPLES} are in, the
+ * deadline is 1.5 times their 99th percentile plus a margin, clamped between a floor and the timeout the caller
+ * asked for, which acts as the ceiling. Commands that timed out are not sampled, so a wedged modem cannot push
+ * its own deadlines up.
+ * <p>
+ * Set one instance per modem with {@link AtChannel#setAdaptiveTimeouts(AdaptiveTimeouts)}; it can be moved to the
+ * channel of a reopened port to keep what it learned. Thread-safe.
+ */
+public final class AdaptiveTimeouts {
+
+    public static final long DEFAULT_FLOOR_MS = 2000L;
+    public static final long DEFAULT_MARGIN_MS = 1000L;
+    static final int WINDOW = 128;
+    static final int MIN_SAMPLES = 16;
+    /** The percentile is recomputed every this many samples; in between the last value is used. */
+    private static final int RECOMPUTE_EVERY = 8;
+
+    private final long floorNanos;
+    private final long marginNanos;
+    private final Map<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Creates timeouts with a floor of 2 s and a margin of 1 s.
+     */
+    public AdaptiveTimeouts() {
+        this(DEFAULT_FLOOR_MS, DEFAULT_MARGIN_MS);
+    }
+
+    /**
+     * @param floorMs  shortest deadline ever used, whatever the modem's latency
+     * @param marginMs added to 1.5 times the 99th percentile
+     */
+    public AdaptiveTimeouts(long floorMs, long marginMs) {
+        if (floorMs <= 0 || marginMs < 0) {
+            throw new IllegalArgumentException("floorMs must be positive and marginMs not negative: "
+                    + floorMs + ", " + marginMs);
+        }
+        this.floorNanos = TimeUnit.MILLISECONDS.toNanos(floorMs);
+        this.marginNanos = TimeUnit.MILLISECONDS.toNanos(marginMs);
+    }
+
+    /**
+     * Returns the deadline for {@code command} (a name such as "AT+CMGS"): {@code ceilingMs} until enough answers
+     * were seen, then the learned deadline, never above {@code ceilingMs}.
+     */
+    public long timeoutMs(String command, long ceilingMs) {
+        return timeoutMsForVerb(AtChannel.verbOf(command), ceilingMs);
+    }
+
+    /**
+     * Records how long the modem took to answer {@code command}.
+     */
+    public void record(String command, long latencyNanos) {
+        recordVerb(AtChannel.verbOf(command), latencyNanos);
+    }
+
+    void recordVerb(String verb, long latencyNanos) {
+        if (latencyNanos >= 0) {
+            estimates.computeIfAbsent(verb, v -> new Estimate()).record(latencyNanos);
+        }
+    }
+
+    long timeoutMsForVerb(String verb, long ceilingMs) {
+        Estimate estimate = estimates.get(verb);
+        return estimate != null ? estimate.timeoutMs(ceilingMs) : ceilingMs;
+    }
+
+    /**
+     * Recent latencies of one command and the deadline derived from them.
+     */
+    private final class Estimate {
+
+        private final LatencyWindow window = new LatencyWindow(WINDOW);
+        private long timeoutNanos = -1;
+
+        synchronized void record(long latencyNanos) {
+            window.record(latencyNanos);
+            long count = window.getCount();
+            if (count >= MIN_SAMPLES && (count % RECOMPUTE_EVERY == 0 || timeoutNanos < 0)) {
+                long p99 = window.percentile(0.99);
+                timeoutNanos = Math.max(floorNanos, p99 + p99 / 2 + marginNanos);
+            }
+        }
+
+        synchronized long timeoutMs(long ceilingMs) {
+            if (timeoutNanos < 0) {
+                return ceilingMs;
+            }
+            return Math.min(ceilingMs, TimeUnit.NANOSECONDS.toMillis(timeoutNanos + 999_999));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package balbucio.sms4j.at;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several AT commands sent with fewer round trips, created by {@link AtChannel#batch()}. Each command still gets
+ * its own {@link AtResponse}, in the order added.
+ * <p>
+ * Only batch commands that are safe to run twice (settings and queries, not AT+CMGS): if a chained line fails,
+ * the batch is re-run one command at a time to find out which one failed.
+ */
+public final class AtBatch {
+
+    /** How the commands go over the wire. */
+    public enum Mode {
+        /**
+         * One command line joined with ";" (e.g. {@code AT+CMEE=2;+CMGF=0}), one final result for all. Needs every
+         * command to be an extended (+ or ^) command; otherwise, or if the modem rejects the line, falls back to
+         * {@link #SEQUENTIAL}.
+         */
+        CHAINED,
+        /**
+         * Every command written back to back before the first response is read; responses are matched in order.
+         * Only for modems that buffer input while busy.
+         */
+        PIPELINED,
+        /** One command after another, as with {@link AtChannel#sendCommand(String, long)}. */
+        SEQUENTIAL
+    }
+
+    private static final long DEFAULT_TIMEOUT_MS = 5000L;
+
+    private final AtChannel channel;
+    private final List<String> commands = new ArrayList<>();
+    private Mode mode = Mode.CHAINED;
+    private long timeoutMs = DEFAULT_TIMEOUT_MS;
+
+    AtBatch(AtChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Adds a command, with or without the "AT" prefix (e.g. "AT+CMGF=0" or "+CMGF=0").
+     */
+    public AtBatch add(String command) {
+        if (command == null || command.isBlank()) {
+            throw new IllegalArgumentException("command must not be blank");
+        }
+        String trimmed = command.trim();
+        commands.add(trimmed.regionMatches(true, 0, "AT", 0, 2) ? trimmed : "AT" + trimmed);
+        return this;
+    }
+
+    /**
+     * Sets the mode (default {@link Mode#CHAINED}).
+     */
+    public AtBatch mode(Mode mode) {
+        this.mode = mode != null ? mode : Mode.CHAINED;
+        return this;
+    }
+
+    /**
+     * Sets the timeout per command in milliseconds (default 5000). A chained line gets the sum.
+     */
+    public AtBatch timeoutMs(long timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("timeoutMs must be positive: " + timeoutMs);
+        }
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Sends the commands and returns one response per command, in the order added.
+     */
+    public List<AtResponse> execute() {
+        if (commands.isEmpty()) {
+            return List.of();
+        }
+        switch (mode) {
+            case CHAINED:
+                return channel.executeChained(commands, timeoutMs);
+            case PIPELINED:
+                return channel.executePipelined(commands, timeoutMs);
+            default:
+                return channel.executeSequential(commands, timeoutMs);
+        }
+    }
+}
@@ -5,24 +5,147 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import balbucio.sms4j.metrics.CommandOutcome;
+import balbucio.sms4j.metrics.Sms4jMetrics;
 import balbucio.sms4j.serial.SerialPortAccess;
 
 /**
- * Sends AT commands over a serial connection and reads response until OK,
- * ERROR, UNKNOWN, or timeout. Lines containing "unknown" (case-insensitive) are
- * treated as UNKNOWN (command not supported).
+ * Sends AT commands over a serial connection and waits for the response until OK,
+ * ERROR (including +CME ERROR: and +CMS ERROR:), UNKNOWN, or timeout. Lines containing
+ * "unknown" (case-insensitive) are treated as UNKNOWN (command not supported).
+ * <p>
+ * A single reader thread per channel reads the input stream (in bulk, through an {@link AtResponseParser})
+ * for as long as the port is open. Response lines complete the pending command; unsolicited result codes
+ * (+CMTI, +CDS, RING, ^RSSI, ...) go to the listeners registered with {@link #addUrcListener(UrcListener)}
+ * instead of ending up in the next command's {@link AtResponse}. Commands are serialized: one in flight at a time.
+ * <p>
+ * Each command's latency, byte counts and outcome go to the {@link Sms4jMetrics} set with
+ * {@link #setMetrics(Sms4jMetrics)} (none by default); raw traffic can be kept in an {@link AtTrace}.
+ * With {@link #setAdaptiveTimeouts(AdaptiveTimeouts)}, the timeout passed to a command is only its ceiling: the
+ * deadline actually used follows the modem's recent latency for that command.
+ * <p>
+ * A command that times out may still be answered later, after the next command was written. So after a timeout
+ * the channel is out of sync: before the next command it writes a bare AT and discards everything up to its OK.
+ * <p>
+ * A channel does not recover from a lost device: once the reader stops, every command fails. The owner finds out
+ * through {@link #setDisconnectListener(Runnable)} and {@link #getConsecutiveFailures()} and opens a new channel.
  */
 public class AtChannel {
 
     private static final long DEFAULT_TIMEOUT_MS = 5000L;
     private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AT = "AT".getBytes(StandardCharsets.US_ASCII);
+    private static final long RESYNC_TIMEOUT_MS = 1000L;
+    /** How long the channel must stay quiet after the resync OK before the next command is written. */
+    private static final long RESYNC_SETTLE_MS = 50L;
+    /** Late final results swallowed after the resync OK at most, one per timed-out command. */
+    private static final int MAX_LATE_RESULTS = 4;
 
     private final SerialPortAccess connection;
+    private final AtResponseParser parser = new AtResponseParser();
+    private final Object commandLock = new Object();
+    private final List<UrcListener> urcListeners = new CopyOnWriteArrayList<>();
+    private final Set<String> urcNames = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    /** "AT" + verb for each verb seen, so recording metrics does not build the name per command. */
+    private final Map<String, String> commandNames = new ConcurrentHashMap<>();
+
+    private volatile PendingCommand pending;
+    private volatile Thread readerThread;
+    private volatile String readerFailure;
+    private volatile boolean writeFailed;
+    private volatile boolean closed;
+    private volatile Sms4jMetrics metrics = Sms4jMetrics.NOOP;
+    private volatile AtTrace trace;
+    private volatile Runnable disconnectListener;
+    private volatile AdaptiveTimeouts adaptiveTimeouts;
+    private volatile boolean lastTimedOut;
+    private volatile boolean outOfSync;
 
     public AtChannel(SerialPortAccess connection) {
         this.connection = connection;
+        this.urcNames.addAll(AtReader.DEFAULT_URC_NAMES);
+    }
+
+    /**
+     * Sets where per-command measurements go. Defaults to {@link Sms4jMetrics#NOOP}.
+     *
+     * @param metrics recorder, or null for none
+     */
+    public void setMetrics(Sms4jMetrics metrics) {
+        this.metrics = metrics != null ? metrics : Sms4jMetrics.NOOP;
+    }
+
+    /**
+     * Starts recording every byte written and read in {@code trace}; null (the default) stops recording.
+     */
+    public void setTrace(AtTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Returns the trace set with {@link #setTrace(AtTrace)}, or null.
+     */
+    public AtTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Learns per-command deadlines from this modem's answers and uses them, capped by the timeout each caller
+     * passes. Null (the default) uses the caller's timeout as is.
+     */
+    public void setAdaptiveTimeouts(AdaptiveTimeouts timeouts) {
+        this.adaptiveTimeouts = timeouts;
+    }
+
+    /**
+     * Returns the timeouts set with {@link #setAdaptiveTimeouts(AdaptiveTimeouts)}, or null.
+     */
+    public AdaptiveTimeouts getAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    /**
+     * Returns whether the last command ended because its deadline passed, as opposed to an answer or an I/O
+     * error. The owner uses it to health-check the modem after a timeout.
+     */
+    public boolean isLastCommandTimedOut() {
+        return lastTimedOut;
+    }
+
+    /**
+     * Sets what runs when the device looks gone: the reader stopped because the input stream ended or failed, or
+     * a write failed. Runs on the reader or the writing thread, possibly more than once; not called when the
+     * channel is closed by its owner. Null removes it.
+     */
+    public void setDisconnectListener(Runnable listener) {
+        this.disconnectListener = listener;
+    }
+
+    /**
+     * Returns how many commands in a row got no byte back from the modem (timed out, or failed with an I/O
+     * error). Reset by any command the modem answers, even with ERROR.
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * Returns whether the reader has stopped (end of stream or I/O error) or a write failed, so no command can be
+     * expected to succeed any more.
+     */
+    public boolean isDisconnected() {
+        return readerFailure != null || writeFailed;
     }
 
     /**
@@ -39,70 +162,47 @@ public class AtChannel {
      * Sends an AT command and reads response with the given timeout.
      *
      * @param command command string without CR/LF
-     * @param timeoutMs read timeout in milliseconds (use higher value for CMGS)
+     * @param timeoutMs timeout in milliseconds for the final result (use higher value for CMGS); with adaptive
+     *                  timeouts, the most it may be
      * @return response with status and raw lines
      */
     public AtResponse sendCommand(String command, long timeoutMs) {
-        List<String> lines = new ArrayList<>();
-        InputStream in = connection.getInputStream();
+        String verb = verbOf(command);
+        return sendCommand(command, new PendingCommand(verb, commandName(verb)), timeoutMs);
+    }
+
+    private AtResponse sendCommand(String command, PendingCommand request, long timeoutMs) {
         OutputStream out = connection.getOutputStream();
-        if (in == null || out == null) {
+        if (connection.getInputStream() == null || out == null) {
             return new AtResponse(AtResponse.Status.ERROR, List.of("Port not open"));
         }
 
-        try {
-            if (timeoutMs != DEFAULT_TIMEOUT_MS && timeoutMs > 0 && timeoutMs <= Integer.MAX_VALUE) {
-                connection.setReadTimeoutMs((int) timeoutMs);
+        synchronized (commandLock) {
+            resync(out);
+            pending = request;
+            String failure = ensureReader();
+            if (failure != null) {
+                pending = null;
+                return new AtResponse(AtResponse.Status.ERROR, List.of(failure));
             }
-            out.write(command.getBytes(StandardCharsets.US_ASCII));
-            out.write(CRLF);
-            out.flush();
-
-            StringBuilder lineBuffer = new StringBuilder();
-            long deadline = System.currentTimeMillis() + timeoutMs;
-
-            while (System.currentTimeMillis() < deadline) {
-                int b = in.read();
-                if (b < 0) {
-                    break;
-                }
-                char c = (char) (b & 0xFF);
-                if (c == '\r') {
-                    continue;
-                }
-                if (c == '\n') {
-                    String line = lineBuffer.toString().trim();
-                    lineBuffer.setLength(0);
-                    if (line.isEmpty()) {
-                        continue;
-                    }
-                    lines.add(line);
-                    String upper = line.toUpperCase();
-                    if ("OK".equals(upper)) {
-                        return new AtResponse(AtResponse.Status.OK, lines);
-                    }
-                    if ("ERROR".equals(upper)) {
-                        return new AtResponse(AtResponse.Status.ERROR, lines);
-                    }
-                    if (upper.contains("UNKNOWN")) {
-                        return new AtResponse(AtResponse.Status.UNKNOWN, lines);
-                    }
-                    continue;
-                }
-                lineBuffer.append(c);
-            }
-
-            if (lineBuffer.length() > 0) {
-                lines.add(lineBuffer.toString().trim());
-            }
-            return new AtResponse(AtResponse.Status.ERROR, lines);
-        } catch (IOException e) {
-            lines.add("IOException: " + e.getMessage());
-            return new AtResponse(AtResponse.Status.ERROR, lines);
-        } finally {
-            if (timeoutMs != DEFAULT_TIMEOUT_MS) {
-                connection.setReadTimeoutMs(5000);
+            AtResponse response = null;
+            try {
+                write(out, command.getBytes(StandardCharsets.US_ASCII));
+                write(out, CRLF);
+                out.flush();
+                response = request.awaitFinal(deadlineAfter(adaptedTimeoutMs(request.verb(), timeoutMs)));
+            } catch (IOException e) {
+                request.fail(writeFailed(e));
+                response = request.abort();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                request.fail("Interrupted");
+                response = request.abort();
+            } finally {
+                pending = null;
+                record(request, response, command.length() + CRLF.length);
             }
+            return response;
         }
     }
 
@@ -113,124 +213,557 @@ public class AtChannel {
      *
      * @param command command string (e.g. "AT+CMGS=\"+5511999999999\"")
      * @param payload data to send after the prompt (e.g. message bytes + 0x1A)
-     * @param timeoutMs timeout for both waiting for ">" and for final OK/ERROR
+     * @param timeoutMs timeout for both waiting for ">" and for final OK/ERROR; with adaptive timeouts, the most
+     *                  it may be
      * @return response with status and raw lines
      */
     public AtResponse sendCommandWithPayload(String command, byte[] payload, long timeoutMs) {
-        List<String> lines = new ArrayList<>();
-        InputStream in = connection.getInputStream();
         OutputStream out = connection.getOutputStream();
-        if (in == null || out == null) {
+        if (connection.getInputStream() == null || out == null) {
             return new AtResponse(AtResponse.Status.ERROR, List.of("Port not open"));
         }
 
-        try {
-            if (timeoutMs > 0 && timeoutMs <= Integer.MAX_VALUE) {
-                connection.setReadTimeoutMs((int) timeoutMs);
+        synchronized (commandLock) {
+            String verb = verbOf(command);
+            PendingCommand request = new PendingCommand(verb, commandName(verb));
+            long effectiveTimeoutMs = adaptedTimeoutMs(request.verb(), timeoutMs);
+            resync(out);
+            pending = request;
+            String failure = ensureReader();
+            if (failure != null) {
+                pending = null;
+                return new AtResponse(AtResponse.Status.ERROR, List.of(failure));
             }
-            out.write(command.getBytes(StandardCharsets.US_ASCII));
-            out.write(CRLF);
-            out.flush();
+            parser.setPromptExpected(true);
+            AtResponse response = null;
+            int bytesOut = command.length() + CRLF.length;
+            try {
+                write(out, command.getBytes(StandardCharsets.US_ASCII));
+                write(out, CRLF);
+                out.flush();
 
-            long deadline = System.currentTimeMillis() + timeoutMs;
-            StringBuilder lineBuffer = new StringBuilder();
-            boolean seenPrompt = false;
-
-            while (System.currentTimeMillis() < deadline && !seenPrompt) {
-                int b = in.read();
-                if (b < 0) {
-                    break;
-                }
-                char c = (char) (b & 0xFF);
-                if (c == '\r') {
-                    continue;
-                }
-                if (c == '>') {
-                    seenPrompt = true;
-                    break;
-                }
-                if (c == '\n') {
-                    String line = lineBuffer.toString().trim();
-                    lineBuffer.setLength(0);
-                    if (!line.isEmpty()) {
-                        lines.add(line);
-                    }
-                    continue;
+                if (!request.awaitPrompt(deadlineAfter(effectiveTimeoutMs))) {
+                    response = request.abort();
+                    return response;
                 }
-                lineBuffer.append(c);
-            }
 
-            if (!seenPrompt) {
-                if (lineBuffer.length() > 0) {
-                    lines.add(lineBuffer.toString().trim());
-                }
-                return new AtResponse(AtResponse.Status.ERROR, lines);
+                write(out, payload);
+                out.flush();
+                bytesOut += payload.length;
+
+                response = request.awaitFinal(deadlineAfter(effectiveTimeoutMs));
+                return response;
+            } catch (IOException e) {
+                request.fail(writeFailed(e));
+                response = request.abort();
+                return response;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                request.fail("Interrupted");
+                response = request.abort();
+                return response;
+            } finally {
+                parser.setPromptExpected(false);
+                pending = null;
+                record(request, response, bytesOut);
             }
+        }
+    }
 
-            out.write(payload);
-            out.flush();
+    /**
+     * Starts a batch of commands sent with fewer round trips (e.g. the init sequence or a status poll).
+     * See {@link AtBatch} for the modes and what may be batched.
+     *
+     * @return empty batch; add commands and call {@link AtBatch#execute()}
+     */
+    public AtBatch batch() {
+        return new AtBatch(this);
+    }
 
-            lineBuffer.setLength(0);
-            deadline = System.currentTimeMillis() + timeoutMs;
+    List<AtResponse> executeSequential(List<String> commands, long timeoutMs) {
+        List<AtResponse> responses = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            responses.add(sendCommand(command, timeoutMs));
+        }
+        return responses;
+    }
 
-            while (System.currentTimeMillis() < deadline) {
-                int b = in.read();
-                if (b < 0) {
-                    break;
-                }
-                char c = (char) (b & 0xFF);
-                if (c == '\r') {
-                    continue;
-                }
-                if (c == '\n') {
-                    String line = lineBuffer.toString().trim();
-                    System.out.println(line);
-                    lineBuffer.setLength(0);
-                    if (line.isEmpty()) {
-                        continue;
-                    }
-                    lines.add(line);
+    /**
+     * Sends the commands as one ";"-chained line and splits the response by command. Lines prefixed with a
+     * command's name go to that command; other lines go to the next parameterless action (AT+CGSN) that has not
+     * answered with prefixed lines, else to the command being answered (e.g. PDU lines after +CMGL:).
+     * <p>
+     * Falls back to one command at a time if chaining is not possible. If the modem answers the line with an error,
+     * it stopped at the failing command: the commands up to the last one that answered with lines keep those lines,
+     * and only the rest run again one at a time (so a setting with no output before the failing command may run
+     * twice). If the line gets no answer, every command gets that failure without being retried.
+     */
+    List<AtResponse> executeChained(List<String> commands, long timeoutMs) {
+        if (commands.size() == 1) {
+            return executeSequential(commands, timeoutMs);
+        }
+        List<String> verbs = new ArrayList<>(commands.size());
+        StringBuilder line = new StringBuilder("AT");
+        for (String command : commands) {
+            String verb = verbOf(command);
+            char first = verb.isEmpty() ? 0 : verb.charAt(0);
+            if (first != '+' && first != '^') {
+                return executeSequential(commands, timeoutMs);
+            }
+            verbs.add(verb);
+            if (line.length() > 2) {
+                line.append(';');
+            }
+            line.append(command, 2, command.length());
+        }
+        String chained = line.toString();
+        long chainTimeoutMs = 0;
+        for (String verb : verbs) {
+            long verbTimeoutMs = adaptedTimeoutMs(verb, timeoutMs);
+            chainTimeoutMs = chainTimeoutMs > Long.MAX_VALUE - verbTimeoutMs ? Long.MAX_VALUE
+                    : chainTimeoutMs + verbTimeoutMs;
+        }
+        String[] names = new String[verbs.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = commandName(verbs.get(i));
+        }
+        PendingCommand request = new PendingCommand(verbs.toArray(new String[0]), names);
+        AtResponse response = sendCommand(chained, request, chainTimeoutMs);
+        if (!response.isOk() && (request.timedOut() || request.bytesIn() == 0 || isDisconnected()
+                || Thread.currentThread().isInterrupted())) {
+            // No answer: running the commands again would only wait out the same deadline once per command
+            return new ArrayList<>(Collections.nCopies(commands.size(), response));
+        }
 
-                    String upper = line.toUpperCase();
+        List<String> lines = response.getLines();
+        List<List<String>> split = splitChained(chained, commands, verbs,
+                lines.subList(0, Math.max(0, lines.size() - 1)));
+        List<AtResponse> responses = new ArrayList<>(commands.size());
+        if (response.isOk()) {
+            String finalLine = lines.get(lines.size() - 1);
+            for (List<String> commandLines : split) {
+                commandLines.add(finalLine);
+                responses.add(new AtResponse(AtResponse.Status.OK, commandLines));
+            }
+            return responses;
+        }
+        int answered = -1;
+        for (int i = 0; i < split.size(); i++) {
+            if (!split.get(i).isEmpty()) {
+                answered = i;
+            }
+        }
+        for (int i = 0; i <= answered; i++) {
+            List<String> commandLines = split.get(i);
+            commandLines.add("OK");
+            responses.add(new AtResponse(AtResponse.Status.OK, commandLines));
+        }
+        responses.addAll(executeSequential(commands.subList(answered + 1, commands.size()), timeoutMs));
+        return responses;
+    }
 
-                    if (upper.contains("OK")) {
-                        return new AtResponse(AtResponse.Status.OK, lines);
-                    }
-                    if (upper.startsWith("+CME ERROR:")) {
-                        return new AtResponse(AtResponse.Status.ERROR, lines);
-                    }
-                    if (upper.contains("UNKNOWN")) {
-                        return new AtResponse(AtResponse.Status.UNKNOWN, lines);
+    /**
+     * Assigns the information lines of a chained response to the commands that produced them.
+     */
+    private static List<List<String>> splitChained(String chained, List<String> commands, List<String> verbs,
+                                                   List<String> lines) {
+        List<List<String>> split = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            split.add(new ArrayList<>());
+        }
+        boolean[] prefixed = new boolean[commands.size()];
+        int cursor = 0;
+        for (String l : lines) {
+            if (l.equalsIgnoreCase(chained)) {
+                continue;
+            }
+            String name = AtReader.urcName(l);
+            int target = name != null ? indexOf(verbs, name, cursor) : -1;
+            if (target >= 0) {
+                prefixed[target] = true;
+            } else {
+                target = cursor;
+                for (int j = cursor; j < commands.size(); j++) {
+                    if (!prefixed[j] && isBareAction(commands.get(j))) {
+                        target = j;
+                        break;
                     }
-                    continue;
                 }
-                lineBuffer.append(c);
             }
+            cursor = target;
+            split.get(target).add(l);
+        }
+        return split;
+    }
 
-            if (lineBuffer.length() > 0) {
-                lines.add(lineBuffer.toString().trim());
+    /**
+     * Writes every command before reading any response. The reader moves to the next command as each one
+     * completes, so responses are matched in order.
+     */
+    List<AtResponse> executePipelined(List<String> commands, long timeoutMs) {
+        OutputStream out = connection.getOutputStream();
+        if (connection.getInputStream() == null || out == null) {
+            List<AtResponse> failed = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                failed.add(new AtResponse(AtResponse.Status.ERROR, List.of("Port not open")));
             }
-            return new AtResponse(AtResponse.Status.ERROR, lines);
-        } catch (IOException e) {
-            lines.add("IOException: " + e.getMessage());
-            return new AtResponse(AtResponse.Status.ERROR, lines);
-        } finally {
-            connection.setReadTimeoutMs(5000);
+            return failed;
+        }
+
+        synchronized (commandLock) {
+            List<PendingCommand> requests = new ArrayList<>(commands.size());
+            for (String command : commands) {
+                String verb = verbOf(command);
+                PendingCommand request = new PendingCommand(verb, commandName(verb));
+                if (!requests.isEmpty()) {
+                    requests.get(requests.size() - 1).setNext(request);
+                }
+                requests.add(request);
+            }
+            resync(out);
+            pending = requests.get(0);
+            String failure = ensureReader();
+            if (failure != null) {
+                failAll(requests.get(0), failure);
+            }
+            List<AtResponse> responses = new ArrayList<>(commands.size());
+            try {
+                if (failure == null) {
+                    for (String command : commands) {
+                        write(out, command.getBytes(StandardCharsets.US_ASCII));
+                        write(out, CRLF);
+                    }
+                    out.flush();
+                }
+                for (PendingCommand request : requests) {
+                    responses.add(request.awaitFinal(deadlineAfter(timeoutMs)));
+                }
+            } catch (IOException e) {
+                failAll(requests.get(0), writeFailed(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(requests.get(0), "Interrupted");
+            } finally {
+                pending = null;
+            }
+            for (int i = responses.size(); i < requests.size(); i++) {
+                responses.add(requests.get(i).abort());
+            }
+            for (int i = 0; i < requests.size(); i++) {
+                record(requests.get(i), responses.get(i), commands.get(i).length() + CRLF.length);
+            }
+            return responses;
         }
     }
 
     /**
      * Sends raw data (e.g. SMS body + Ctrl+Z) without appending CR/LF. Caller
-     * is responsible for terminator. Does not read response; use when the
-     * response will be read by a subsequent sendCommand or custom read.
+     * is responsible for terminator. Does not wait for a response; lines the modem
+     * sends back while no command is pending are delivered to URC listeners.
      *
      * @param data bytes to send
      */
     public void sendRaw(byte[] data) throws IOException {
         OutputStream out = connection.getOutputStream();
         if (out != null) {
-            out.write(data);
+            synchronized (commandLock) {
+                write(out, data);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for unsolicited result codes and starts the reader if needed.
+     * See {@link UrcListener} for threading rules.
+     *
+     * @param listener listener to add
+     */
+    public void addUrcListener(UrcListener listener) {
+        if (listener != null) {
+            urcListeners.add(listener);
+            synchronized (commandLock) {
+                ensureReader();
+            }
+        }
+    }
+
+    public void removeUrcListener(UrcListener listener) {
+        urcListeners.remove(listener);
+    }
+
+    /**
+     * Declares an additional code name (e.g. "+ZPAS") as unsolicited, so it is routed to listeners even
+     * while a command is pending. Names are matched case-insensitively, without the colon.
+     *
+     * @param name code name such as "+ZPAS" or "^SYSINFO"
+     */
+    public void registerUrcName(String name) {
+        if (name != null && !name.isBlank()) {
+            urcNames.add(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Stops the reader thread. The serial connection itself is closed by its owner; closing it unblocks the reader.
+     */
+    public void close() {
+        closed = true;
+        failAll(pending, "Channel closed");
+        Thread reader = readerThread;
+        if (reader != null) {
+            reader.interrupt();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    AtTrace trace() {
+        return trace;
+    }
+
+    PendingCommand pending() {
+        return pending;
+    }
+
+    boolean isUrcName(String name) {
+        return urcNames.contains(name);
+    }
+
+    void dispatch(Urc urc) {
+        for (UrcListener listener : urcListeners) {
+            try {
+                listener.onUrc(urc);
+            } catch (RuntimeException e) {
+                // A faulty listener must not kill the reader thread
+            }
+        }
+    }
+
+    /**
+     * Called by the reader when {@code done} has its final result: moves a pipeline on to its next command.
+     */
+    void completed(PendingCommand done) {
+        PendingCommand next = done.next();
+        if (next != null && pending == done) {
+            pending = next;
+        }
+    }
+
+    void readerStopped(String failure) {
+        readerFailure = closed ? "Channel closed" : failure;
+        failAll(pending, readerFailure);
+        disconnected();
+    }
+
+    /**
+     * Marks the link broken after a failed write and returns the response line for it.
+     */
+    private String writeFailed(IOException e) {
+        if (!closed) {
+            writeFailed = true;
+            disconnected();
+        }
+        return "IOException: " + e.getMessage();
+    }
+
+    private void disconnected() {
+        Runnable listener = disconnectListener;
+        if (!closed && listener != null) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                // The link is broken either way
+            }
+        }
+    }
+
+    private static void failAll(PendingCommand first, String line) {
+        for (PendingCommand c = first; c != null; c = c.next()) {
+            c.fail(line);
+        }
+    }
+
+    /**
+     * Returns whether {@code command} is an action without parameters (AT+CGSN, AT+CIMI), the kind that may
+     * answer with lines that carry no "+NAME:" prefix.
+     */
+    private static boolean isBareAction(String command) {
+        return command.indexOf('=') < 0 && command.indexOf('?') < 0;
+    }
+
+    private static int indexOf(List<String> verbs, String name, int from) {
+        for (int i = from; i < verbs.size(); i++) {
+            if (verbs.get(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String commandName(String verb) {
+        String name = commandNames.get(verb);
+        if (name == null) {
+            name = "AT" + verb;
+            commandNames.putIfAbsent(verb, name);
+        }
+        return name;
+    }
+
+    private long adaptedTimeoutMs(String verb, long timeoutMs) {
+        AdaptiveTimeouts timeouts = adaptiveTimeouts;
+        return timeouts != null ? timeouts.timeoutMsForVerb(verb, timeoutMs) : timeoutMs;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} deadline {@code timeoutMs} from now, saturating for huge timeouts.
+     */
+    private static long deadlineAfter(long timeoutMs) {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+        return System.nanoTime() + Math.min(timeoutNanos, Long.MAX_VALUE / 2);
+    }
+
+    private void write(OutputStream out, byte[] bytes) throws IOException {
+        AtTrace current = trace;
+        if (current != null) {
+            current.record(AtTrace.Direction.TX, bytes, 0, bytes.length);
+        }
+        out.write(bytes);
+    }
+
+    /**
+     * Updates the failure count and feeds the adaptive timeouts and metrics. Each command of a chained line counts
+     * under its own name, with the line's outcome and an equal share of its time and bytes.
+     */
+    private void record(PendingCommand request, AtResponse response, int bytesOut) {
+        if (request.bytesIn() > 0) {
+            consecutiveFailures.set(0);
+        } else if (response == null || response.getStatus() == AtResponse.Status.ERROR) {
+            consecutiveFailures.incrementAndGet();
+        }
+        boolean timedOut = request.timedOut();
+        lastTimedOut = timedOut;
+        if (timedOut) {
+            outOfSync = true;
+        }
+        int parts = request.parts();
+        long totalNanos = System.nanoTime() - request.startNanos();
+        AdaptiveTimeouts timeouts = adaptiveTimeouts;
+        if (timeouts != null && !timedOut && response != null && request.bytesIn() > 0) {
+            for (int i = 0; i < parts; i++) {
+                timeouts.recordVerb(request.partVerb(i), totalNanos / parts);
+            }
+        }
+        Sms4jMetrics sink = metrics;
+        if (sink == Sms4jMetrics.NOOP || response == null) {
+            return;
+        }
+        CommandOutcome outcome;
+        if (timedOut) {
+            outcome = CommandOutcome.TIMEOUT;
+        } else if (response.getStatus() == AtResponse.Status.OK) {
+            outcome = CommandOutcome.OK;
+        } else if (response.getStatus() == AtResponse.Status.UNKNOWN) {
+            outcome = CommandOutcome.UNKNOWN;
+        } else {
+            outcome = CommandOutcome.ERROR;
+        }
+        long bytesIn = request.bytesIn();
+        try {
+            for (int i = 0; i < parts; i++) {
+                sink.recordCommand(request.partName(i), outcome, i == 0 ? request.firstByteNanos() : -1,
+                        request.promptNanos(), totalNanos / parts, (int) share(bytesOut, parts, i),
+                        share(bytesIn, parts, i));
+            }
+        } catch (RuntimeException e) {
+            // Metrics must never fail a command
+        }
+    }
+
+    /**
+     * Splits {@code total} into {@code parts} whole shares, the first taking the remainder.
+     */
+    private static long share(long total, int parts, int index) {
+        return total / parts + (index == 0 ? total % parts : 0);
+    }
+
+    /**
+     * After a timeout, writes a bare AT and discards what the modem sends up to its OK, so a late answer to the
+     * timed-out command cannot complete the next one. A late final result may arrive just before that OK, so the
+     * channel then waits for it to stay quiet briefly. If the AT gets no answer, the next command tries again.
+     * Must be called with {@code commandLock} held and no command pending.
+     */
+    private void resync(OutputStream out) {
+        if (!outOfSync || ensureReader() != null) {
+            return;
+        }
+        parser.discardPartialLine();
+        try {
+            PendingCommand sync = new PendingCommand("", "AT");
+            pending = sync;
+            write(out, AT);
+            write(out, CRLF);
             out.flush();
+            sync.awaitFinal(deadlineAfter(RESYNC_TIMEOUT_MS));
+            if (sync.timedOut()) {
+                return;
+            }
+            for (int i = 0; i < MAX_LATE_RESULTS; i++) {
+                PendingCommand late = new PendingCommand("", "AT");
+                pending = late;
+                late.awaitFinal(deadlineAfter(RESYNC_SETTLE_MS));
+                if (late.timedOut()) {
+                    outOfSync = false;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            writeFailed(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pending = null;
+        }
+    }
+
+    /**
+     * Starts the reader thread on first use. Returns the failure line if the reader has stopped, else null.
+     * Must be called with {@code commandLock} held.
+     */
+    private String ensureReader() {
+        if (closed) {
+            return "Channel closed";
+        }
+        if (readerThread == null) {
+            InputStream in = connection.getInputStream();
+            if (in == null) {
+                return "Port not open";
+            }
+            Thread thread = new Thread(new AtReader(this, in, parser), "sms4j-at-reader");
+            thread.setDaemon(true);
+            readerThread = thread;
+            thread.start();
+            return null;
+        }
+        return readerFailure;
+    }
+
+    /**
+     * Returns the command name used to recognize its own response lines: "+CMGS" for "AT+CMGS=...",
+     * "+COPS" for "at+cops?", "I" for "ATI".
+     */
+    static String verbOf(String command) {
+        int start = command.regionMatches(true, 0, "AT", 0, 2) ? 2 : 0;
+        int end = start;
+        while (end < command.length()) {
+            char c = command.charAt(end);
+            if (c == '=' || c == '?' || c == ';') {
+                break;
+            }
+            end++;
         }
+        return command.substring(start, end).trim().toUpperCase(Locale.ROOT);
     }
 }
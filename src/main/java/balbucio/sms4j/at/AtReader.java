@@ -0,0 +1,186 @@
+package balbucio.sms4j.at;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reader loop of an {@link AtChannel}: the only code that reads the serial input stream.
+ * Splits the stream into response lines, which go to the pending command, and unsolicited result codes,
+ * which go to the channel's listeners.
+ * <p>
+ * While a command is pending, a line is treated as a URC only if its name is a known unsolicited code and
+ * differs from the command's own name (so "+CREG: 0,1" answers "AT+CREG?" but is a URC otherwise).
+ * With no command pending, every non-final line is a URC.
+ * Once a pipelined command completes, the next one in the pipeline becomes pending before more input is read.
+ */
+final class AtReader implements Runnable {
+
+    /** Codes that are always unsolicited, even while a command is pending. */
+    static final Set<String> DEFAULT_URC_NAMES = Set.of(
+            "+CMTI", "+CMT", "+CDS", "+CDSI", "+CBM", "+CBMI",
+            "+CREG", "+CGREG", "+CEREG", "+CUSD", "+CRING", "+CLIP",
+            "RING", "NO CARRIER",
+            "^RSSI", "^HCSQ", "^BOOT", "^MODE", "^SRVST", "^SIMST", "^DSFLOWRPT");
+
+    private final AtChannel channel;
+    private final InputStream in;
+    private final AtResponseParser parser;
+
+    private Urc urcAwaitingData;
+
+    AtReader(AtChannel channel, InputStream in, AtResponseParser parser) {
+        this.channel = channel;
+        this.in = new CountingInput(in, channel);
+        this.parser = parser;
+    }
+
+    @Override
+    public void run() {
+        String failure = "IOException: end of stream";
+        try {
+            while (!channel.isClosed()) {
+                AtResponseParser.Event event = parser.next(in, AtResponseParser.NO_DEADLINE);
+                if (event == AtResponseParser.Event.EOF) {
+                    break;
+                }
+                if (event == AtResponseParser.Event.PROMPT) {
+                    PendingCommand pending = channel.pending();
+                    if (pending != null) {
+                        pending.prompt();
+                    }
+                    continue;
+                }
+                if (event == AtResponseParser.Event.LINE) {
+                    onLine();
+                }
+            }
+        } catch (IOException e) {
+            failure = "IOException: " + e.getMessage();
+        } finally {
+            channel.readerStopped(failure);
+        }
+    }
+
+    private void onLine() {
+        String line = parser.lineString();
+        if (urcAwaitingData != null) {
+            Urc urc = new Urc(urcAwaitingData.getName(), urcAwaitingData.getLine(), line);
+            urcAwaitingData = null;
+            channel.dispatch(urc);
+            return;
+        }
+
+        AtResponseParser.LineType type = parser.lineType();
+        PendingCommand pending = channel.pending();
+        String name = type == AtResponseParser.LineType.INTERMEDIATE ? urcName(line) : null;
+
+        boolean unsolicited;
+        if (pending == null) {
+            unsolicited = type == AtResponseParser.LineType.INTERMEDIATE;
+        } else {
+            unsolicited = name != null && channel.isUrcName(name) && !pending.answers(name);
+        }
+
+        if (unsolicited) {
+            Urc urc = new Urc(name != null ? name : line.toUpperCase(Locale.ROOT), line, null);
+            if (hasDataLine(urc)) {
+                urcAwaitingData = urc;
+            } else {
+                channel.dispatch(urc);
+            }
+            return;
+        }
+        if (pending == null) {
+            // Late final result of a command that already timed out
+            return;
+        }
+
+        pending.addLine(line);
+        switch (type) {
+            case OK:
+                pending.complete(AtResponse.Status.OK);
+                break;
+            case ERROR:
+                pending.complete(AtResponse.Status.ERROR);
+                break;
+            case UNKNOWN:
+                pending.complete(AtResponse.Status.UNKNOWN);
+                break;
+            default:
+                return;
+        }
+        channel.completed(pending);
+    }
+
+    /**
+     * Returns the code name of a line (text before ':' upper-cased, or the whole line for codes such as RING),
+     * or null if the line does not look like a result code.
+     */
+    static String urcName(String line) {
+        char first = line.charAt(0);
+        int colon = line.indexOf(':');
+        if (first == '+' || first == '^') {
+            return (colon < 0 ? line : line.substring(0, colon)).trim().toUpperCase(Locale.ROOT);
+        }
+        if (colon < 0 && line.length() <= 16) {
+            return line.toUpperCase(Locale.ROOT);
+        }
+        return null;
+    }
+
+    /**
+     * +CMT and +CBM are always followed by a data line; +CDS only in PDU mode, where its argument is the length.
+     */
+    private static boolean hasDataLine(Urc urc) {
+        String name = urc.getName();
+        if ("+CMT".equals(name) || "+CBM".equals(name)) {
+            return true;
+        }
+        if ("+CDS".equals(name)) {
+            String args = urc.getArguments();
+            if (args.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < args.length(); i++) {
+                if (!Character.isDigit(args.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Attributes every chunk read to the pending command, for time-to-first-byte and bytes-in metrics,
+     * and copies it to the channel's trace if one is set.
+     */
+    private static final class CountingInput extends FilterInputStream {
+
+        private final AtChannel channel;
+
+        CountingInput(InputStream in, AtChannel channel) {
+            super(in);
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                AtTrace trace = channel.trace();
+                if (trace != null) {
+                    trace.record(AtTrace.Direction.RX, b, off, n);
+                }
+                PendingCommand pending = channel.pending();
+                if (pending != null) {
+                    pending.bytesReceived(n, System.nanoTime());
+                }
+            }
+            return n;
+        }
+    }
+}
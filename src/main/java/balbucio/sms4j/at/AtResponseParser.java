@@ -0,0 +1,231 @@
+package balbucio.sms4j.at;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the modem byte stream into lines and classifies final result codes (OK, ERROR, +CME ERROR:,
+ * +CMS ERROR:, UNKNOWN) and the "&gt;" prompt directly on the bytes.
+ * <p>
+ * Reads from the stream in bulk into a fixed buffer; the only allocation on the hot path is
+ * {@link #lineString()}, which the caller invokes for the lines it keeps. Bytes left after a final
+ * result stay buffered for the next command. Not thread-safe: one instance per reader thread; only
+ * {@link #setPromptExpected(boolean)} and {@link #discardPartialLine()} may be called from another thread.
+ */
+final class AtResponseParser {
+
+    /** Outcome of {@link #next(InputStream, long)}. */
+    enum Event {
+        /** A non-blank line is available; see {@link #lineType()} and {@link #lineString()}. */
+        LINE,
+        /** The "&gt;" prompt was seen (only reported while {@link #setPromptExpected(boolean) expected}). */
+        PROMPT,
+        /** The deadline passed before a line or prompt was complete. */
+        TIMEOUT,
+        /** The stream reached end of file. */
+        EOF
+    }
+
+    /** Classification of the current line. */
+    enum LineType {
+        INTERMEDIATE,
+        OK,
+        ERROR,
+        UNKNOWN
+    }
+
+    /** Deadline that never passes: {@link #next(InputStream, long)} returns only on a line, prompt or EOF. */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int READ_BUFFER_SIZE = 512;
+    private static final int INITIAL_LINE_SIZE = 128;
+
+    private static final byte[] OK = {'O', 'K'};
+    private static final byte[] ERROR = {'E', 'R', 'R', 'O', 'R'};
+    private static final byte[] CME_ERROR = {'+', 'C', 'M', 'E', ' ', 'E', 'R', 'R', 'O', 'R', ':'};
+    private static final byte[] CMS_ERROR = {'+', 'C', 'M', 'S', ' ', 'E', 'R', 'R', 'O', 'R', ':'};
+    private static final byte[] UNKNOWN = {'U', 'N', 'K', 'N', 'O', 'W', 'N'};
+
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int lineLength;
+    private int lineStart;
+    private int lineEnd;
+
+    private volatile boolean promptExpected;
+    private volatile boolean discardLine;
+
+    /**
+     * Sets whether the next "&gt;" byte should be reported as {@link Event#PROMPT}. Checked only when a "&gt;"
+     * byte is seen, so it can be raised by the command writer while the reader is blocked. Cleared when the
+     * prompt is reported.
+     */
+    void setPromptExpected(boolean promptExpected) {
+        this.promptExpected = promptExpected;
+    }
+
+    /**
+     * Drops the partial line before the next bytes read from the stream are parsed, so a line cut off by a timeout
+     * does not merge with the next response. Safe to call while the reader is blocked.
+     */
+    void discardPartialLine() {
+        discardLine = true;
+    }
+
+    /**
+     * Reads until a complete non-blank line, the prompt (if expected), end of stream or the deadline.
+     *
+     * @param in            stream to read from
+     * @param deadlineNanos absolute {@link System#nanoTime()} deadline, or {@link #NO_DEADLINE}
+     * @return the event that ended the read
+     * @throws IOException if the stream fails
+     */
+    Event next(InputStream in, long deadlineNanos) throws IOException {
+        while (true) {
+            while (position < limit) {
+                byte b = buffer[position++];
+                if (b == '\r') {
+                    continue;
+                }
+                if (b == '\n') {
+                    if (completeLine()) {
+                        return Event.LINE;
+                    }
+                    continue;
+                }
+                if (b == '>' && promptExpected) {
+                    promptExpected = false;
+                    lineLength = 0;
+                    return Event.PROMPT;
+                }
+                append(b);
+            }
+            if (deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0) {
+                return Event.TIMEOUT;
+            }
+            int n;
+            try {
+                n = in.read(buffer, 0, buffer.length);
+            } catch (InterruptedIOException e) {
+                n = 0;
+            }
+            if (n < 0) {
+                return Event.EOF;
+            }
+            position = 0;
+            limit = n;
+            if (discardLine) {
+                discardLine = false;
+                lineLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Classifies the current line. Matching is case-insensitive and ignores surrounding whitespace.
+     */
+    LineType lineType() {
+        if (equalsIgnoreCase(OK)) {
+            return LineType.OK;
+        }
+        if (equalsIgnoreCase(ERROR) || startsWithIgnoreCase(CME_ERROR) || startsWithIgnoreCase(CMS_ERROR)) {
+            return LineType.ERROR;
+        }
+        if (containsIgnoreCase(UNKNOWN)) {
+            return LineType.UNKNOWN;
+        }
+        return LineType.INTERMEDIATE;
+    }
+
+    /**
+     * Returns the current line, trimmed, as a String.
+     */
+    String lineString() {
+        return new String(line, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns any partial line received before a timeout or end of stream (trimmed), or null if there is none,
+     * and clears it.
+     */
+    String drainPartialLine() {
+        if (!trim()) {
+            lineLength = 0;
+            return null;
+        }
+        String partial = lineString();
+        lineLength = 0;
+        return partial;
+    }
+
+    /**
+     * Drops the partial line, if any. Buffered bytes not yet consumed are kept.
+     */
+    void resetLine() {
+        lineLength = 0;
+    }
+
+    private boolean completeLine() {
+        boolean nonBlank = trim();
+        lineLength = 0;
+        return nonBlank;
+    }
+
+    private boolean trim() {
+        int start = 0;
+        int end = lineLength;
+        while (start < end && (line[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (line[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        lineStart = start;
+        lineEnd = end;
+        return end > start;
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            byte[] grown = new byte[line.length * 2];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+        line[lineLength++] = b;
+    }
+
+    private boolean equalsIgnoreCase(byte[] token) {
+        return lineEnd - lineStart == token.length && regionMatches(lineStart, token);
+    }
+
+    private boolean startsWithIgnoreCase(byte[] token) {
+        return lineEnd - lineStart >= token.length && regionMatches(lineStart, token);
+    }
+
+    private boolean containsIgnoreCase(byte[] token) {
+        for (int i = lineStart; i <= lineEnd - token.length; i++) {
+            if (regionMatches(i, token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(int offset, byte[] token) {
+        for (int i = 0; i < token.length; i++) {
+            int c = line[offset + i];
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+package balbucio.sms4j.at;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Fixed-size record of the raw bytes sent to and received from one modem, for debugging a misbehaving device
+ * in production. All storage is allocated up front: the trace holds the last {@code frames} writes and reads,
+ * each cut into frames of at most {@code frameBytes} bytes, and overwrites the oldest once full.
+ * <p>
+ * Attach with {@link AtChannel#setTrace(AtTrace)} (or {@code Sms4j.setTrace}). A channel without a trace only
+ * reads a null field, so tracing costs nothing when off. Recording takes a short lock; {@link #dump()} may be
+ * called from any thread at any time.
+ */
+public final class AtTrace {
+
+    /** Direction of a frame. */
+    public enum Direction {
+        /** Host to modem. */
+        TX,
+        /** Modem to host. */
+        RX
+    }
+
+    private static final int DEFAULT_FRAMES = 256;
+    private static final int DEFAULT_FRAME_BYTES = 128;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private final int frameBytes;
+    private final long[] times;
+    private final boolean[] received;
+    private final int[] lengths;
+    private final byte[] data;
+    private long written;
+
+    /**
+     * Creates a trace holding the last 256 frames of up to 128 bytes each (32 KiB).
+     */
+    public AtTrace() {
+        this(DEFAULT_FRAMES, DEFAULT_FRAME_BYTES);
+    }
+
+    /**
+     * @param frames     number of frames kept
+     * @param frameBytes maximum bytes per frame; longer writes and reads span several frames
+     */
+    public AtTrace(int frames, int frameBytes) {
+        if (frames <= 0 || frameBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "frames and frameBytes must be positive: " + frames + ", " + frameBytes);
+        }
+        this.frameBytes = frameBytes;
+        this.times = new long[frames];
+        this.received = new boolean[frames];
+        this.lengths = new int[frames];
+        this.data = new byte[Math.multiplyExact(frames, frameBytes)];
+    }
+
+    /**
+     * Appends bytes sent or received. Does not allocate.
+     */
+    public synchronized void record(Direction direction, byte[] bytes, int offset, int length) {
+        long now = System.currentTimeMillis();
+        boolean rx = direction == Direction.RX;
+        while (length > 0) {
+            int slot = (int) (written % times.length);
+            int n = Math.min(length, frameBytes);
+            System.arraycopy(bytes, offset, data, slot * frameBytes, n);
+            times[slot] = now;
+            received[slot] = rx;
+            lengths[slot] = n;
+            written++;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public synchronized void clear() {
+        written = 0;
+    }
+
+    /**
+     * Returns the number of frames currently held.
+     */
+    public synchronized int size() {
+        return (int) Math.min(written, times.length);
+    }
+
+    /**
+     * Returns the frames held, oldest first, one per line: time, direction and the bytes with control
+     * characters escaped (e.g. {@code 12:00:01.250 TX AT+CMGS=23<CR><LF>}).
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            long first = Math.max(0, written - times.length);
+            for (long i = first; i < written; i++) {
+                int slot = (int) (i % times.length);
+                TIME.formatTo(Instant.ofEpochMilli(times[slot]), sb);
+                sb.append(received[slot] ? " RX " : " TX ");
+                int base = slot * frameBytes;
+                for (int j = 0; j < lengths[slot]; j++) {
+                    appendEscaped(sb, data[base + j] & 0xFF);
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, int b) {
+        switch (b) {
+            case '\r':
+                sb.append("<CR>");
+                break;
+            case '\n':
+                sb.append("<LF>");
+                break;
+            case 0x1A:
+                sb.append("<SUB>");
+                break;
+            case 0x1B:
+                sb.append("<ESC>");
+                break;
+            default:
+                if (b >= 0x20 && b < 0x7F) {
+                    sb.append((char) b);
+                } else {
+                    sb.append(String.format("<%02X>", b));
+                }
+        }
+    }
+}
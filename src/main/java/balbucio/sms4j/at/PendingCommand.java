@@ -0,0 +1,219 @@
+package balbucio.sms4j.at;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command in flight on an {@link AtChannel}: collects the response lines delivered by the reader thread
+ * and lets the sending thread wait for the prompt and the final result. Deadlines are {@link System#nanoTime()}
+ * based, so wall-clock jumps do not shorten or stretch them.
+ */
+final class PendingCommand {
+
+    private final String verb;
+    private final String name;
+    private final String[] partVerbs;
+    private final String[] partNames;
+    private final List<String> lines = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private boolean prompted;
+    private boolean timedOut;
+    private AtResponse.Status status;
+    private long promptAtNanos;
+    private volatile long firstByteAtNanos;
+    private volatile long bytesIn;
+    private volatile PendingCommand next;
+
+    /**
+     * @param verb command name without "AT" (e.g. "+CMGS")
+     * @param name command name as reported to metrics (e.g. "AT+CMGS")
+     */
+    PendingCommand(String verb, String name) {
+        this.verb = verb;
+        this.name = name;
+        this.partVerbs = null;
+        this.partNames = null;
+    }
+
+    /**
+     * A ";"-chained line, with the verb and metrics name of each command in it.
+     */
+    PendingCommand(String[] verbs, String[] names) {
+        this.verb = String.join(";", verbs);
+        this.name = null;
+        this.partVerbs = verbs;
+        this.partNames = names;
+    }
+
+    /**
+     * Returns the command name used to tell responses from URCs (e.g. "+CREG" for "AT+CREG?").
+     */
+    String verb() {
+        return verb;
+    }
+
+    /**
+     * Returns the number of commands: 1, or more for a chained line.
+     */
+    int parts() {
+        return partVerbs != null ? partVerbs.length : 1;
+    }
+
+    /**
+     * Returns the verb of command {@code index} (see {@link #parts()}).
+     */
+    String partVerb(int index) {
+        return partVerbs != null ? partVerbs[index] : verb;
+    }
+
+    /**
+     * Returns the metrics name (e.g. "AT+CMGS") of command {@code index} (see {@link #parts()}).
+     */
+    String partName(int index) {
+        return partNames != null ? partNames[index] : name;
+    }
+
+    /**
+     * Returns whether a line named {@code name} answers this command. Chained commands have one verb per
+     * command, separated by ";".
+     */
+    boolean answers(String name) {
+        if (verb.indexOf(';') < 0) {
+            return verb.equals(name);
+        }
+        int start = 0;
+        while (start <= verb.length()) {
+            int end = verb.indexOf(';', start);
+            if (end < 0) {
+                end = verb.length();
+            }
+            if (end - start == name.length() && verb.regionMatches(start, name, 0, name.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the command written right after this one in a pipeline, which becomes pending once this completes.
+     */
+    PendingCommand next() {
+        return next;
+    }
+
+    void setNext(PendingCommand next) {
+        this.next = next;
+    }
+
+    synchronized void addLine(String line) {
+        if (status == null) {
+            lines.add(line);
+        }
+    }
+
+    /**
+     * Counts bytes read while this command is pending. Called by the reader thread only.
+     */
+    void bytesReceived(int count, long nowNanos) {
+        if (firstByteAtNanos == 0) {
+            firstByteAtNanos = nowNanos;
+        }
+        bytesIn += count;
+    }
+
+    synchronized void prompt() {
+        promptAtNanos = System.nanoTime();
+        prompted = true;
+        notifyAll();
+    }
+
+    synchronized void complete(AtResponse.Status finalStatus) {
+        if (status == null) {
+            status = finalStatus;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Completes with ERROR and the given line, unless already complete.
+     */
+    synchronized void fail(String line) {
+        if (status == null) {
+            lines.add(line);
+            complete(AtResponse.Status.ERROR);
+        }
+    }
+
+    /**
+     * Waits for the prompt. Returns false if the command completed (e.g. ERROR) or the deadline passed first.
+     */
+    synchronized boolean awaitPrompt(long deadlineNanos) throws InterruptedException {
+        while (!prompted && status == null) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                timedOut = true;
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return prompted && status == null;
+    }
+
+    /**
+     * Waits for the final result. On timeout the command is completed with ERROR so late lines are ignored.
+     */
+    synchronized AtResponse awaitFinal(long deadlineNanos) throws InterruptedException {
+        while (status == null) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                status = AtResponse.Status.ERROR;
+                timedOut = true;
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return new AtResponse(status, new ArrayList<>(lines));
+    }
+
+    /**
+     * Completes with ERROR if not yet complete and returns the lines collected so far.
+     */
+    synchronized AtResponse abort() {
+        if (status == null) {
+            status = AtResponse.Status.ERROR;
+        }
+        return new AtResponse(status, new ArrayList<>(lines));
+    }
+
+    /**
+     * Returns whether a wait for the prompt or final result ran into its deadline.
+     */
+    synchronized boolean timedOut() {
+        return timedOut;
+    }
+
+    long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Returns nanoseconds from creation to the first byte read, or -1 if nothing was read.
+     */
+    long firstByteNanos() {
+        long at = firstByteAtNanos;
+        return at == 0 ? -1 : at - startNanos;
+    }
+
+    /**
+     * Returns nanoseconds from creation to the prompt, or -1 if there was none.
+     */
+    synchronized long promptNanos() {
+        return prompted ? promptAtNanos - startNanos : -1;
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+}
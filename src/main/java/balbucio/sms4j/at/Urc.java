@@ -0,0 +1,52 @@
+package balbucio.sms4j.at;
+
+/**
+ * Unsolicited result code received from the modem (e.g. +CMTI, +CDS, RING, ^RSSI).
+ * Codes that carry a second line (e.g. +CMT and PDU-mode +CDS) expose it as {@link #getData()}.
+ */
+public final class Urc {
+
+    private final String name;
+    private final String line;
+    private final String data;
+
+    public Urc(String name, String line, String data) {
+        this.name = name;
+        this.line = line;
+        this.data = data;
+    }
+
+    /**
+     * Returns the code name without the colon, upper-cased (e.g. "+CMTI", "RING", "^RSSI").
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the full first line (e.g. {@code +CMTI: "SM",3}).
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the text after the name and colon, trimmed (e.g. {@code "SM",3}); empty if there is none.
+     */
+    public String getArguments() {
+        int colon = line.indexOf(':');
+        return colon < 0 ? "" : line.substring(colon + 1).trim();
+    }
+
+    /**
+     * Returns the second line for codes that carry one (e.g. the PDU after +CMT), or null.
+     */
+    public String getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return data == null ? line : line + "\n" + data;
+    }
+}
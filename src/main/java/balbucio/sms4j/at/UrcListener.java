@@ -0,0 +1,18 @@
+package balbucio.sms4j.at;
+
+/**
+ * Receives unsolicited result codes from an {@link AtChannel}.
+ * <p>
+ * Listeners run on the channel's reader thread: they must return quickly and must not send AT commands
+ * on the same channel (the response could never be read). Hand work off to another thread instead.
+ */
+@FunctionalInterface
+public interface UrcListener {
+
+    /**
+     * Called for each unsolicited result code.
+     *
+     * @param urc the code and its optional data line
+     */
+    void onUrc(Urc urc);
+}
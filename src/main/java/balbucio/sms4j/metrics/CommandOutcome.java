@@ -0,0 +1,14 @@
+package balbucio.sms4j.metrics;
+
+/**
+ * How an AT command ended, as reported to {@link Sms4jMetrics#recordCommand}.
+ */
+public enum CommandOutcome {
+    OK,
+    /** ERROR, +CME ERROR or +CMS ERROR (also used when the port fails mid-command). */
+    ERROR,
+    /** The modem said the command is unknown or unsupported. */
+    UNKNOWN,
+    /** No final result before the deadline. */
+    TIMEOUT
+}
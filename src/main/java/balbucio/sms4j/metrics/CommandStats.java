@@ -0,0 +1,90 @@
+package balbucio.sms4j.metrics;
+
+/**
+ * Snapshot of the measurements for one AT command name, taken by {@link MetricsRecorder#snapshot()}.
+ */
+public final class CommandStats {
+
+    private final String command;
+    private final long count;
+    private final long errors;
+    private final long unknowns;
+    private final long timeouts;
+    private final long bytesOut;
+    private final long bytesIn;
+    private final HistogramSnapshot firstByte;
+    private final HistogramSnapshot prompt;
+    private final HistogramSnapshot total;
+
+    CommandStats(String command, long count, long errors, long unknowns, long timeouts, long bytesOut, long bytesIn,
+                 HistogramSnapshot firstByte, HistogramSnapshot prompt, HistogramSnapshot total) {
+        this.command = command;
+        this.count = count;
+        this.errors = errors;
+        this.unknowns = unknowns;
+        this.timeouts = timeouts;
+        this.bytesOut = bytesOut;
+        this.bytesIn = bytesIn;
+        this.firstByte = firstByte;
+        this.prompt = prompt;
+        this.total = total;
+    }
+
+    /**
+     * Returns the command name, e.g. "AT+CMGS".
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getUnknowns() {
+        return unknowns;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Returns the time from writing the command to the first byte back.
+     */
+    public HistogramSnapshot getFirstByte() {
+        return firstByte;
+    }
+
+    /**
+     * Returns the time to the "&gt;" prompt (only commands with a payload record it).
+     */
+    public HistogramSnapshot getPrompt() {
+        return prompt;
+    }
+
+    /**
+     * Returns the time to the final result.
+     */
+    public HistogramSnapshot getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandStats{" + command + ", count=" + count + ", errors=" + errors + ", unknowns=" + unknowns
+                + ", timeouts=" + timeouts + ", total=[" + total + "]}";
+    }
+}
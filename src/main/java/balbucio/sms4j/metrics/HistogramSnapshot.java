@@ -0,0 +1,86 @@
+package balbucio.sms4j.metrics;
+
+/**
+ * Immutable copy of a {@link Histogram}. Percentiles are reported as the middle of the bucket they fall in.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+
+    HistogramSnapshot(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        this.count = total;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the value at {@code percentile} (0-100) in milliseconds, or 0 if nothing was recorded.
+     */
+    public double percentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100.0 * count);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return middleMicros(i) / 1000.0;
+            }
+        }
+        return middleMicros(counts.length - 1) / 1000.0;
+    }
+
+    /**
+     * Returns the mean in milliseconds (from bucket middles), or 0 if nothing was recorded.
+     */
+    public double meanMs() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                sum += counts[i] * middleMicros(i);
+            }
+        }
+        return sum / count / 1000.0;
+    }
+
+    /**
+     * Returns the upper end of the highest non-empty bucket in milliseconds, or 0 if nothing was recorded.
+     */
+    public double maxMs() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                long upper = i + 1 < counts.length ? Histogram.lowerBound(i + 1) : Histogram.lowerBound(i);
+                return upper / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    private static double middleMicros(int index) {
+        long low = Histogram.lowerBound(index);
+        long high = index + 1 < Histogram.BUCKETS ? Histogram.lowerBound(index + 1) : low;
+        return (low + high) / 2.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms", count, percentileMs(50), percentileMs(99),
+                maxMs());
+    }
+}
@@ -0,0 +1,66 @@
+package balbucio.sms4j.metrics;
+
+import java.util.Arrays;
+
+/**
+ * The last few latencies of one operation, for percentiles that follow recent behavior. Unlike {@link Histogram},
+ * which keeps every value recorded, a sample leaves the window once {@code size} newer ones are in, so a modem that
+ * got slower (or recovered) shows within one window.
+ * <p>
+ * Exact over the window; the sorted copy used for percentiles is rebuilt only after new samples. Thread-safe.
+ */
+public final class LatencyWindow {
+
+    private final long[] samples;
+    private final long[] sorted;
+    private long count;
+    private boolean sortedValid;
+
+    /**
+     * @param size number of recent samples kept
+     */
+    public LatencyWindow(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+        this.samples = new long[size];
+        this.sorted = new long[size];
+    }
+
+    /**
+     * Records one latency in nanoseconds, evicting the oldest once the window is full. Negative values are ignored.
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+        sortedValid = false;
+    }
+
+    /**
+     * Returns how many latencies were recorded since creation, including those no longer in the window.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the {@code quantile} (e.g. 0.99) of the latencies in the window, in nanoseconds, or -1 if none were
+     * recorded.
+     */
+    public synchronized long percentile(double quantile) {
+        int n = (int) Math.min(count, samples.length);
+        if (n == 0) {
+            return -1;
+        }
+        if (!sortedValid) {
+            System.arraycopy(samples, 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+            sortedValid = true;
+        }
+        int rank = (int) Math.ceil(n * Math.min(1.0, Math.max(0.0, quantile))) - 1;
+        return sorted[Math.max(0, rank)];
+    }
+}
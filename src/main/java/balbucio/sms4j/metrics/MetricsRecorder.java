@@ -0,0 +1,77 @@
+package balbucio.sms4j.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link Sms4jMetrics} that keeps lock-free {@link Histogram}s and counters per command name. Recording never
+ * blocks and, once a command name has been seen, never allocates; {@link #snapshot()} is cheap enough to scrape
+ * every second per modem. Share one recorder between modems to aggregate them, or give each its own.
+ */
+public final class MetricsRecorder implements Sms4jMetrics {
+
+    private final ConcurrentHashMap<String, CommandRecorder> commands = new ConcurrentHashMap<>();
+    private final LongAdder sendsSucceeded = new LongAdder();
+    private final LongAdder sendsFailed = new LongAdder();
+    private final Histogram sendLatency = new Histogram();
+
+    @Override
+    public void recordCommand(String command, CommandOutcome outcome, long firstByteNanos, long promptNanos,
+                              long totalNanos, int bytesOut, long bytesIn) {
+        CommandRecorder recorder = commands.get(command);
+        if (recorder == null) {
+            recorder = commands.computeIfAbsent(command, k -> new CommandRecorder());
+        }
+        recorder.count.increment();
+        switch (outcome) {
+            case ERROR:
+                recorder.errors.increment();
+                break;
+            case UNKNOWN:
+                recorder.unknowns.increment();
+                break;
+            case TIMEOUT:
+                recorder.timeouts.increment();
+                break;
+            default:
+                break;
+        }
+        recorder.firstByte.record(firstByteNanos);
+        recorder.prompt.record(promptNanos);
+        recorder.total.record(totalNanos);
+        recorder.bytesOut.add(bytesOut);
+        recorder.bytesIn.add(bytesIn);
+    }
+
+    @Override
+    public void recordSend(boolean success, long latencyNanos) {
+        (success ? sendsSucceeded : sendsFailed).increment();
+        sendLatency.record(latencyNanos);
+    }
+
+    /**
+     * Returns a copy of everything recorded so far.
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, CommandStats> stats = new HashMap<>();
+        commands.forEach((command, r) -> stats.put(command, new CommandStats(command, r.count.sum(),
+                r.errors.sum(), r.unknowns.sum(), r.timeouts.sum(), r.bytesOut.sum(), r.bytesIn.sum(),
+                r.firstByte.snapshot(), r.prompt.snapshot(), r.total.snapshot())));
+        return new MetricsSnapshot(stats, sendsSucceeded.sum(), sendsFailed.sum(), sendLatency.snapshot());
+    }
+
+    private static final class CommandRecorder {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder unknowns = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final Histogram firstByte = new Histogram();
+        final Histogram prompt = new Histogram();
+        final Histogram total = new Histogram();
+    }
+}
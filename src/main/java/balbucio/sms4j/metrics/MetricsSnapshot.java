@@ -0,0 +1,62 @@
+package balbucio.sms4j.metrics;
+
+import java.util.Map;
+
+/**
+ * Point-in-time copy of a {@link MetricsRecorder}: per-command statistics and the driver-level send outcome.
+ */
+public final class MetricsSnapshot {
+
+    private final Map<String, CommandStats> commands;
+    private final long sendsSucceeded;
+    private final long sendsFailed;
+    private final HistogramSnapshot sendLatency;
+
+    MetricsSnapshot(Map<String, CommandStats> commands, long sendsSucceeded, long sendsFailed,
+                    HistogramSnapshot sendLatency) {
+        this.commands = Map.copyOf(commands);
+        this.sendsSucceeded = sendsSucceeded;
+        this.sendsFailed = sendsFailed;
+        this.sendLatency = sendLatency;
+    }
+
+    /**
+     * Returns statistics keyed by command name ("AT+CMGS", "AT+CSQ", ...).
+     */
+    public Map<String, CommandStats> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Returns the statistics for one command, or null if it was never sent.
+     */
+    public CommandStats getCommand(String command) {
+        return commands.get(command);
+    }
+
+    public long getSendsSucceeded() {
+        return sendsSucceeded;
+    }
+
+    public long getSendsFailed() {
+        return sendsFailed;
+    }
+
+    /**
+     * Returns succeeded / (succeeded + failed), or 1 when nothing was sent.
+     */
+    public double getSendSuccessRate() {
+        long total = sendsSucceeded + sendsFailed;
+        return total == 0 ? 1.0 : (double) sendsSucceeded / total;
+    }
+
+    public HistogramSnapshot getSendLatency() {
+        return sendLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{sends=" + sendsSucceeded + "/" + (sendsSucceeded + sendsFailed)
+                + ", sendLatency=[" + sendLatency + "], commands=" + commands.values() + "}";
+    }
+}
@@ -0,0 +1,39 @@
+package balbucio.sms4j.metrics;
+
+/**
+ * Receives per-command and per-send measurements from an {@link balbucio.sms4j.at.AtChannel} and
+ * {@link balbucio.sms4j.Sms4j}. Methods are called on the sending thread, once per command or send, and must
+ * be cheap and thread-safe. Every method has an empty default, so implementations pick what they need.
+ * <p>
+ * {@link #NOOP} is the default; {@link MetricsRecorder} keeps lock-free histograms that can be snapshotted.
+ */
+public interface Sms4jMetrics {
+
+    /** Records nothing; the channel skips measuring altogether when this is set. */
+    Sms4jMetrics NOOP = new Sms4jMetrics() {
+    };
+
+    /**
+     * Called when an AT command ends.
+     *
+     * @param command         command name with "AT" and without parameters (e.g. "AT+CMGS", "ATI", "AT")
+     * @param outcome         how it ended
+     * @param firstByteNanos  time from writing the command to the first byte received, or -1 if none arrived
+     * @param promptNanos     time to the "&gt;" prompt for commands with a payload, otherwise -1
+     * @param totalNanos      time from writing the command to the final result (or the deadline)
+     * @param bytesOut        bytes written (command, CR/LF and payload)
+     * @param bytesIn         bytes received while the command was pending
+     */
+    default void recordCommand(String command, CommandOutcome outcome, long firstByteNanos, long promptNanos,
+                               long totalNanos, int bytesOut, long bytesIn) {
+    }
+
+    /**
+     * Called when the driver has finished one SMS send (all segments).
+     *
+     * @param success      whether the modem accepted the message
+     * @param latencyNanos time the driver took, excluding queueing
+     */
+    default void recordSend(boolean success, long latencyNanos) {
+    }
+}
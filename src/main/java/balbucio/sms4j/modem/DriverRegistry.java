@@ -19,6 +19,7 @@ import balbucio.sms4j.modem.zte.ZteMf710Driver;
 public final class DriverRegistry {
 
     private static final DriverRegistry DEFAULT = new DriverRegistry();
+    private static final long PROBE_TIMEOUT_MS = 5000L;
 
     static {
         DEFAULT.register("MF710", ZteMf710Driver::new);
@@ -85,11 +86,19 @@ public final class DriverRegistry {
      * @throws Sms4jException if AT fails, ATI fails, or no driver is registered for the model
      */
     public ModemDriverFactory probe(AtChannel atChannel) throws Sms4jException {
-        AtResponse at = atChannel.sendCommand("AT");
+        return probe(atChannel, PROBE_TIMEOUT_MS);
+    }
+
+    /**
+     * Like {@link #probe(AtChannel)}, waiting at most {@code timeoutMs} for each answer (short timeouts let
+     * discovery give up quickly on ports with no modem behind them).
+     */
+    public ModemDriverFactory probe(AtChannel atChannel, long timeoutMs) throws Sms4jException {
+        AtResponse at = atChannel.sendCommand("AT", timeoutMs);
         if (!at.isOk()) {
             throw new Sms4jException("Modem did not respond to AT: " + String.join(" ", at.getLines()));
         }
-        AtResponse ati = atChannel.sendCommand("ATI");
+        AtResponse ati = atChannel.sendCommand("ATI", timeoutMs);
         if (!ati.isOk()) {
             throw new Sms4jException("Modem did not respond to ATI: " + String.join(" ", ati.getLines()));
         }
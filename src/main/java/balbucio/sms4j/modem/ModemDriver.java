@@ -1,10 +1,14 @@
 package balbucio.sms4j.modem;
 
+import java.util.List;
+
+import balbucio.sms4j.IncomingSms;
+import balbucio.sms4j.PhoneNumber;
 import balbucio.sms4j.Sms4jException;
 import balbucio.sms4j.SmsSendResult;
 
 /**
- * Contract for a modem driver: initialize and send SMS.
+ * Contract for a modem driver: initialize, send SMS and optionally receive them.
  * Drivers are created with an {@link balbucio.sms4j.at.AtChannel} via {@link ModemDriverFactory}.
  */
 public interface ModemDriver {
@@ -16,6 +20,31 @@ public interface ModemDriver {
      */
     void initialize() throws Sms4jException;
 
+    /**
+     * Like {@link #initialize()}, and records in {@code profile} what a later {@link #resume(ModemProfile)} needs:
+     * at least the IMEI, plus any optional command the modem rejected. The default just calls
+     * {@link #initialize()}, which leaves the profile empty and disables the fast path.
+     *
+     * @param profile profile to fill in
+     * @throws Sms4jException if initialization fails
+     */
+    default void initialize(ModemProfile profile) throws Sms4jException {
+        initialize();
+    }
+
+    /**
+     * Brings back a modem initialized before with {@link #initialize(ModemProfile)}: checks in as few round trips
+     * as possible that it is the same modem (IMEI) and that its settings are still in place, re-sending only the
+     * ones that were lost (e.g. after a USB reset). Returns false if the modem could not be verified; the caller
+     * then probes and initializes from scratch.
+     *
+     * @param profile profile recorded by an earlier initialization
+     * @return true if the driver is ready to send
+     */
+    default boolean resume(ModemProfile profile) {
+        return false;
+    }
+
     /**
      * Sends an SMS. Phone number in international format (e.g. +5511999999999).
      *
@@ -24,4 +53,50 @@ public interface ModemDriver {
      * @return result with success/failure and optional message ref
      */
     SmsSendResult sendSms(String phoneNumber, String message);
+
+    /**
+     * Sends an SMS to a number already validated by {@link PhoneNumber#parse(String)}. This is what
+     * {@link balbucio.sms4j.Sms4j} calls; the default passes the E.164 form to {@link #sendSms(String, String)}.
+     * Drivers that take a number apart (e.g. to encode a PDU address) can override it and skip parsing.
+     *
+     * @param phoneNumber destination number
+     * @param message     SMS body
+     * @return result with success/failure and optional message ref
+     */
+    default SmsSendResult sendSms(PhoneNumber phoneNumber, String message) {
+        return sendSms(phoneNumber.toString(), message);
+    }
+
+    /**
+     * Asks the modem to report new messages: directly as +CMT where possible, otherwise stored and announced
+     * with +CMTI. Called by {@link balbucio.sms4j.Sms4j} when an incoming listener is registered.
+     * The default reports no support.
+     *
+     * @return false if the driver cannot receive messages
+     * @throws Sms4jException if the modem rejects the configuration
+     */
+    default boolean enableIncoming() throws Sms4jException {
+        return false;
+    }
+
+    /**
+     * Reads every received message in the modem's storage and deletes what was read, in as few commands as
+     * the modem allows. Called after +CMTI (coalesced) and once when incoming is enabled.
+     *
+     * @return messages in storage order; empty if none or unsupported
+     */
+    default List<IncomingSms> fetchStoredMessages() {
+        return List.of();
+    }
+
+    /**
+     * Makes every following send request a status report and asks the modem to pass reports to the terminal
+     * as +CDS with the PDU. The default reports no support.
+     *
+     * @return false if the driver cannot request status reports
+     * @throws Sms4jException if the modem rejects the configuration
+     */
+    default boolean enableStatusReports() throws Sms4jException {
+        return false;
+    }
 }
@@ -0,0 +1,88 @@
+package balbucio.sms4j.modem;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import balbucio.sms4j.at.AtResponse;
+
+/**
+ * What was learned about one modem the last time it was opened: its identity (IMEI), the driver that fits it and
+ * which optional settings it does not support. {@link ModemDriver#resume(ModemProfile)} uses it to bring the same
+ * modem back with one verification round trip instead of the full probe and init sequence.
+ * Thread-safe; kept in a {@link ModemProfileCache}.
+ */
+public final class ModemProfile {
+
+    private final String portName;
+    private final ModemDriverFactory driverFactory;
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+    private volatile String imei;
+
+    /**
+     * @param portName      port the modem was found on
+     * @param driverFactory driver resolved for it
+     */
+    public ModemProfile(String portName, ModemDriverFactory driverFactory) {
+        this.portName = portName;
+        this.driverFactory = driverFactory;
+    }
+
+    public String getPortName() {
+        return portName;
+    }
+
+    public ModemDriverFactory getDriverFactory() {
+        return driverFactory;
+    }
+
+    /**
+     * Returns the IMEI reported during init, or null if the driver did not read it (the profile is then not
+     * cached, since the modem cannot be recognized again).
+     */
+    public String getImei() {
+        return imei;
+    }
+
+    public void setImei(String imei) {
+        this.imei = imei;
+    }
+
+    /**
+     * Records that the modem rejected an optional command, by name (e.g. "+CMEE"), so it is not sent again.
+     */
+    public void markUnsupported(String command) {
+        unsupported.add(command);
+    }
+
+    public boolean isUnsupported(String command) {
+        return unsupported.contains(command);
+    }
+
+    /**
+     * Returns the IMEI from an AT+CGSN answer (a bare line of 14 to 17 digits, optionally after "+CGSN:"),
+     * or null.
+     */
+    public static String parseImei(AtResponse response) {
+        if (response == null || !response.isOk()) {
+            return null;
+        }
+        for (String line : response.getLines()) {
+            String s = line.trim();
+            if (s.regionMatches(true, 0, "+CGSN:", 0, 6)) {
+                s = s.substring(6).trim();
+            }
+            if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
+                s = s.substring(1, s.length() - 1);
+            }
+            if (s.length() >= 14 && s.length() <= 17 && s.chars().allMatch(Character::isDigit)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "ModemProfile{" + portName + ", imei=" + imei + ", unsupported=" + unsupported + "}";
+    }
+}
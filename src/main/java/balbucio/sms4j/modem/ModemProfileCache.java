@@ -0,0 +1,45 @@
+package balbucio.sms4j.modem;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link ModemProfile}s by port name. A profile is only trusted after the modem on the port reports the
+ * same IMEI, so a modem swapped onto the port gets the full probe. Share one cache between instances (or across
+ * a pool) to keep profiles when an {@link balbucio.sms4j.Sms4j} is recreated.
+ */
+public final class ModemProfileCache {
+
+    private final Map<String, ModemProfile> byPort = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the profile last stored for {@code portName}, or null.
+     */
+    public ModemProfile get(String portName) {
+        return byPort.get(portName);
+    }
+
+    /**
+     * Stores a profile under its port, replacing the previous one. Profiles without an IMEI are ignored.
+     */
+    public void put(ModemProfile profile) {
+        if (profile != null && profile.getPortName() != null && profile.getImei() != null) {
+            byPort.put(profile.getPortName(), profile);
+        }
+    }
+
+    /**
+     * Forgets the profile for {@code portName}, so the next open probes from scratch.
+     */
+    public void invalidate(String portName) {
+        byPort.remove(portName);
+    }
+
+    public void clear() {
+        byPort.clear();
+    }
+
+    public int size() {
+        return byPort.size();
+    }
+}
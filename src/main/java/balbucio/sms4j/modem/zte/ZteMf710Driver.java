@@ -1,117 +1,337 @@
 package balbucio.sms4j.modem.zte;
 
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
+import balbucio.sms4j.IncomingSms;
+import balbucio.sms4j.PhoneNumber;
 import balbucio.sms4j.Sms4jException;
 import balbucio.sms4j.SmsSendResult;
+import balbucio.sms4j.at.AtBatch;
 import balbucio.sms4j.at.AtChannel;
 import balbucio.sms4j.at.AtResponse;
 import balbucio.sms4j.modem.ModemDriver;
+import balbucio.sms4j.modem.ModemProfile;
+import balbucio.sms4j.pdu.PduEncoder;
+import balbucio.sms4j.pdu.SubmitPdu;
 
 /**
- * Driver for ZTE MF710 modem: initialization (AT, CMEE, CMGF) and sendSms via
- * AT+CMGS. Only mandatory commands (AT, CMGF=1) fail initialization; CMEE=1 is
- * optional (some MF710 return "unknown").
+ * Driver for ZTE MF710 modem: initialization (AT, CMEE, CMGF), sendSms via
+ * AT+CMGS in PDU mode and receiving via AT+CNMI / AT+CMGL. CMEE is optional (some MF710 return "unknown");
+ * the other init commands fail initialization. Reopening with a {@link ModemProfile} verifies and repairs the
+ * settings in one or two round trips.
  */
 public class ZteMf710Driver implements ModemDriver {
 
     private static final long CMGS_TIMEOUT_MS = 30_000L;
+    private static final long CMGL_TIMEOUT_MS = 20_000L;
     private static final byte CTRL_Z = 0x1A;
 
     private final AtChannel atChannel;
     private boolean initialized;
+    /** AT+CNMI mode for SMS-DELIVER (0 off, 1 store and +CMTI, 2 +CMT) and for status reports (0 off, 1 +CDS). */
+    private int cnmiMt;
+    private int cnmiDs;
+    private volatile boolean statusReports;
+    private int concatReference = ThreadLocalRandom.current().nextInt(256);
 
     public ZteMf710Driver(AtChannel atChannel) {
         this.atChannel = atChannel;
     }
 
     /**
-     * Initializes the modem: AT (handshake), AT+CMEE=1 (optional), AT+CMGF=1
-     * (text mode). Fails if AT or CMGF fails.
+     * Initializes the modem: AT (handshake), then AT+CMEE=2 (optional), AT+CFUN=1,0, AT+COPS?, AT+CMGF=0
+     * (PDU mode) and AT+CGSN as one {@link AtChannel#batch() batch}, which costs a single round trip on modems
+     * that accept chained commands. Fails if any of them but CMEE fails.
      *
-     * @throws Sms4jException if AT or AT+CMGF=1 fails
+     * @throws Sms4jException if AT or AT+CMGF=0 fails
      */
     @Override
     public void initialize() throws Sms4jException {
+        initialize(new ModemProfile(null, ZteMf710Driver::new));
+    }
+
+    /**
+     * Runs {@link #initialize()} and records the IMEI and whether AT+CMEE is supported in {@code profile}.
+     */
+    @Override
+    public void initialize(ModemProfile profile) throws Sms4jException {
         AtResponse at = atChannel.sendCommand("AT");
         if (!at.isOk()) {
             throw new Sms4jException("Modem handshake failed (AT): " + String.join(" ", at.getLines()));
         }
 
-        AtResponse cmee = atChannel.sendCommand("AT+CMEE=2");
+        List<AtResponse> setup = atChannel.batch()
+                .add("AT+CMEE=2")
+                .add("AT+CFUN=1,0")
+                .add("at+cops?")
+                .add("AT+CMGF=0")
+                .add("AT+CGSN")
+                .execute();
+
+        AtResponse cmee = setup.get(0);
         if (cmee.isError() || cmee.isUnknown()) {
-            throw new RuntimeException("CMEE command failed: " + String.join(" ", cmee.getLines()));
+            profile.markUnsupported("+CMEE");
         }
 
-        AtResponse cfun = atChannel.sendCommand("AT+CFUN=1,0");
+        AtResponse cfun = setup.get(1);
         if (cfun.isError() || cfun.isUnknown()) {
-            throw new RuntimeException("CFUN command failed: " + String.join(" ", cmee.getLines()));
+            throw new RuntimeException("CFUN command failed: " + String.join(" ", cfun.getLines()));
         }
 
-        AtResponse cops = atChannel.sendCommand("at+cops?");
+        AtResponse cops = setup.get(2);
         if (cops.isError() || cops.isUnknown()) {
             throw new RuntimeException("COPS command failed: " + String.join(" ", cops.getLines()));
         }
 
-        AtResponse cmgf = atChannel.sendCommand("AT+CMGF=1");
+        AtResponse cmgf = setup.get(3);
         if (!cmgf.isOk()) {
-            throw new Sms4jException("SMS text mode failed (AT+CMGF=1): " + String.join(" ", cmgf.getLines()));
+            throw new Sms4jException("SMS PDU mode failed (AT+CMGF=0): " + String.join(" ", cmgf.getLines()));
         }
 
+        profile.setImei(ModemProfile.parseImei(setup.get(4)));
+        initialized = true;
+    }
+
+    /**
+     * Verifies the IMEI and reads CFUN, CMEE and CMGF in one chained query, then re-sends only the settings the
+     * modem lost. Skips CMEE if the profile says it is unsupported.
+     */
+    @Override
+    public boolean resume(ModemProfile profile) {
+        if (profile.getImei() == null) {
+            return false;
+        }
+        boolean cmeeSupported = !profile.isUnsupported("+CMEE");
+        AtBatch query = atChannel.batch().add("AT+CGSN").add("AT+CFUN?").add("AT+CMGF?");
+        if (cmeeSupported) {
+            query.add("AT+CMEE?");
+        }
+        List<AtResponse> state = query.execute();
+        for (AtResponse response : state) {
+            if (!response.isOk()) {
+                return false;
+            }
+        }
+        if (!profile.getImei().equals(ModemProfile.parseImei(state.get(0)))) {
+            return false;
+        }
+
+        AtBatch fixes = atChannel.batch();
+        int lost = 0;
+        if (!hasValue(state.get(1), "+CFUN:", "1")) {
+            fixes.add("AT+CFUN=1,0");
+            lost++;
+        }
+        if (!hasValue(state.get(2), "+CMGF:", "0")) {
+            fixes.add("AT+CMGF=0");
+            lost++;
+        }
+        if (cmeeSupported && !hasValue(state.get(3), "+CMEE:", "2")) {
+            fixes.add("AT+CMEE=2");
+            lost++;
+        }
+        if (lost > 0) {
+            for (AtResponse response : fixes.execute()) {
+                if (!response.isOk()) {
+                    return false;
+                }
+            }
+        }
         initialized = true;
+        return true;
     }
 
     /**
-     * Sends an SMS in text mode. Phone number should be in international format
-     * (e.g. +5511999999999). Message encoding is UTF-8; modem may use GSM 7-bit
-     * or UTF-16 depending on character set (see modem docs).
+     * Sends an SMS in PDU mode. The number is checked with {@link PhoneNumber#parse(String)} first,
+     * so an invalid one fails without touching the modem. The body is encoded in GSM 7-bit when every character
+     * is in the GSM 03.38 alphabet (including the extension table), UCS-2 otherwise.
+     * Bodies longer than one SMS are split into concatenated segments sent back to back
+     * under AT+CMMS=2, which keeps the radio link to the SMSC open between them.
      *
      * @param phoneNumber destination number (with + and country code)
      * @param message SMS body
-     * @return result with success/failure and raw response
+     * @return result with success/failure, one message ref per segment and raw response
      */
     @Override
     public SmsSendResult sendSms(String phoneNumber, String message) {
+        PhoneNumber number;
+        try {
+            number = PhoneNumber.parse(phoneNumber);
+        } catch (IllegalArgumentException e) {
+            return SmsSendResult.failure(e.getMessage(), "");
+        }
+        return sendSms(number, message);
+    }
+
+    /**
+     * Like {@link #sendSms(String, String)}, for a number that is already validated.
+     */
+    @Override
+    public SmsSendResult sendSms(PhoneNumber phoneNumber, String message) {
         if (!initialized) {
             return SmsSendResult.failure("Driver not initialized", "");
         }
 
-        String number = normalizeNumber(phoneNumber);
-        String command = "AT+CMGS=\"" + number + "\"";
-        byte[] payload = (message + (char) CTRL_Z).getBytes(StandardCharsets.UTF_8);
+        List<SubmitPdu> parts;
+        try {
+            parts = PduEncoder.encodeSubmitParts(phoneNumber.toString(), message, nextConcatReference(), false,
+                    statusReports);
+        } catch (IllegalArgumentException e) {
+            return SmsSendResult.failure(e.getMessage(), "");
+        }
+        if (parts.size() == 1) {
+            AtResponse response = sendPdu(parts.get(0));
+            String raw = String.join("\n", response.getLines());
+            if (response.isOk()) {
+                return SmsSendResult.success(extractMessageRef(response.getLines()), raw);
+            }
+            return failure(response, raw, List.of());
+        }
+
+        // Optional: modems without CMMS still send, only without keeping the link open
+        boolean linkKept = atChannel.sendCommand("AT+CMMS=2").isOk();
+        List<String> refs = new ArrayList<>(parts.size());
+        StringBuilder raw = new StringBuilder();
+        try {
+            for (SubmitPdu part : parts) {
+                AtResponse response = sendPdu(part);
+                if (raw.length() > 0) {
+                    raw.append('\n');
+                }
+                raw.append(String.join("\n", response.getLines()));
+                if (!response.isOk()) {
+                    return failure(response, raw.toString(), refs);
+                }
+                refs.add(extractMessageRef(response.getLines()));
+            }
+            return SmsSendResult.success(refs, raw.toString());
+        } finally {
+            if (linkKept) {
+                atChannel.sendCommand("AT+CMMS=0");
+            }
+        }
+    }
 
-        AtResponse response = atChannel.sendCommandWithPayload(command, payload, CMGS_TIMEOUT_MS);
+    /**
+     * Routes class 0/1 messages straight to the terminal as +CMT (AT+CNMI=2,2). Falls back to storing them
+     * and announcing +CMTI (AT+CNMI=2,1) if the modem rejects direct delivery.
+     */
+    @Override
+    public boolean enableIncoming() throws Sms4jException {
+        if (setCnmi(2, cnmiDs).isOk()) {
+            return true;
+        }
+        AtResponse stored = setCnmi(1, cnmiDs);
+        if (!stored.isOk()) {
+            throw new Sms4jException("Cannot enable incoming SMS (AT+CNMI): " + String.join(" ", stored.getLines()));
+        }
+        return true;
+    }
 
-        String raw = String.join("\n", response.getLines());
+    /**
+     * Sets TP-SRR on every following submit and routes reports to the terminal as +CDS (AT+CNMI ds=1).
+     */
+    @Override
+    public boolean enableStatusReports() throws Sms4jException {
+        AtResponse response = setCnmi(cnmiMt, 1);
+        if (!response.isOk()) {
+            throw new Sms4jException("Cannot enable status reports (AT+CNMI): "
+                    + String.join(" ", response.getLines()));
+        }
+        statusReports = true;
+        return true;
+    }
 
+    /**
+     * Sends AT+CNMI with both routing settings, since each call replaces the whole configuration.
+     */
+    private AtResponse setCnmi(int mt, int ds) {
+        AtResponse response = atChannel.sendCommand("AT+CNMI=2," + mt + ",0," + ds + ",0");
         if (response.isOk()) {
-            String ref = extractMessageRef(response.getLines());
-            return SmsSendResult.success(ref, raw);
+            cnmiMt = mt;
+            cnmiDs = ds;
         }
-        if (response.isUnknown()) {
-            return SmsSendResult.failure("Command not supported or unknown response", raw);
-        }
-        return SmsSendResult.failure("Send failed: " + raw, raw);
+        return response;
     }
 
-    private static String normalizeNumber(String phoneNumber) {
-        if (phoneNumber == null) {
-            return "";
+    /**
+     * Lists all messages with AT+CMGL=4, then deletes every read message with one AT+CMGD=1,1. Messages that
+     * arrive in between are still unread and survive for the next fetch. If the bulk delete is not supported,
+     * the listed indexes are deleted one by one.
+     */
+    @Override
+    public List<IncomingSms> fetchStoredMessages() {
+        AtResponse list = atChannel.sendCommand("AT+CMGL=4", CMGL_TIMEOUT_MS);
+        if (!list.isOk()) {
+            return List.of();
         }
-        String s = phoneNumber.trim();
-        if (s.isEmpty()) {
-            return s;
+        List<IncomingSms> messages = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        List<String> lines = list.getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line == null || !line.startsWith("+CMGL:") || i + 1 >= lines.size()) {
+                continue;
+            }
+            String args = line.substring(6).trim();
+            int comma = args.indexOf(',');
+            indexes.add(comma > 0 ? args.substring(0, comma).trim() : args);
+            try {
+                messages.add(IncomingSms.fromPdu(lines.get(++i)));
+            } catch (RuntimeException e) {
+                // Not an SMS-DELIVER (e.g. a stored status report) or undecodable; still deleted below, so one
+                // bad entry cannot keep the storage from being emptied
+            }
         }
-        if (s.startsWith("+")) {
-            return s;
+        if (!indexes.isEmpty() && !atChannel.sendCommand("AT+CMGD=1,1").isOk()) {
+            for (String index : indexes) {
+                atChannel.sendCommand("AT+CMGD=" + index);
+            }
         }
-        if (s.startsWith("00")) {
-            return "+" + s.substring(2);
+        return messages;
+    }
+
+    /**
+     * Returns whether the response has a "{@code prefix} value[,...]" line with the given first value.
+     */
+    private static boolean hasValue(AtResponse response, String prefix, String value) {
+        for (String line : response.getLines()) {
+            if (line.startsWith(prefix)) {
+                String rest = line.substring(prefix.length()).trim();
+                int comma = rest.indexOf(',');
+                return (comma < 0 ? rest : rest.substring(0, comma).trim()).equals(value);
+            }
         }
-        return "+" + s;
+        return false;
+    }
+
+    private AtResponse sendPdu(SubmitPdu pdu) {
+        String command = "AT+CMGS=" + pdu.getTpduLength();
+        // Hex digits are ASCII: copy them straight into the payload instead of concatenating and re-encoding
+        String hex = pdu.getHex();
+        byte[] payload = new byte[hex.length() + 1];
+        for (int i = 0; i < hex.length(); i++) {
+            payload[i] = (byte) hex.charAt(i);
+        }
+        payload[hex.length()] = CTRL_Z;
+        return atChannel.sendCommandWithPayload(command, payload, CMGS_TIMEOUT_MS);
+    }
+
+    private static SmsSendResult failure(AtResponse response, String raw, List<String> acceptedRefs) {
+        if (response.isUnknown()) {
+            return SmsSendResult.failure("Command not supported or unknown response", acceptedRefs, raw);
+        }
+        return SmsSendResult.failure("Send failed: " + raw, acceptedRefs, raw);
+    }
+
+    private int nextConcatReference() {
+        concatReference = (concatReference + 1) & 0xFF;
+        return concatReference;
     }
 
-    private static String extractMessageRef(java.util.List<String> lines) {
+    private static String extractMessageRef(List<String> lines) {
         for (String line : lines) {
             if (line != null && line.startsWith("+CMGS:")) {
                 String rest = line.substring(6).trim();
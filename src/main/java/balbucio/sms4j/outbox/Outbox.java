@@ -0,0 +1,491 @@
+package balbucio.sms4j.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import balbucio.sms4j.Sms4jException;
+
+/**
+ * Durable outbox: an append-only journal of messages to send, in a memory-mapped file.
+ * <p>
+ * {@link #append(String, String)} writes the record into the mapping and returns, so it survives a JVM restart
+ * as soon as it returns; a background thread forces the mapping to disk every few milliseconds (group commit),
+ * and {@link #sync()} waits for that when the caller needs durability against power loss. Sends are then marked
+ * {@link #markSent(long) sent} or {@link #markFailed(long) failed}; whatever is left is returned by
+ * {@link #pending()} after a restart and replayed by {@link balbucio.sms4j.Sms4j#setOutbox(Outbox)}.
+ * <p>
+ * The journal alternates between two files in the directory. Compaction writes the pending records into the
+ * other file and only then stamps it with a higher generation, so a crash during compaction leaves the old
+ * journal in charge. Records carry a CRC32; a torn tail is discarded on open.
+ */
+public final class Outbox {
+
+    private static final int MAGIC = 0x534D534F; // "SMSO"
+    private static final int VERSION = 1;
+    /** magic, version, generation. */
+    private static final int HEADER_BYTES = 16;
+    /** length, crc. */
+    private static final int RECORD_PREFIX_BYTES = 8;
+    private static final int TERMINATOR_BYTES = 4;
+
+    private static final byte TYPE_ENQUEUE = 1;
+    private static final byte TYPE_SENT = 2;
+    private static final byte TYPE_FAILED = 3;
+
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final int COMPACT_MIN_BYTES = 1 << 20;
+    private static final long DEFAULT_COMMIT_INTERVAL_MS = 5L;
+
+    private final Path[] files;
+    private final long commitIntervalMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+    private final Map<Long, OutboxEntry> pending = new LinkedHashMap<>();
+    private final Map<Long, Integer> recordSizes = new LinkedHashMap<>();
+    private final CRC32 crc = new CRC32();
+    private final Thread syncThread;
+
+    private int active;
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long liveBytes;
+    private long nextId = 1;
+    private long writeMark;
+    private long syncMark;
+    private volatile boolean closed;
+
+    private Outbox(Path directory, long commitIntervalMs) throws IOException {
+        Files.createDirectories(directory);
+        this.files = new Path[] {directory.resolve("outbox-0.journal"), directory.resolve("outbox-1.journal")};
+        this.commitIntervalMs = Math.max(1, commitIntervalMs);
+        recover();
+        this.syncThread = new Thread(this::syncLoop, "sms4j-outbox-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    /**
+     * Opens (or creates) the outbox in {@code directory}, forcing to disk every 5 ms.
+     *
+     * @throws Sms4jException if the journal cannot be opened
+     */
+    public static Outbox open(Path directory) throws Sms4jException {
+        return open(directory, DEFAULT_COMMIT_INTERVAL_MS);
+    }
+
+    /**
+     * Opens (or creates) the outbox in {@code directory}.
+     *
+     * @param commitIntervalMs how often pending writes are forced to disk
+     * @throws Sms4jException if the journal cannot be opened
+     */
+    public static Outbox open(Path directory, long commitIntervalMs) throws Sms4jException {
+        try {
+            return new Outbox(directory, commitIntervalMs);
+        } catch (IOException e) {
+            throw new Sms4jException("Cannot open outbox in " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Records a message to send. Returns as soon as the record is in the mapping (no disk wait).
+     *
+     * @return journal id to pass to {@link #markSent(long)} / {@link #markFailed(long)}
+     * @throws Sms4jException if the journal cannot grow
+     */
+    public long append(String phoneNumber, String message) throws Sms4jException {
+        byte[] phone = bytes(phoneNumber);
+        byte[] body = bytes(message);
+        if (phone.length > 0xFFFF) {
+            throw new IllegalArgumentException("Phone number too long for the outbox");
+        }
+        lock.lock();
+        try {
+            ensureOpen();
+            long id = nextId++;
+            long createdAt = System.currentTimeMillis();
+            int size = enqueueRecordSize(phone, body);
+            ensureCapacity(size);
+            position = writeEnqueue(buffer, position, id, createdAt, phone, body);
+            pending.put(id, new OutboxEntry(id, createdAt, phoneNumber, message));
+            recordSizes.put(id, size);
+            liveBytes += size;
+            writeMark++;
+            return id;
+        } catch (IOException e) {
+            throw new Sms4jException("Outbox append failed: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a message as sent. Unknown or already marked ids are ignored.
+     */
+    public void markSent(long id) throws Sms4jException {
+        mark(id, TYPE_SENT);
+    }
+
+    /**
+     * Marks a message as failed (it will not be replayed). Unknown or already marked ids are ignored.
+     */
+    public void markFailed(long id) throws Sms4jException {
+        mark(id, TYPE_FAILED);
+    }
+
+    /**
+     * Returns the messages not yet marked, oldest first.
+     */
+    public List<OutboxEntry> pending() {
+        lock.lock();
+        try {
+            return new ArrayList<>(pending.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages not yet marked.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until everything written so far has been forced to disk by the group commit.
+     */
+    public void sync() throws Sms4jException {
+        lock.lock();
+        try {
+            long target = writeMark;
+            while (syncMark < target && !closed) {
+                synced.await(commitIntervalMs * 10, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Sms4jException("Interrupted while waiting for outbox sync", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the pending messages. Runs automatically once dead records outweigh live ones.
+     */
+    public void compact() throws Sms4jException {
+        lock.lock();
+        try {
+            ensureOpen();
+            compactLocked(0);
+        } catch (IOException e) {
+            throw new Sms4jException("Outbox compaction failed: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forces outstanding writes to disk and closes the journal. Safe to call if already closed.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buffer.force();
+            syncMark = writeMark;
+            synced.signalAll();
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do; mapped data is still in the page cache
+        } finally {
+            lock.unlock();
+        }
+        syncThread.interrupt();
+    }
+
+    private void mark(long id, byte type) throws Sms4jException {
+        lock.lock();
+        try {
+            ensureOpen();
+            if (pending.remove(id) == null) {
+                return;
+            }
+            liveBytes -= recordSizes.remove(id);
+            ensureCapacity(RECORD_PREFIX_BYTES + 9);
+            position = writeMark(buffer, position, type, id);
+            writeMark++;
+        } catch (IOException e) {
+            throw new Sms4jException("Outbox update failed: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Outbox closed");
+        }
+    }
+
+    /**
+     * Makes room for a record plus the terminator: compacts if that frees enough, else grows the mapping.
+     */
+    private void ensureCapacity(int recordBytes) throws IOException {
+        if ((long) position + recordBytes + TERMINATOR_BYTES <= buffer.capacity()) {
+            return;
+        }
+        if (position - HEADER_BYTES - liveBytes > liveBytes) {
+            compactLocked(recordBytes);
+            if ((long) position + recordBytes + TERMINATOR_BYTES <= buffer.capacity()) {
+                return;
+            }
+        }
+        long needed = (long) position + recordBytes + TERMINATOR_BYTES;
+        long size = buffer.capacity();
+        while (size < needed) {
+            size *= 2;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Outbox journal too large");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void compactLocked(long extraBytes) throws IOException {
+        int target = 1 - active;
+        long size = INITIAL_SIZE;
+        while (size < HEADER_BYTES + liveBytes + extraBytes + TERMINATOR_BYTES + INITIAL_SIZE / 2) {
+            size *= 2;
+        }
+        FileChannel targetChannel = FileChannel.open(files[target],
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer targetBuffer = targetChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(size, targetChannel.size()));
+        // Invalidate first: until the new header is stamped, recovery must not trust this file
+        targetBuffer.putInt(0, 0);
+        targetBuffer.force();
+
+        int pos = HEADER_BYTES;
+        for (OutboxEntry entry : pending.values()) {
+            pos = writeEnqueue(targetBuffer, pos, entry.getId(), entry.getCreatedAtMillis(),
+                    bytes(entry.getPhoneNumber()), bytes(entry.getMessage()));
+        }
+        targetBuffer.putInt(pos, 0);
+        targetBuffer.force();
+        targetBuffer.putInt(4, VERSION);
+        targetBuffer.putLong(8, generation + 1);
+        targetBuffer.putInt(0, MAGIC);
+        targetBuffer.force();
+
+        channel.close();
+        channel = targetChannel;
+        buffer = targetBuffer;
+        active = target;
+        generation++;
+        position = pos;
+        syncMark = writeMark;
+        synced.signalAll();
+    }
+
+    private void recover() throws IOException {
+        active = -1;
+        for (int i = 0; i < files.length; i++) {
+            long fileGeneration = readGeneration(files[i]);
+            if (fileGeneration > 0 && (active < 0 || fileGeneration > generation)) {
+                active = i;
+                generation = fileGeneration;
+            }
+        }
+        boolean fresh = active < 0;
+        if (fresh) {
+            active = 0;
+            generation = 1;
+        }
+        channel = FileChannel.open(files[active],
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, channel.size()));
+        if (fresh) {
+            buffer.putInt(HEADER_BYTES, 0);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, generation);
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+        }
+        position = HEADER_BYTES;
+        while (position + RECORD_PREFIX_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || (long) position + RECORD_PREFIX_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            int start = position + RECORD_PREFIX_BYTES;
+            if (buffer.getInt(position + 4) != checksum(buffer, start, length)) {
+                break;
+            }
+            apply(start, length);
+            position = start + length;
+        }
+        if (position + TERMINATOR_BYTES <= buffer.capacity()) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    private static long readGeneration(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER_BYTES) {
+            return 0;
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // fill
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return 0;
+            }
+            return header.getLong(8);
+        }
+    }
+
+    private void apply(int start, int length) {
+        byte type = buffer.get(start);
+        long id = buffer.getLong(start + 1);
+        nextId = Math.max(nextId, id + 1);
+        if (type == TYPE_ENQUEUE) {
+            long createdAt = buffer.getLong(start + 9);
+            int phoneLength = buffer.getShort(start + 17) & 0xFFFF;
+            String phone = string(start + 19, phoneLength);
+            int messageLength = buffer.getInt(start + 19 + phoneLength);
+            String message = string(start + 23 + phoneLength, messageLength);
+            pending.put(id, new OutboxEntry(id, createdAt, phone, message));
+            recordSizes.put(id, RECORD_PREFIX_BYTES + length);
+            liveBytes += RECORD_PREFIX_BYTES + length;
+        } else if (pending.remove(id) != null) {
+            liveBytes -= recordSizes.remove(id);
+        }
+    }
+
+    private String string(int offset, int length) {
+        byte[] out = new byte[length];
+        buffer.get(offset, out);
+        return new String(out, StandardCharsets.UTF_8);
+    }
+
+    private static int enqueueRecordSize(byte[] phone, byte[] message) {
+        return RECORD_PREFIX_BYTES + 1 + 8 + 8 + 2 + phone.length + 4 + message.length;
+    }
+
+    /**
+     * Writes body, then the terminator after it, then crc and length, so a torn write is never seen as a record.
+     */
+    private int writeEnqueue(MappedByteBuffer target, int pos, long id, long createdAt, byte[] phone, byte[] message) {
+        int start = pos + RECORD_PREFIX_BYTES;
+        int length = 1 + 8 + 8 + 2 + phone.length + 4 + message.length;
+        target.put(start, TYPE_ENQUEUE);
+        target.putLong(start + 1, id);
+        target.putLong(start + 9, createdAt);
+        target.putShort(start + 17, (short) phone.length);
+        target.put(start + 19, phone);
+        target.putInt(start + 19 + phone.length, message.length);
+        target.put(start + 23 + phone.length, message);
+        return seal(target, pos, length);
+    }
+
+    private int writeMark(MappedByteBuffer target, int pos, byte type, long id) {
+        int start = pos + RECORD_PREFIX_BYTES;
+        target.put(start, type);
+        target.putLong(start + 1, id);
+        return seal(target, pos, 9);
+    }
+
+    private int seal(MappedByteBuffer target, int pos, int length) {
+        int end = pos + RECORD_PREFIX_BYTES + length;
+        if (end + TERMINATOR_BYTES <= target.capacity()) {
+            target.putInt(end, 0);
+        }
+        target.putInt(pos + 4, checksum(target, pos + RECORD_PREFIX_BYTES, length));
+        target.putInt(pos, length);
+        return end;
+    }
+
+    private int checksum(ByteBuffer source, int start, int length) {
+        crc.reset();
+        crc.update(source.duplicate().limit(start + length).position(start));
+        return (int) crc.getValue();
+    }
+
+    private static byte[] bytes(String s) {
+        return (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void syncLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(commitIntervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            MappedByteBuffer toForce;
+            long mark;
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (shouldCompact()) {
+                    try {
+                        compactLocked(0);
+                    } catch (IOException e) {
+                        // Keep appending to the current journal; compaction is retried next round
+                    }
+                }
+                if (syncMark == writeMark) {
+                    continue;
+                }
+                toForce = buffer;
+                mark = writeMark;
+            } finally {
+                lock.unlock();
+            }
+            toForce.force();
+            lock.lock();
+            try {
+                if (mark > syncMark) {
+                    syncMark = mark;
+                }
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean shouldCompact() {
+        long used = position - HEADER_BYTES;
+        return used > COMPACT_MIN_BYTES && used - liveBytes > liveBytes;
+    }
+}
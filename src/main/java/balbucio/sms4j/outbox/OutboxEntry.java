@@ -0,0 +1,41 @@
+package balbucio.sms4j.outbox;
+
+/**
+ * Message recorded in the {@link Outbox} and not yet marked sent or failed.
+ */
+public final class OutboxEntry {
+
+    private final long id;
+    private final long createdAtMillis;
+    private final String phoneNumber;
+    private final String message;
+
+    OutboxEntry(long id, long createdAtMillis, String phoneNumber, String message) {
+        this.id = id;
+        this.createdAtMillis = createdAtMillis;
+        this.phoneNumber = phoneNumber;
+        this.message = message;
+    }
+
+    /**
+     * Returns the journal id, unique within one outbox.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns when the message was appended (epoch milliseconds).
+     */
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,75 @@
+package balbucio.sms4j.pdu;
+
+/**
+ * User data alphabet of an SMS (TP-DCS, general data coding group).
+ */
+public enum DataCoding {
+
+    /** GSM 03.38 default alphabet, 7 bits per character; 160 characters per single SMS. */
+    GSM_7BIT(0x00, 160),
+
+    /** 8-bit binary data; 140 octets per single SMS. */
+    DATA_8BIT(0x04, 140),
+
+    /** UCS-2 (UTF-16BE); 70 characters per single SMS. */
+    UCS2(0x08, 70);
+
+    private final int dcs;
+    private final int singleSegmentUnits;
+
+    DataCoding(int dcs, int singleSegmentUnits) {
+        this.dcs = dcs;
+        this.singleSegmentUnits = singleSegmentUnits;
+    }
+
+    /**
+     * Returns the TP-DCS octet for this alphabet (no message class, uncompressed).
+     */
+    public int dcs() {
+        return dcs;
+    }
+
+    /**
+     * Returns how many units (septets, octets or UTF-16 code units) fit in one SMS without a user data header.
+     */
+    public int singleSegmentUnits() {
+        return singleSegmentUnits;
+    }
+
+    /**
+     * Returns the cheapest alphabet that can carry {@code text}: GSM 7-bit when every character is in the
+     * default alphabet or extension table, UCS-2 otherwise.
+     */
+    public static DataCoding cheapestFor(CharSequence text) {
+        return GsmAlphabet.canEncode(text) ? GSM_7BIT : UCS2;
+    }
+
+    /**
+     * Decodes the alphabet from a TP-DCS octet. Only the general coding groups and the 0xF0 group are interpreted;
+     * reserved values decode as {@link #GSM_7BIT}.
+     */
+    public static DataCoding fromDcs(int dcs) {
+        int group = dcs & 0xF0;
+        if ((group & 0xC0) == 0x00 || (group & 0xC0) == 0x40) {
+            if ((dcs & 0x20) != 0) {
+                // Compressed text is not supported; treat as binary
+                return DATA_8BIT;
+            }
+            switch (dcs & 0x0C) {
+                case 0x04:
+                    return DATA_8BIT;
+                case 0x08:
+                    return UCS2;
+                default:
+                    return GSM_7BIT;
+            }
+        }
+        if (group == 0xE0) {
+            return UCS2;
+        }
+        if (group == 0xF0) {
+            return (dcs & 0x04) != 0 ? DATA_8BIT : GSM_7BIT;
+        }
+        return GSM_7BIT;
+    }
+}
@@ -0,0 +1,65 @@
+package balbucio.sms4j.pdu;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Decoded SMS-DELIVER (a received message).
+ */
+public final class DeliverPdu {
+
+    private final String serviceCenter;
+    private final String originator;
+    private final OffsetDateTime timestamp;
+    private final DataCoding dataCoding;
+    private final String text;
+    private final byte[] userDataHeader;
+
+    DeliverPdu(String serviceCenter, String originator, OffsetDateTime timestamp, DataCoding dataCoding,
+               String text, byte[] userDataHeader) {
+        this.serviceCenter = serviceCenter;
+        this.originator = originator;
+        this.timestamp = timestamp;
+        this.dataCoding = dataCoding;
+        this.text = text;
+        this.userDataHeader = userDataHeader;
+    }
+
+    /**
+     * Returns the service centre address (e.g. "+5511999990000"), or null if the PDU had none.
+     */
+    public String getServiceCenter() {
+        return serviceCenter;
+    }
+
+    /**
+     * Returns the sender: digits with "+" when international, or the alphanumeric sender id.
+     */
+    public String getOriginator() {
+        return originator;
+    }
+
+    /**
+     * Returns the service centre time stamp.
+     */
+    public OffsetDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public DataCoding getDataCoding() {
+        return dataCoding;
+    }
+
+    /**
+     * Returns the message text. For {@link DataCoding#DATA_8BIT} each octet is mapped to one char (ISO-8859-1).
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns a copy of the user data header without its length octet, or null if there is none.
+     */
+    public byte[] getUserDataHeader() {
+        return userDataHeader == null ? null : userDataHeader.clone();
+    }
+}
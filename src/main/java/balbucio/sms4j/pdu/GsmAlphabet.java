@@ -0,0 +1,179 @@
+package balbucio.sms4j.pdu;
+
+import java.util.Arrays;
+
+/**
+ * GSM 03.38 default alphabet and extension table, with septet packing.
+ * <p>
+ * Characters from the extension table (e.g. "{", "€") take two septets: the escape code 0x1B followed by the
+ * extension code. Lookups use precomputed tables; nothing is allocated except the returned arrays.
+ */
+public final class GsmAlphabet {
+
+    /** Escape to the extension table. */
+    public static final int ESCAPE = 0x1B;
+
+    private static final String DEFAULT_TABLE =
+            "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞ\u001BÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+
+    private static final char[] EXTENSION_CHARS = {'\f', '^', '{', '}', '\\', '[', '~', ']', '|', '€'};
+    private static final int[] EXTENSION_CODES = {0x0A, 0x14, 0x28, 0x29, 0x2F, 0x3C, 0x3D, 0x3E, 0x40, 0x65};
+
+    /** Characters below this code point are looked up in the tables; only "€" lies above it. */
+    private static final int TABLE_SIZE = 0x400;
+    private static final char EURO = '€';
+    private static final int EURO_CODE = 0x65;
+
+    private static final byte[] TO_DEFAULT = new byte[TABLE_SIZE];
+    private static final byte[] TO_EXTENSION = new byte[TABLE_SIZE];
+    private static final char[] FROM_EXTENSION = new char[128];
+
+    static {
+        Arrays.fill(TO_DEFAULT, (byte) -1);
+        Arrays.fill(TO_EXTENSION, (byte) -1);
+        for (int i = 0; i < DEFAULT_TABLE.length(); i++) {
+            if (i != ESCAPE) {
+                TO_DEFAULT[DEFAULT_TABLE.charAt(i)] = (byte) i;
+            }
+        }
+        for (int i = 0; i < EXTENSION_CHARS.length; i++) {
+            char c = EXTENSION_CHARS[i];
+            if (c < TABLE_SIZE) {
+                TO_EXTENSION[c] = (byte) EXTENSION_CODES[i];
+            }
+            FROM_EXTENSION[EXTENSION_CODES[i]] = c;
+        }
+    }
+
+    private GsmAlphabet() {
+    }
+
+    /**
+     * Returns the number of septets needed to encode {@code text} in the default alphabet (extension characters
+     * count as two), or -1 if some character cannot be encoded.
+     */
+    public static int septetCount(CharSequence text) {
+        return septetCount(text, 0, text.length());
+    }
+
+    /**
+     * Same as {@link #septetCount(CharSequence)} for {@code text[start, end)}.
+     */
+    public static int septetCount(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < TABLE_SIZE && TO_DEFAULT[c] >= 0) {
+                count++;
+            } else if ((c < TABLE_SIZE && TO_EXTENSION[c] >= 0) || c == EURO) {
+                count += 2;
+            } else {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether every character of {@code text} is in the default alphabet or extension table.
+     */
+    public static boolean canEncode(CharSequence text) {
+        return septetCount(text) >= 0;
+    }
+
+    /**
+     * Returns the number of septets {@code c} takes (1 or 2), or -1 if it cannot be encoded.
+     */
+    public static int septetsOf(char c) {
+        if (c < TABLE_SIZE && TO_DEFAULT[c] >= 0) {
+            return 1;
+        }
+        if ((c < TABLE_SIZE && TO_EXTENSION[c] >= 0) || c == EURO) {
+            return 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes {@code text[start, end)} as unpacked septets (one per byte).
+     *
+     * @throws IllegalArgumentException if some character cannot be encoded
+     */
+    public static byte[] toSeptets(CharSequence text, int start, int end) {
+        int count = septetCount(text, start, end);
+        if (count < 0) {
+            throw new IllegalArgumentException("Text contains characters outside the GSM 7-bit alphabet");
+        }
+        byte[] septets = new byte[count];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < TABLE_SIZE && TO_DEFAULT[c] >= 0) {
+                septets[n++] = TO_DEFAULT[c];
+            } else {
+                septets[n++] = ESCAPE;
+                septets[n++] = c == EURO ? EURO_CODE : TO_EXTENSION[c];
+            }
+        }
+        return septets;
+    }
+
+    /**
+     * Decodes unpacked septets to text. Unknown extension codes decode as a space, as 03.38 recommends.
+     */
+    public static String fromSeptets(byte[] septets, int offset, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            int s = septets[i] & 0x7F;
+            if (s == ESCAPE && i + 1 < end) {
+                char c = FROM_EXTENSION[septets[++i] & 0x7F];
+                sb.append(c != 0 ? c : ' ');
+            } else {
+                sb.append(DEFAULT_TABLE.charAt(s));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Packs septets into octets, leaving {@code fillBits} zero bits first (used to align after a user data header).
+     *
+     * @return ceil((count * 7 + fillBits) / 8) octets
+     */
+    public static byte[] pack(byte[] septets, int offset, int count, int fillBits) {
+        byte[] out = new byte[(count * 7 + fillBits + 7) / 8];
+        int bit = fillBits;
+        for (int i = 0; i < count; i++) {
+            int s = septets[offset + i] & 0x7F;
+            int index = bit >> 3;
+            int shift = bit & 7;
+            out[index] |= (byte) (s << shift);
+            if (shift > 1) {
+                out[index + 1] |= (byte) (s >> (8 - shift));
+            }
+            bit += 7;
+        }
+        return out;
+    }
+
+    /**
+     * Unpacks {@code count} septets from octets starting at {@code offset}, skipping {@code fillBits} first.
+     */
+    public static byte[] unpack(byte[] octets, int offset, int count, int fillBits) {
+        byte[] septets = new byte[count];
+        int bit = fillBits;
+        for (int i = 0; i < count; i++) {
+            int index = offset + (bit >> 3);
+            int shift = bit & 7;
+            int v = (octets[index] & 0xFF) >> shift;
+            if (shift > 1 && index + 1 < octets.length) {
+                v |= (octets[index + 1] & 0xFF) << (8 - shift);
+            }
+            septets[i] = (byte) (v & 0x7F);
+            bit += 7;
+        }
+        return septets;
+    }
+}
@@ -0,0 +1,227 @@
+package balbucio.sms4j.pdu;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Decodes PDUs received from the modem in PDU mode (+CMT, +CDS, AT+CMGL/AT+CMGR with {@code AT+CMGF=0}).
+ * Each PDU starts with the service centre address, as modems report it.
+ */
+public final class PduDecoder {
+
+    private static final int MTI_MASK = 0x03;
+    private static final int MTI_DELIVER = 0x00;
+    private static final int MTI_STATUS_REPORT = 0x02;
+    private static final int UDHI = 0x40;
+    private static final int TON_ALPHANUMERIC = 0x50;
+    private static final int TON_MASK = 0x70;
+    private static final int TON_INTERNATIONAL = 0x10;
+
+    private PduDecoder() {
+    }
+
+    /**
+     * Decodes an SMS-DELIVER.
+     *
+     * @param hex PDU as hex, starting with the service centre address
+     * @return decoded message
+     * @throws IllegalArgumentException if the PDU is malformed or not an SMS-DELIVER
+     */
+    public static DeliverPdu decodeDeliver(String hex) {
+        Cursor in = new Cursor(Hex.decode(hex.trim()));
+        try {
+            String serviceCenter = readServiceCenter(in);
+            int firstOctet = in.next();
+            if ((firstOctet & MTI_MASK) != MTI_DELIVER) {
+                throw new IllegalArgumentException("Not an SMS-DELIVER PDU (first octet " + firstOctet + ")");
+            }
+            String originator = readAddress(in);
+            in.next(); // TP-PID
+            DataCoding coding = DataCoding.fromDcs(in.next());
+            OffsetDateTime timestamp = readTimestamp(in);
+            int userDataLength = in.next();
+
+            byte[] header = null;
+            String text;
+            int udStart = in.position;
+            if (coding == DataCoding.GSM_7BIT) {
+                int headerOctets = 0;
+                int fillBits = 0;
+                if ((firstOctet & UDHI) != 0) {
+                    int udhl = in.data[udStart] & 0xFF;
+                    header = in.slice(udStart + 1, udhl);
+                    headerOctets = udhl + 1;
+                    fillBits = (7 - (headerOctets * 8) % 7) % 7;
+                }
+                int headerSeptets = (headerOctets * 8 + fillBits) / 7;
+                int textSeptets = userDataLength - headerSeptets;
+                if (textSeptets < 0) {
+                    throw new IllegalArgumentException("User data length " + userDataLength
+                            + " shorter than its header: " + hex);
+                }
+                in.require(udStart + headerOctets, (textSeptets * 7 + fillBits + 7) / 8);
+                byte[] septets = GsmAlphabet.unpack(in.data, udStart + headerOctets, textSeptets, fillBits);
+                text = GsmAlphabet.fromSeptets(septets, 0, septets.length);
+            } else {
+                int offset = udStart;
+                int length = userDataLength;
+                if ((firstOctet & UDHI) != 0) {
+                    int udhl = in.data[udStart] & 0xFF;
+                    header = in.slice(udStart + 1, udhl);
+                    offset += udhl + 1;
+                    length -= udhl + 1;
+                }
+                in.require(offset, length);
+                text = new String(in.data, offset, length,
+                        coding == DataCoding.UCS2 ? StandardCharsets.UTF_16BE : StandardCharsets.ISO_8859_1);
+            }
+            return new DeliverPdu(serviceCenter, originator, timestamp, coding, text, header);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated PDU: " + hex, e);
+        }
+    }
+
+    /**
+     * Decodes an SMS-STATUS-REPORT.
+     *
+     * @param hex PDU as hex, starting with the service centre address
+     * @return decoded report
+     * @throws IllegalArgumentException if the PDU is malformed or not an SMS-STATUS-REPORT
+     */
+    public static StatusReportPdu decodeStatusReport(String hex) {
+        Cursor in = new Cursor(Hex.decode(hex.trim()));
+        try {
+            String serviceCenter = readServiceCenter(in);
+            int firstOctet = in.next();
+            if ((firstOctet & MTI_MASK) != MTI_STATUS_REPORT) {
+                throw new IllegalArgumentException("Not an SMS-STATUS-REPORT PDU (first octet " + firstOctet + ")");
+            }
+            int reference = in.next();
+            String recipient = readAddress(in);
+            OffsetDateTime serviceCenterTimestamp = readTimestamp(in);
+            OffsetDateTime dischargeTime = readTimestamp(in);
+            int status = in.next();
+            return new StatusReportPdu(serviceCenter, reference, recipient, serviceCenterTimestamp, dischargeTime,
+                    status);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated PDU: " + hex, e);
+        }
+    }
+
+    static String readServiceCenter(Cursor in) {
+        int length = in.next();
+        if (length == 0) {
+            return null;
+        }
+        int toa = in.next();
+        String digits = readSemiOctets(in, (length - 1) * 2);
+        return (toa & TON_MASK) == TON_INTERNATIONAL ? "+" + digits : digits;
+    }
+
+    /**
+     * Reads TP-OA/TP-DA/TP-RA: digit count, type of address and the digits (or packed alphanumeric text).
+     */
+    static String readAddress(Cursor in) {
+        int digits = in.next();
+        int toa = in.next();
+        int octets = (digits + 1) / 2;
+        if ((toa & TON_MASK) == TON_ALPHANUMERIC) {
+            int start = in.position;
+            in.skip(octets);
+            byte[] septets = GsmAlphabet.unpack(in.data, start, octets * 8 / 7, 0);
+            return GsmAlphabet.fromSeptets(septets, 0, septets.length);
+        }
+        String number = readSemiOctets(in, digits);
+        return (toa & TON_MASK) == TON_INTERNATIONAL ? "+" + number : number;
+    }
+
+    static OffsetDateTime readTimestamp(Cursor in) {
+        int year = swapped(in.next());
+        int month = swapped(in.next());
+        int day = swapped(in.next());
+        int hour = swapped(in.next());
+        int minute = swapped(in.next());
+        int second = swapped(in.next());
+        int tz = in.next();
+        int quarters = (tz & 0x07) * 10 + ((tz >> 4) & 0x0F);
+        if ((tz & 0x08) != 0) {
+            quarters = -quarters;
+        }
+        try {
+            return OffsetDateTime.of(2000 + year, month, day, hour, minute, second, 0,
+                    ZoneOffset.ofTotalSeconds(quarters * 15 * 60));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid timestamp in PDU: " + e.getMessage(), e);
+        }
+    }
+
+    private static String readSemiOctets(Cursor in, int digits) {
+        StringBuilder sb = new StringBuilder(digits);
+        int octets = (digits + 1) / 2;
+        for (int i = 0; i < octets; i++) {
+            int b = in.next();
+            appendDigit(sb, b & 0x0F);
+            if (sb.length() < digits) {
+                appendDigit(sb, (b >> 4) & 0x0F);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendDigit(StringBuilder sb, int nibble) {
+        if (nibble <= 9) {
+            sb.append((char) ('0' + nibble));
+        } else if (nibble == 0x0A) {
+            sb.append('*');
+        } else if (nibble == 0x0B) {
+            sb.append('#');
+        }
+        // 0x0F is padding
+    }
+
+    private static int swapped(int b) {
+        int low = b & 0x0F;
+        int high = (b >> 4) & 0x0F;
+        if (low > 9 || high > 9) {
+            throw new IllegalArgumentException("Invalid BCD digit in PDU timestamp: " + Integer.toHexString(b));
+        }
+        return low * 10 + high;
+    }
+
+    /**
+     * Read position over the decoded PDU octets.
+     */
+    static final class Cursor {
+
+        final byte[] data;
+        int position;
+
+        Cursor(byte[] data) {
+            this.data = data;
+        }
+
+        int next() {
+            return data[position++] & 0xFF;
+        }
+
+        void skip(int octets) {
+            require(position, octets);
+            position += octets;
+        }
+
+        void require(int offset, int length) {
+            if (length < 0 || offset + length > data.length) {
+                throw new ArrayIndexOutOfBoundsException("PDU too short");
+            }
+        }
+
+        byte[] slice(int offset, int length) {
+            require(offset, length);
+            byte[] out = new byte[length];
+            System.arraycopy(data, offset, out, 0, length);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package balbucio.sms4j.pdu;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes SMS-SUBMIT PDUs for PDU mode ({@code AT+CMGF=0}).
+ * <p>
+ * The service centre address is left empty (the modem uses the SIM's SMSC), the validity period is relative
+ * (4 days) and the alphabet is the cheapest one for the text unless given explicitly. Long texts are split into
+ * concatenated segments with a user data header ({@link #encodeSubmitParts(String, String, int, boolean)}).
+ */
+public final class PduEncoder {
+
+    /** Maximum user data length in octets. */
+    public static final int MAX_USER_DATA_OCTETS = 140;
+
+    private static final int MTI_SUBMIT = 0x01;
+    private static final int VPF_RELATIVE = 0x10;
+    private static final int VALIDITY_4_DAYS = 0xAA;
+    private static final int TOA_INTERNATIONAL = 0x91;
+    private static final int TOA_UNKNOWN = 0x81;
+    private static final int UDHI = 0x40;
+    private static final int SRR = 0x20;
+
+    private static final int IEI_CONCAT_8BIT = 0x00;
+    private static final int IEI_CONCAT_16BIT = 0x08;
+    /** UDHL + IEI + IEDL + ref + total + sequence. */
+    private static final int UDH_8BIT_OCTETS = 6;
+    private static final int UDH_16BIT_OCTETS = 7;
+    private static final int MAX_SEGMENTS = 255;
+
+    private PduEncoder() {
+    }
+
+    /**
+     * Encodes a single-segment SMS-SUBMIT in the cheapest alphabet for {@code text}.
+     *
+     * @param destination number, "+" and digits for international format
+     * @param text        message body
+     * @return encoded PDU
+     * @throws IllegalArgumentException if the number is malformed or the text does not fit in one SMS
+     */
+    public static SubmitPdu encodeSubmit(String destination, String text) {
+        return encodeSubmit(destination, text, DataCoding.cheapestFor(text));
+    }
+
+    /**
+     * Encodes a single-segment SMS-SUBMIT with the given alphabet.
+     *
+     * @throws IllegalArgumentException if the number is malformed, the text cannot be encoded in {@code coding},
+     *                                  or it does not fit in one SMS
+     */
+    public static SubmitPdu encodeSubmit(String destination, String text, DataCoding coding) {
+        return encodeSubmit(destination, text, coding, 0);
+    }
+
+    private static SubmitPdu encodeSubmit(String destination, String text, DataCoding coding, int flags) {
+        byte[] userData;
+        int userDataLength;
+        if (coding == DataCoding.GSM_7BIT) {
+            byte[] septets = GsmAlphabet.toSeptets(text, 0, text.length());
+            userData = GsmAlphabet.pack(septets, 0, septets.length, 0);
+            userDataLength = septets.length;
+        } else if (coding == DataCoding.UCS2) {
+            userData = text.getBytes(StandardCharsets.UTF_16BE);
+            userDataLength = userData.length;
+        } else {
+            userData = text.getBytes(StandardCharsets.ISO_8859_1);
+            userDataLength = userData.length;
+        }
+        if (userData.length > MAX_USER_DATA_OCTETS) {
+            throw new IllegalArgumentException("Message does not fit in one SMS: " + userData.length + " octets");
+        }
+        return build(destination, flags, coding, userData, userDataLength);
+    }
+
+    /**
+     * Returns how many SMS segments {@code text} takes in its cheapest alphabet with 8-bit concatenation references.
+     */
+    public static int segmentCount(String text) {
+        DataCoding coding = DataCoding.cheapestFor(text);
+        if (fitsSingle(text, coding)) {
+            return 1;
+        }
+        return split(text, coding, segmentCapacity(coding, false)).size() / 2;
+    }
+
+    /**
+     * Encodes {@code text} as one SMS-SUBMIT if it fits, otherwise as concatenated segments that each carry a
+     * concatenation header with {@code reference}, the segment count and the segment number. GSM 7-bit escape
+     * sequences and UTF-16 surrogate pairs are never split across segments.
+     *
+     * @param destination         number, "+" and digits for international format
+     * @param text                message body
+     * @param reference           concatenation reference shared by all segments (0-255, or 0-65535 for 16-bit)
+     * @param sixteenBitReference whether to use the 16-bit reference header (one unit less per segment)
+     * @return PDUs in sending order
+     * @throws IllegalArgumentException if the number is malformed or the text needs more than 255 segments
+     */
+    public static List<SubmitPdu> encodeSubmitParts(String destination, String text, int reference,
+                                                    boolean sixteenBitReference) {
+        return encodeSubmitParts(destination, text, reference, sixteenBitReference, false);
+    }
+
+    /**
+     * Same as {@link #encodeSubmitParts(String, String, int, boolean)}, optionally setting TP-SRR on every
+     * segment so the service centre sends a status report (+CDS) per segment.
+     */
+    public static List<SubmitPdu> encodeSubmitParts(String destination, String text, int reference,
+                                                    boolean sixteenBitReference, boolean statusReport) {
+        int flags = statusReport ? SRR : 0;
+        DataCoding coding = DataCoding.cheapestFor(text);
+        if (fitsSingle(text, coding)) {
+            return List.of(encodeSubmit(destination, text, coding, flags));
+        }
+        List<Integer> bounds = split(text, coding, segmentCapacity(coding, sixteenBitReference));
+        int total = bounds.size() / 2;
+        if (total > MAX_SEGMENTS) {
+            throw new IllegalArgumentException("Message needs " + total + " segments; the maximum is " + MAX_SEGMENTS);
+        }
+        List<SubmitPdu> parts = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            byte[] header = concatHeader(reference, total, i + 1, sixteenBitReference);
+            parts.add(encodeSegment(destination, text, bounds.get(2 * i), bounds.get(2 * i + 1), coding, header,
+                    flags));
+        }
+        return parts;
+    }
+
+    private static boolean fitsSingle(String text, DataCoding coding) {
+        if (coding == DataCoding.GSM_7BIT) {
+            return GsmAlphabet.septetCount(text) <= coding.singleSegmentUnits();
+        }
+        return text.length() <= coding.singleSegmentUnits();
+    }
+
+    /**
+     * Returns units (septets or UTF-16 code units) per segment after the concatenation header.
+     */
+    private static int segmentCapacity(DataCoding coding, boolean sixteenBitReference) {
+        int headerOctets = sixteenBitReference ? UDH_16BIT_OCTETS : UDH_8BIT_OCTETS;
+        if (coding == DataCoding.GSM_7BIT) {
+            // Header plus fill bits occupy whole septets
+            return (MAX_USER_DATA_OCTETS * 8 - headerOctets * 8) / 7;
+        }
+        return (MAX_USER_DATA_OCTETS - headerOctets) / 2;
+    }
+
+    /**
+     * Splits {@code text} into [start, end) char ranges of at most {@code capacity} units each.
+     */
+    private static List<Integer> split(String text, DataCoding coding, int capacity) {
+        List<Integer> bounds = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = start;
+            int units = 0;
+            while (end < text.length()) {
+                char c = text.charAt(end);
+                int width;
+                int chars = 1;
+                if (coding == DataCoding.GSM_7BIT) {
+                    width = GsmAlphabet.septetsOf(c);
+                } else if (Character.isHighSurrogate(c) && end + 1 < text.length()) {
+                    width = 2;
+                    chars = 2;
+                } else {
+                    width = 1;
+                }
+                if (units + width > capacity) {
+                    break;
+                }
+                units += width;
+                end += chars;
+            }
+            bounds.add(start);
+            bounds.add(end);
+            start = end;
+        }
+        return bounds;
+    }
+
+    private static byte[] concatHeader(int reference, int total, int sequence, boolean sixteenBitReference) {
+        if (sixteenBitReference) {
+            return new byte[] {UDH_16BIT_OCTETS - 1, IEI_CONCAT_16BIT, 4,
+                    (byte) (reference >> 8), (byte) reference, (byte) total, (byte) sequence};
+        }
+        return new byte[] {UDH_8BIT_OCTETS - 1, IEI_CONCAT_8BIT, 3, (byte) reference, (byte) total, (byte) sequence};
+    }
+
+    /**
+     * Encodes {@code text[start, end)} behind the given user data header (which includes its UDHL octet).
+     */
+    private static SubmitPdu encodeSegment(String destination, String text, int start, int end, DataCoding coding,
+                                           byte[] header, int flags) {
+        byte[] body;
+        int userDataLength;
+        if (coding == DataCoding.GSM_7BIT) {
+            byte[] septets = GsmAlphabet.toSeptets(text, start, end);
+            int fillBits = (7 - (header.length * 8) % 7) % 7;
+            body = GsmAlphabet.pack(septets, 0, septets.length, fillBits);
+            userDataLength = (header.length * 8 + fillBits) / 7 + septets.length;
+        } else {
+            body = text.substring(start, end).getBytes(StandardCharsets.UTF_16BE);
+            userDataLength = header.length + body.length;
+        }
+        byte[] userData = new byte[header.length + body.length];
+        System.arraycopy(header, 0, userData, 0, header.length);
+        System.arraycopy(body, 0, userData, header.length, body.length);
+        return build(destination, UDHI | flags, coding, userData, userDataLength);
+    }
+
+    /**
+     * Assembles the PDU around already encoded user data.
+     *
+     * @param firstOctetFlags extra TP flags (e.g. UDHI 0x40, SRR 0x20) OR-ed into the first octet
+     * @param userDataLength  TP-UDL: septets for 7-bit data, octets otherwise
+     */
+    static SubmitPdu build(String destination, int firstOctetFlags, DataCoding coding, byte[] userData,
+                           int userDataLength) {
+        byte[] address = encodeAddress(destination);
+        byte[] pdu = new byte[1 + 2 + address.length + 4 + userData.length];
+        int p = 0;
+        pdu[p++] = 0x00; // SMSC from SIM
+        pdu[p++] = (byte) (MTI_SUBMIT | VPF_RELATIVE | firstOctetFlags);
+        pdu[p++] = 0x00; // TP-MR, assigned by the modem
+        System.arraycopy(address, 0, pdu, p, address.length);
+        p += address.length;
+        pdu[p++] = 0x00; // TP-PID
+        pdu[p++] = (byte) coding.dcs();
+        pdu[p++] = (byte) VALIDITY_4_DAYS;
+        pdu[p++] = (byte) userDataLength;
+        System.arraycopy(userData, 0, pdu, p, userData.length);
+        return new SubmitPdu(Hex.encode(pdu, 0, pdu.length), pdu.length - 1, coding);
+    }
+
+    /**
+     * Encodes TP-DA: digit count, type of address and swapped semi-octets (padded with F).
+     */
+    static byte[] encodeAddress(String number) {
+        if (number == null) {
+            throw new IllegalArgumentException("Destination number is null");
+        }
+        boolean international = number.startsWith("+");
+        int start = international ? 1 : 0;
+        int digits = number.length() - start;
+        if (digits <= 0 || digits > 20) {
+            throw new IllegalArgumentException("Invalid destination number: " + number);
+        }
+        byte[] out = new byte[2 + (digits + 1) / 2];
+        out[0] = (byte) digits;
+        out[1] = (byte) (international ? TOA_INTERNATIONAL : TOA_UNKNOWN);
+        for (int i = 0; i < digits; i++) {
+            char c = number.charAt(start + i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid destination number: " + number);
+            }
+            int d = c - '0';
+            int index = 2 + i / 2;
+            out[index] |= (byte) ((i & 1) == 0 ? d : d << 4);
+        }
+        if ((digits & 1) != 0) {
+            out[out.length - 1] |= (byte) 0xF0;
+        }
+        return out;
+    }
+}
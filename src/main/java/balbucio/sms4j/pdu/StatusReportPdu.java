@@ -0,0 +1,82 @@
+package balbucio.sms4j.pdu;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Decoded SMS-STATUS-REPORT (delivery report for a message sent with the status report request flag).
+ */
+public final class StatusReportPdu {
+
+    private final String serviceCenter;
+    private final int messageReference;
+    private final String recipient;
+    private final OffsetDateTime serviceCenterTimestamp;
+    private final OffsetDateTime dischargeTime;
+    private final int status;
+
+    StatusReportPdu(String serviceCenter, int messageReference, String recipient,
+                    OffsetDateTime serviceCenterTimestamp, OffsetDateTime dischargeTime, int status) {
+        this.serviceCenter = serviceCenter;
+        this.messageReference = messageReference;
+        this.recipient = recipient;
+        this.serviceCenterTimestamp = serviceCenterTimestamp;
+        this.dischargeTime = dischargeTime;
+        this.status = status;
+    }
+
+    /**
+     * Returns the service centre address, or null if the PDU had none.
+     */
+    public String getServiceCenter() {
+        return serviceCenter;
+    }
+
+    /**
+     * Returns TP-MR of the reported message (0-255), as returned by +CMGS when it was sent.
+     */
+    public int getMessageReference() {
+        return messageReference;
+    }
+
+    /**
+     * Returns the recipient of the reported message.
+     */
+    public String getRecipient() {
+        return recipient;
+    }
+
+    /**
+     * Returns when the service centre received the reported message.
+     */
+    public OffsetDateTime getServiceCenterTimestamp() {
+        return serviceCenterTimestamp;
+    }
+
+    /**
+     * Returns when the message was delivered, or when the service centre gave up or last tried.
+     */
+    public OffsetDateTime getDischargeTime() {
+        return dischargeTime;
+    }
+
+    /**
+     * Returns TP-ST: 0x00-0x1F completed, 0x20-0x3F still trying, 0x40-0x7F failed.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns whether the message reached the recipient.
+     */
+    public boolean isDelivered() {
+        return status < 0x20;
+    }
+
+    /**
+     * Returns whether no further report will follow for this message (delivered or given up).
+     */
+    public boolean isFinal() {
+        return status < 0x20 || status >= 0x40;
+    }
+}
@@ -0,0 +1,40 @@
+package balbucio.sms4j.pdu;
+
+/**
+ * Encoded SMS-SUBMIT, ready for {@code AT+CMGS=<tpduLength>} followed by {@link #getHex()} and Ctrl+Z.
+ */
+public final class SubmitPdu {
+
+    private final String hex;
+    private final int tpduLength;
+    private final DataCoding dataCoding;
+
+    SubmitPdu(String hex, int tpduLength, DataCoding dataCoding) {
+        this.hex = hex;
+        this.tpduLength = tpduLength;
+        this.dataCoding = dataCoding;
+    }
+
+    /**
+     * Returns the full PDU (service centre address followed by the TPDU) as upper-case hex.
+     */
+    public String getHex() {
+        return hex;
+    }
+
+    /**
+     * Returns the TPDU length in octets, excluding the service centre address, as AT+CMGS expects.
+     */
+    public int getTpduLength() {
+        return tpduLength;
+    }
+
+    public DataCoding getDataCoding() {
+        return dataCoding;
+    }
+
+    @Override
+    public String toString() {
+        return hex;
+    }
+}
@@ -4,6 +4,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
 
 import balbucio.sms4j.PortInUseException;
 import balbucio.sms4j.Sms4jException;
@@ -15,7 +17,11 @@ import balbucio.sms4j.Sms4jException;
 public class SerialConnection implements SerialPortAccess {
 
     private static final int DEFAULT_BAUD_RATE = 115200;
-    private static final int DEFAULT_READ_TIMEOUT_MS = 5000;
+    /**
+     * Longest a read blocks with no data. Reads return as soon as bytes arrive, so this only bounds how long the
+     * reader thread sleeps on a silent port; command deadlines are kept by the AT layer.
+     */
+    private static final int READ_SLICE_MS = 100;
     private static final int DEFAULT_WRITE_TIMEOUT_MS = 1000;
 
     private final String portName;
@@ -45,7 +51,8 @@ public class SerialConnection implements SerialPortAccess {
     }
 
     /**
-     * Opens the port and configures 8N1. Timeouts: semi-blocking read with default read timeout.
+     * Opens the port and configures 8N1 and semi-blocking reads with a short fixed slice. This is the only time
+     * the port's timeouts are set.
      *
      * @throws PortInUseException if the port cannot be opened (e.g. in use)
      * @throws Sms4jException     if the port is not found or configuration fails
@@ -59,7 +66,7 @@ public class SerialConnection implements SerialPortAccess {
             throw new PortInUseException("Cannot open port: " + portName + " (may be in use)");
         }
         port.setComPortParameters(baudRate, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY);
-        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, DEFAULT_READ_TIMEOUT_MS, DEFAULT_WRITE_TIMEOUT_MS);
+        port.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_SLICE_MS, DEFAULT_WRITE_TIMEOUT_MS);
         inputStream = port.getInputStream();
         outputStream = port.getOutputStream();
     }
@@ -67,6 +74,7 @@ public class SerialConnection implements SerialPortAccess {
     /**
      * Closes the port and releases resources. Safe to call if already closed.
      */
+    @Override
     public void close() {
         if (port != null && port.isOpen()) {
             port.closePort();
@@ -76,6 +84,32 @@ public class SerialConnection implements SerialPortAccess {
         outputStream = null;
     }
 
+    /**
+     * Listens for jSerialComm's port-disconnected event. Call after {@link #open()}.
+     */
+    @Override
+    public void setDisconnectListener(Runnable listener) {
+        SerialPort current = port;
+        if (current == null) {
+            return;
+        }
+        current.removeDataListener();
+        if (listener == null) {
+            return;
+        }
+        current.addDataListener(new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                listener.run();
+            }
+        });
+    }
+
     @Override
     public InputStream getInputStream() {
         return inputStream;
@@ -95,10 +129,12 @@ public class SerialConnection implements SerialPortAccess {
     }
 
     /**
-     * Sets the read timeout in milliseconds. Call after open(). Used by AT layer for long-running commands (e.g. CMGS).
+     * Sets the port's read slice in milliseconds. Reconfigures the OS port, so avoid calling it per command.
      *
      * @param timeoutMs read timeout in ms
+     * @deprecated the AT layer keeps its own deadlines; the slice set by {@link #open()} is enough
      */
+    @Deprecated
     @Override
     public void setReadTimeoutMs(int timeoutMs) {
         if (port != null && port.isOpen()) {
@@ -0,0 +1,33 @@
+package balbucio.sms4j.serial;
+
+import balbucio.sms4j.PortInUseException;
+import balbucio.sms4j.Sms4jException;
+
+/**
+ * Opens the serial connection for a port name. The default opens a real port through {@link SerialConnection};
+ * tests and simulators supply their own {@link SerialPortAccess}.
+ */
+@FunctionalInterface
+public interface SerialConnectionFactory {
+
+    /**
+     * Opens the connection for the given port.
+     *
+     * @param portName system port descriptor (e.g. "COM3", "/dev/ttyUSB0")
+     * @return open connection
+     * @throws PortInUseException if the port cannot be opened
+     * @throws Sms4jException     if the port is not found or configuration fails
+     */
+    SerialPortAccess open(String portName) throws PortInUseException, Sms4jException;
+
+    /**
+     * Returns the factory that opens real ports with jSerialComm at the default baud rate.
+     */
+    static SerialConnectionFactory system() {
+        return portName -> {
+            SerialConnection connection = new SerialConnection(portName);
+            connection.open();
+            return connection;
+        };
+    }
+}
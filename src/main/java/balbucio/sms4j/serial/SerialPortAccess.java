@@ -5,6 +5,10 @@ import java.io.OutputStream;
 
 /**
  * Minimal interface for serial I/O used by the AT layer (allows test doubles).
+ * <p>
+ * The AT layer reads the input stream from one thread and keeps its own {@link System#nanoTime()} deadlines, so
+ * implementations configure timeouts once when opened: reads should return as soon as any bytes arrive and may
+ * end with {@link java.io.InterruptedIOException} (treated as "nothing yet") after a short fixed slice.
  */
 public interface SerialPortAccess {
 
@@ -12,5 +16,27 @@ public interface SerialPortAccess {
 
     OutputStream getOutputStream();
 
-    void setReadTimeoutMs(int timeoutMs);
+    /**
+     * Formerly called around every command to stretch the port's read timeout. The AT layer no longer calls it;
+     * default does nothing.
+     *
+     * @deprecated timeouts are handled by the AT layer; configure the port once when opening it
+     */
+    @Deprecated
+    default void setReadTimeoutMs(int timeoutMs) {
+    }
+
+    /**
+     * Asks to be told when the device goes away (e.g. a USB modem is unplugged or re-enumerates), as soon as the
+     * platform reports it. {@code listener} may run on any thread; null removes it. Default does nothing, in which
+     * case a lost device shows up as a failing read or write.
+     */
+    default void setDisconnectListener(Runnable listener) {
+    }
+
+    /**
+     * Closes the connection. Safe to call if already closed. Default does nothing.
+     */
+    default void close() {
+    }
 }
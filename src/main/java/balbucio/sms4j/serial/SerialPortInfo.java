@@ -0,0 +1,50 @@
+package balbucio.sms4j.serial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * A serial port present on the system: the name to open it by and the description the OS or driver gives it
+ * (e.g. "ZTE Diagnostics Interface", "USB Modem").
+ */
+public final class SerialPortInfo {
+
+    private final String name;
+    private final String description;
+
+    public SerialPortInfo(String name, String description) {
+        this.name = name;
+        this.description = description != null ? description : "";
+    }
+
+    /**
+     * Lists the serial ports jSerialComm can see, by full path (e.g. "/dev/ttyUSB0", "COM3").
+     */
+    public static List<SerialPortInfo> listSystemPorts() {
+        SerialPort[] ports = SerialPort.getCommPorts();
+        List<SerialPortInfo> result = new ArrayList<>(ports.length);
+        for (SerialPort port : ports) {
+            result.add(new SerialPortInfo(port.getSystemPortPath(),
+                    port.getDescriptivePortName() + " " + port.getPortDescription()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name passed to {@link SerialConnectionFactory#open(String)}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + description + ")";
+    }
+}
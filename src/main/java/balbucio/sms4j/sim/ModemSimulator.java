@@ -0,0 +1,701 @@
+package balbucio.sms4j.sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import balbucio.sms4j.serial.SerialPortAccess;
+
+/**
+ * In-process modem emulator: answers AT commands like a ZTE MF710 in PDU mode, so pools, queues and parsers
+ * can be exercised without hardware.
+ * <p>
+ * Behaviour is scripted with setters, which may be called at any time: per-command latency, canned responses,
+ * injected errors or silence, baud-rate throttling and unsolicited codes. AT+CMGS shows the "&gt;" prompt,
+ * reads the PDU up to Ctrl-Z and answers {@code +CMGS: <mr>}; when the PDU requests a status report and
+ * AT+CNMI enabled them, a +CDS follows after {@link #setStatusReportDelayMs(long)}.
+ * <p>
+ * Use it directly as the port of an {@link balbucio.sms4j.Sms4j}:
+ * <pre>{@code
+ * ModemSimulator sim = new ModemSimulator();
+ * Sms4j modem = new Sms4j("SIM", null, null, name -> sim);
+ * }</pre>
+ * {@link #close()} (called when the modem closes) ends the simulation; create a new simulator to reopen.
+ * For a real serial device node backed by the simulator, see {@link PtyModem}.
+ */
+public class ModemSimulator implements SerialPortAccess {
+
+    private static final int PIPE_CAPACITY = 64 * 1024;
+    private static final byte CTRL_Z = 0x1A;
+    private static final byte ESC = 0x1B;
+    private static final String CRLF = "\r\n";
+
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final Map<String, Fault> faults = new ConcurrentHashMap<>();
+    private final Map<String, String> settings = new ConcurrentHashMap<>(Map.of("+CMEE", "0", "+CFUN", "1",
+            "+CMGF", "0"));
+    private final TreeMap<Integer, StoredMessage> storage = new TreeMap<>();
+    private final AtomicInteger messageReference = new AtomicInteger(ThreadLocalRandom.current().nextInt(256));
+    private final AtomicLong submitted = new AtomicLong();
+    private final Object outputLock = new Object();
+
+    private volatile long defaultLatencyMs;
+    private volatile int baudRate;
+    private volatile boolean echo = true;
+    private volatile String model = "ZTE MF710";
+    private volatile String imei = "860000000000001";
+    private volatile boolean strict;
+    private volatile boolean chaining = true;
+    private volatile long statusReportDelayMs = 10;
+    private volatile int statusReportStatus;
+    private volatile int storageCapacity = 30;
+    private volatile Consumer<String> submitListener;
+    private volatile int cnmiMt;
+    private volatile int cnmiDs;
+    private volatile Runnable disconnectListener;
+
+    private BytePipe hostToModem;
+    private BytePipe modemToHost;
+    private OutputStream toHost;
+    private Thread engine;
+    private ScheduledExecutorService scheduler;
+    private long paceNanos;
+    private volatile boolean closed;
+
+    /**
+     * Sets the delay before answering every command without its own latency (default 0).
+     */
+    public void setDefaultLatencyMs(long latencyMs) {
+        this.defaultLatencyMs = Math.max(0, latencyMs);
+    }
+
+    /**
+     * Sets the delay before answering {@code command} (e.g. "AT+CMGS" or "+CMGS"; matched by name, ignoring
+     * parameters). For AT+CMGS the delay runs after the PDU is received, as the radio send would.
+     */
+    public void setLatencyMs(String command, long latencyMs) {
+        latencies.put(verbOf(command), Math.max(0, latencyMs));
+    }
+
+    /**
+     * Limits both directions to {@code baudRate} bits per second (10 bits per byte, 8N1). 0 disables throttling.
+     */
+    public void setBaudRate(int baudRate) {
+        this.baudRate = Math.max(0, baudRate);
+    }
+
+    /**
+     * Sets whether commands are echoed (default true, as real modems; ATE0/ATE1 change it too).
+     */
+    public void setEcho(boolean echo) {
+        this.echo = echo;
+    }
+
+    /**
+     * Sets the ATI answer (default "ZTE MF710", which selects the ZTE driver).
+     */
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    /**
+     * Sets the AT+CGSN answer.
+     */
+    public void setImei(String imei) {
+        this.imei = imei;
+    }
+
+    /**
+     * Sets whether commands the simulator does not know answer ERROR (default false: OK).
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Sets whether ";"-chained command lines are accepted (default true; false answers them ERROR).
+     */
+    public void setChaining(boolean chaining) {
+        this.chaining = chaining;
+    }
+
+    /**
+     * Answers exactly {@code command} (case-insensitive, parameters included) with the given lines, e.g.
+     * {@code respond("AT+CSQ", "+CSQ: 31,99", "OK")}. The last line should be the final result code.
+     */
+    public void respond(String command, String... lines) {
+        responses.put(command.trim().toUpperCase(Locale.ROOT), String.join(CRLF, lines));
+    }
+
+    /**
+     * Makes the next {@code times} executions of {@code command} answer {@code errorLine}
+     * (e.g. "+CMS ERROR: 500") instead of succeeding. A null {@code errorLine} means no answer at all.
+     */
+    public void failNext(String command, int times, String errorLine) {
+        faults.computeIfAbsent(verbOf(command), k -> new Fault()).failNext(times, errorLine);
+    }
+
+    /**
+     * Makes each execution of {@code command} answer {@code errorLine} with the given probability (0 to 1).
+     * A null {@code errorLine} means no answer at all.
+     */
+    public void setFailureRate(String command, double rate, String errorLine) {
+        faults.computeIfAbsent(verbOf(command), k -> new Fault()).rate(rate, errorLine);
+    }
+
+    /**
+     * Sets the delay between a send and its +CDS status report (default 10 ms).
+     */
+    public void setStatusReportDelayMs(long delayMs) {
+        this.statusReportDelayMs = Math.max(0, delayMs);
+    }
+
+    /**
+     * Sets TP-ST of generated status reports (default 0, delivered; e.g. 0x41 for a permanent failure).
+     */
+    public void setStatusReportStatus(int status) {
+        this.statusReportStatus = status & 0xFF;
+    }
+
+    /**
+     * Sets how many received messages the simulated SIM can store (default 30).
+     */
+    public void setStorageCapacity(int capacity) {
+        this.storageCapacity = Math.max(0, capacity);
+    }
+
+    /**
+     * Called with the PDU hex of every AT+CMGS, on the simulator thread.
+     */
+    public void setSubmitListener(Consumer<String> listener) {
+        this.submitListener = listener;
+    }
+
+    /**
+     * Returns how many AT+CMGS were accepted.
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Returns how many received messages are stored.
+     */
+    public int getStoredCount() {
+        synchronized (storage) {
+            return storage.size();
+        }
+    }
+
+    /**
+     * Sends an unsolicited result code (e.g. "+CREG: 1" or "RING") to the host.
+     */
+    public void emitUrc(String line) {
+        emit(CRLF + line + CRLF);
+    }
+
+    /**
+     * Sends an unsolicited result code followed by its data line (e.g. "+CMT: ,24" and the PDU).
+     */
+    public void emitUrc(String line, String data) {
+        emit(CRLF + line + CRLF + data + CRLF);
+    }
+
+    /**
+     * Simulates a received SMS-DELIVER PDU (hex, starting with the SMSC address). Routed as AT+CNMI says:
+     * +CMT with the PDU for mode 2, otherwise stored (and announced with +CMTI for mode 1).
+     * Dropped if storage is full.
+     */
+    public void receivePdu(String pduHex) {
+        if (cnmiMt == 2) {
+            emitUrc("+CMT: ," + (pduHex.length() / 2 - 1 - Integer.parseInt(pduHex.substring(0, 2), 16)), pduHex);
+            return;
+        }
+        int index;
+        synchronized (storage) {
+            if (storage.size() >= storageCapacity) {
+                return;
+            }
+            index = 0;
+            while (storage.containsKey(index)) {
+                index++;
+            }
+            storage.put(index, new StoredMessage(pduHex));
+        }
+        if (cnmiMt == 1) {
+            emitUrc("+CMTI: \"SM\"," + index);
+        }
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        attachPipes();
+        return modemToHost.in();
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() {
+        attachPipes();
+        return hostToModem.out();
+    }
+
+    @Override
+    public void setDisconnectListener(Runnable listener) {
+        this.disconnectListener = listener;
+    }
+
+    /**
+     * Simulates pulling the modem out: reports the disconnect as jSerialComm would, then stops like
+     * {@link #close()}.
+     */
+    public void unplug() {
+        Runnable listener = disconnectListener;
+        if (listener != null) {
+            listener.run();
+        }
+        close();
+    }
+
+    /**
+     * Stops the simulator: the host sees end of stream.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (hostToModem != null) {
+            hostToModem.close();
+            modemToHost.close();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (engine != null) {
+            engine.interrupt();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void attachPipes() {
+        if (hostToModem == null) {
+            hostToModem = new BytePipe(PIPE_CAPACITY);
+            modemToHost = new BytePipe(PIPE_CAPACITY);
+            attach(hostToModem.in(), modemToHost.out(), "sms4j-sim");
+        }
+    }
+
+    /**
+     * Starts serving commands read from {@code fromHost} and answering on {@code toHost}.
+     */
+    synchronized void attach(InputStream fromHost, OutputStream toHost, String threadName) {
+        if (engine != null) {
+            throw new IllegalStateException("Simulator already attached");
+        }
+        this.toHost = toHost;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName + "-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.engine = new Thread(() -> serve(fromHost), threadName);
+        this.engine.setDaemon(true);
+        this.engine.start();
+    }
+
+    private void serve(InputStream fromHost) {
+        byte[] chunk = new byte[4096];
+        StringBuilder line = new StringBuilder();
+        boolean payloadMode = false;
+        try {
+            int n;
+            while (!closed && (n = fromHost.read(chunk)) >= 0) {
+                pace(n);
+                for (int i = 0; i < n; i++) {
+                    byte b = chunk[i];
+                    if (payloadMode) {
+                        if (b == CTRL_Z) {
+                            payloadMode = false;
+                            onSubmit(line.toString().trim());
+                            line.setLength(0);
+                        } else if (b == ESC) {
+                            payloadMode = false;
+                            line.setLength(0);
+                            write(CRLF + "OK" + CRLF);
+                        } else if (b != '\r' && b != '\n') {
+                            line.append((char) b);
+                        }
+                    } else if (b == '\r' || b == '\n') {
+                        String command = line.toString().trim();
+                        line.setLength(0);
+                        if (!command.isEmpty()) {
+                            payloadMode = onCommand(command);
+                        }
+                    } else {
+                        line.append((char) b);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Host side closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Handles one command line.
+     *
+     * @return true if the prompt was sent and the payload follows
+     */
+    private boolean onCommand(String command) throws IOException, InterruptedException {
+        if (echo) {
+            write(command + "\r");
+        }
+        String upper = command.toUpperCase(Locale.ROOT);
+        String verb = verbOf(upper);
+        if (verb.equals("+CMGS")) {
+            write(CRLF + "> ");
+            return true;
+        }
+        String response = upper.indexOf(';') >= 0 ? chained(upper) : responseTo(upper, verb);
+        if (response != null) {
+            write(CRLF + response + CRLF);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the full response to one command (information lines and final result), or null to stay silent.
+     */
+    private String responseTo(String command, String verb) throws InterruptedException {
+        sleep(latencyOf(verb));
+        String canned = responses.get(command);
+        if (canned != null) {
+            return canned;
+        }
+        Fault fault = faults.get(verb);
+        if (fault != null && fault.trigger()) {
+            return fault.errorLine();
+        }
+        return answer(command, verb);
+    }
+
+    /**
+     * Runs a ";"-chained line (AT+CMEE=2;+CMGF=0) command by command, stopping at the first one that does not
+     * end with OK, and ends with a single final result.
+     */
+    private String chained(String line) throws InterruptedException {
+        if (!chaining) {
+            return "ERROR";
+        }
+        StringBuilder info = new StringBuilder();
+        for (String part : line.substring(2).split(";")) {
+            String command = "AT" + part.trim();
+            String verb = verbOf(command);
+            if (verb.equals("+CMGS")) {
+                return info + "ERROR";
+            }
+            String response = responseTo(command, verb);
+            if (response == null) {
+                return null;
+            }
+            if (!response.endsWith("OK")) {
+                return info + response;
+            }
+            info.append(response, 0, response.length() - 2);
+        }
+        return info + "OK";
+    }
+
+    private String answer(String command, String verb) {
+        switch (verb) {
+            case "+CMEE":
+            case "+CFUN":
+            case "+CMGF":
+                return setting(command, verb);
+            case "":
+            case "+CMMS":
+            case "+CSMS":
+            case "+CPMS":
+                return "OK";
+            case "E0":
+                echo = false;
+                return "OK";
+            case "E1":
+                echo = true;
+                return "OK";
+            case "I":
+                return model + CRLF + CRLF + "OK";
+            case "+CGSN":
+                return imei + CRLF + CRLF + "OK";
+            case "+COPS":
+                return command.endsWith("?") ? "+COPS: 0,0,\"SIMULATOR\",2" + CRLF + CRLF + "OK" : "OK";
+            case "+CSQ":
+                return "+CSQ: 20,99" + CRLF + CRLF + "OK";
+            case "+CNMI":
+                return configureCnmi(command);
+            case "+CMGL":
+                return listStored();
+            case "+CMGD":
+                return deleteStored(command);
+            default:
+                return strict ? "ERROR" : "OK";
+        }
+    }
+
+    /**
+     * Stores the first argument of a set command and answers queries with it ("+CMEE: 2").
+     */
+    private String setting(String command, String verb) {
+        if (command.endsWith("?")) {
+            return verb + ": " + settings.get(verb) + CRLF + CRLF + "OK";
+        }
+        String[] args = arguments(command);
+        if (args.length > 0) {
+            settings.put(verb, args[0].trim());
+        }
+        return "OK";
+    }
+
+    private String configureCnmi(String command) {
+        String[] args = arguments(command);
+        try {
+            cnmiMt = args.length > 1 ? Integer.parseInt(args[1].trim()) : 0;
+            cnmiDs = args.length > 3 ? Integer.parseInt(args[3].trim()) : 0;
+        } catch (NumberFormatException e) {
+            return "+CMS ERROR: 303";
+        }
+        return "OK";
+    }
+
+    private String listStored() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (storage) {
+            for (Map.Entry<Integer, StoredMessage> e : storage.entrySet()) {
+                String pdu = e.getValue().pdu;
+                int tpduLength = pdu.length() / 2 - 1 - Integer.parseInt(pdu.substring(0, 2), 16);
+                sb.append("+CMGL: ").append(e.getKey()).append(',').append(e.getValue().read ? 1 : 0)
+                        .append(",,").append(tpduLength).append(CRLF).append(pdu).append(CRLF);
+                e.getValue().read = true;
+            }
+        }
+        return sb.append(CRLF).append("OK").toString();
+    }
+
+    private String deleteStored(String command) {
+        String[] args = arguments(command);
+        try {
+            int index = Integer.parseInt(args[0].trim());
+            int flag = args.length > 1 ? Integer.parseInt(args[1].trim()) : 0;
+            synchronized (storage) {
+                if (flag == 0) {
+                    storage.remove(index);
+                } else if (flag == 1) {
+                    storage.values().removeIf(m -> m.read);
+                } else {
+                    storage.clear();
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "+CMS ERROR: 321";
+        }
+        return "OK";
+    }
+
+    private void onSubmit(String pduHex) throws IOException, InterruptedException {
+        sleep(latencyOf("+CMGS"));
+        Fault fault = faults.get("+CMGS");
+        if (fault != null && fault.trigger()) {
+            if (fault.errorLine() != null) {
+                write(CRLF + fault.errorLine() + CRLF);
+            }
+            return;
+        }
+        int mr = messageReference.updateAndGet(v -> (v + 1) & 0xFF);
+        submitted.incrementAndGet();
+        Consumer<String> listener = submitListener;
+        if (listener != null) {
+            listener.accept(pduHex);
+        }
+        write(CRLF + "+CMGS: " + mr + CRLF + CRLF + "OK" + CRLF);
+        if (cnmiDs == 1) {
+            String report = statusReportFor(pduHex, mr);
+            if (report != null) {
+                try {
+                    scheduler.schedule(() -> emitUrc("+CDS: " + (report.length() / 2 - 1), report),
+                            statusReportDelayMs, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Closing
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds an SMS-STATUS-REPORT for a submit that set TP-SRR, or returns null if it did not.
+     */
+    private String statusReportFor(String submitHex, int mr) {
+        try {
+            int p = (Integer.parseInt(submitHex.substring(0, 2), 16) + 1) * 2;
+            int firstOctet = Integer.parseInt(submitHex.substring(p, p + 2), 16);
+            if ((firstOctet & 0x20) == 0) {
+                return null;
+            }
+            p += 4; // first octet, TP-MR
+            int digits = Integer.parseInt(submitHex.substring(p, p + 2), 16);
+            String address = submitHex.substring(p, p + 4 + (digits + 1) / 2 * 2);
+            String now = timestamp(ZonedDateTime.now(ZoneOffset.UTC));
+            return String.format("0006%02X", mr) + address + now + now + String.format("%02X", statusReportStatus);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String timestamp(ZonedDateTime t) {
+        int[] fields = {t.getYear() % 100, t.getMonthValue(), t.getDayOfMonth(), t.getHour(), t.getMinute(),
+                t.getSecond(), 0};
+        StringBuilder sb = new StringBuilder(14);
+        for (int f : fields) {
+            sb.append(f % 10).append(f / 10);
+        }
+        return sb.toString();
+    }
+
+    private void emit(String text) {
+        try {
+            write(text);
+        } catch (IOException e) {
+            // Host side closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(String text) throws IOException, InterruptedException {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        synchronized (outputLock) {
+            OutputStream out = toHost;
+            if (out == null || closed) {
+                throw new IOException("Simulator closed");
+            }
+            pace(bytes.length);
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sleeps as long as {@code bytes} take on the wire at the configured baud rate.
+     */
+    private void pace(int bytes) throws InterruptedException {
+        int baud = baudRate;
+        if (baud <= 0) {
+            return;
+        }
+        long cost = bytes * 10L * 1_000_000_000L / baud;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            paceNanos = Math.max(paceNanos, now) + cost;
+            wait = paceNanos - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private long latencyOf(String verb) {
+        Long latency = latencies.get(verb);
+        return latency != null ? latency : defaultLatencyMs;
+    }
+
+    private static void sleep(long ms) throws InterruptedException {
+        if (ms > 0) {
+            Thread.sleep(ms);
+        }
+    }
+
+    /**
+     * Returns the command name without "AT" and parameters, upper-cased (e.g. "+CMGS", "I", "" for "AT").
+     */
+    static String verbOf(String command) {
+        String s = command.trim().toUpperCase(Locale.ROOT);
+        if (s.startsWith("AT")) {
+            s = s.substring(2);
+        }
+        int end = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '=' || c == '?') {
+                end = i;
+                break;
+            }
+        }
+        return s.substring(0, end);
+    }
+
+    private static String[] arguments(String command) {
+        int eq = command.indexOf('=');
+        return eq < 0 ? new String[0] : command.substring(eq + 1).split(",");
+    }
+
+    /**
+     * Injected failures for one command: a countdown and/or a probability.
+     */
+    private static final class Fault {
+
+        private final AtomicInteger remaining = new AtomicInteger();
+        private volatile double rate;
+        private volatile String errorLine;
+
+        void failNext(int times, String line) {
+            errorLine = line;
+            remaining.set(Math.max(0, times));
+        }
+
+        void rate(double probability, String line) {
+            errorLine = line;
+            rate = probability;
+        }
+
+        boolean trigger() {
+            if (remaining.getAndUpdate(v -> v > 0 ? v - 1 : 0) > 0) {
+                return true;
+            }
+            double r = rate;
+            return r > 0 && ThreadLocalRandom.current().nextDouble() < r;
+        }
+
+        String errorLine() {
+            return errorLine;
+        }
+    }
+
+    private static final class StoredMessage {
+
+        final String pdu;
+        boolean read;
+
+        StoredMessage(String pdu) {
+            this.pdu = pdu;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package balbucio.sms4j.sim;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Exposes a {@link ModemSimulator} as a pseudo-terminal, so code that opens a real serial port by name (including
+ * {@link balbucio.sms4j.serial.SerialConnection} and tools like minicom) talks to the simulator.
+ * <p>
+ * Linux and macOS only; needs {@code socat} on the PATH. socat creates a linked pair of PTYs: the application
+ * opens {@link #getPath()}, the simulator serves the other end.
+ */
+public final class PtyModem {
+
+    private static final long STARTUP_TIMEOUT_MS = 5_000L;
+
+    private final Process socat;
+    private final Path path;
+    private final ModemSimulator simulator;
+    private final InputStream fromHost;
+    private final OutputStream toHost;
+
+    private PtyModem(Process socat, Path path, ModemSimulator simulator, InputStream fromHost, OutputStream toHost) {
+        this.socat = socat;
+        this.path = path;
+        this.simulator = simulator;
+        this.fromHost = fromHost;
+        this.toHost = toHost;
+    }
+
+    /**
+     * Starts socat and serves {@code simulator} on a PTY linked at {@code link} (e.g. /tmp/ttySIM0).
+     *
+     * @param simulator simulator not yet used in-process
+     * @param link      path of the symlink the application opens
+     * @throws IOException if socat is missing or the PTYs do not appear
+     */
+    public static PtyModem start(ModemSimulator simulator, Path link) throws IOException {
+        Path modemSide = link.resolveSibling(link.getFileName() + ".modem");
+        Process socat = new ProcessBuilder("socat",
+                "pty,raw,echo=0,link=" + link.toAbsolutePath(),
+                "pty,raw,echo=0,link=" + modemSide.toAbsolutePath())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (!(Files.exists(link) && Files.exists(modemSide))) {
+            if (!socat.isAlive() || System.currentTimeMillis() >= deadline) {
+                socat.destroy();
+                throw new IOException("socat did not create the PTY pair at " + link);
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                socat.destroy();
+                throw new IOException("Interrupted while starting socat", e);
+            }
+        }
+        InputStream in = new FileInputStream(modemSide.toFile());
+        OutputStream out = new FileOutputStream(modemSide.toFile());
+        simulator.attach(in, out, "sms4j-sim-pty");
+        return new PtyModem(socat, link, simulator, in, out);
+    }
+
+    /**
+     * Returns the device path the application should open.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Stops the simulator and socat; the application side sees the device disappear.
+     */
+    public void close() {
+        simulator.close();
+        socat.destroy();
+        try {
+            fromHost.close();
+            toHost.close();
+        } catch (IOException e) {
+            // Already gone with socat
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkSendTest {
+
+    private Sms4j modem;
+    private Sms4jPool pool;
+
+    @After
+    public void tearDown() {
+        if (modem != null) {
+            modem.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private static Sms4j simModem(String port, ModemSimulator sim) {
+        return new Sms4j(port, null, null, name -> sim);
+    }
+
+    /** Generates recipients on demand and tracks how far ahead of the results the iteration gets. */
+    private static final class Generated implements Iterable<Recipient> {
+
+        private final int count;
+        private final AtomicInteger pulled = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private volatile int maxAhead;
+
+        Generated(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public Iterator<Recipient> iterator() {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return pulled.get() < count;
+                }
+
+                @Override
+                public Recipient next() {
+                    int i = pulled.incrementAndGet();
+                    maxAhead = Math.max(maxAhead, i - done.get());
+                    return new Recipient("+55119" + (10_000_000 + i), Map.of("n", String.valueOf(i)));
+                }
+            };
+        }
+    }
+
+    @Test
+    public void compile_rendersPlaceholders_andEscapedBrace() {
+        MessageTemplate template = MessageTemplate.compile("Hi {name}, code {code} {{ok}");
+
+        assertEquals(List.of("name", "code"), template.getVariables());
+        assertEquals("Hi Ana, code 1234 {ok}",
+                template.render(new Recipient("+1", Map.of("name", "Ana", "code", "1234"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_throws_whenPlaceholderUnclosed() {
+        MessageTemplate.compile("Hi {name");
+    }
+
+    @Test
+    public void sendBulk_streamsRecipients_withinQueueWindow() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        modem = simModem("SIM", sim);
+        modem.setQueueCapacity(8);
+        modem.open();
+        Generated recipients = new Generated(100);
+        Map<String, String> results = new ConcurrentHashMap<>();
+
+        long sent = modem.sendBulk(recipients, MessageTemplate.compile("Message {n}"), (recipient, result) -> {
+            results.put(recipient.getPhoneNumber(), result.isSuccess() ? "ok" : result.getErrorMessage());
+            recipients.done.incrementAndGet();
+        });
+
+        assertEquals(100, sent);
+        assertEquals(100, results.size());
+        assertEquals(100, sim.getSubmittedCount());
+        assertTrue("iterated " + recipients.maxAhead + " ahead", recipients.maxAhead <= 9);
+    }
+
+    @Test
+    public void sendBulk_reportsFailure_whenRecipientLacksVariable() throws Exception {
+        modem = simModem("SIM", new ModemSimulator());
+        modem.open();
+        Map<String, SmsSendResult> results = new ConcurrentHashMap<>();
+
+        long sent = modem.sendBulk(List.of(new Recipient("+5511999999991", Map.of("name", "Ana")),
+                        new Recipient("+5511999999992")),
+                MessageTemplate.compile("Hi {name}"), (recipient, result) -> results.put(recipient.toString(), result));
+
+        assertEquals(1, sent);
+        assertTrue(results.get("+5511999999991").isSuccess());
+        assertFalse(results.get("+5511999999992").isSuccess());
+    }
+
+    @Test
+    public void sendBulk_spreadsAcrossPool() throws Exception {
+        ModemSimulator first = new ModemSimulator();
+        ModemSimulator second = new ModemSimulator();
+        first.setDefaultLatencyMs(2);
+        second.setDefaultLatencyMs(2);
+        pool = new Sms4jPool(List.of(simModem("A", first), simModem("B", second)));
+        pool.open();
+        AtomicInteger results = new AtomicInteger();
+
+        long sent = pool.sendBulk(new Generated(60), MessageTemplate.compile("Promo {n}"),
+                (recipient, result) -> results.incrementAndGet());
+
+        assertEquals(60, sent);
+        assertEquals(60, results.get());
+        assertEquals(60, first.getSubmittedCount() + second.getSubmittedCount());
+        assertTrue(first.getSubmittedCount() > 0 && second.getSubmittedCount() > 0);
+    }
+}
@@ -0,0 +1,111 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.pdu.PduDecoder;
+import balbucio.sms4j.pdu.StatusReportPdu;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeliveryTrackerTest {
+
+    private static final String FIRST = "+5511999999999";
+    private static final String FIRST_SEMI_OCTETS = "0D91551199999999F9";
+    private static final String SECOND = "+5511888888888";
+    private static final String SECOND_SEMI_OCTETS = "0D91551188888888F8";
+
+    private final DeliveryTracker tracker = new DeliveryTracker("test-reports", 10_000L);
+
+    @After
+    public void tearDown() {
+        tracker.close();
+    }
+
+    private static StatusReportPdu report(int mr, String recipientSemiOctets, int status) {
+        return PduDecoder.decodeStatusReport(String.format("0006%02X", mr) + recipientSemiOctets
+                + "42103021000000" + "42103021501000" + String.format("%02X", status));
+    }
+
+    @Test
+    public void onReport_completesMatchingSend() throws Exception {
+        CompletableFuture<DeliveryStatus> future = tracker.track(FIRST, List.of("42"), 1_000L);
+
+        tracker.onReport(report(42, FIRST_SEMI_OCTETS, 0x00), 4_000L);
+
+        DeliveryStatus status = future.get(1, TimeUnit.SECONDS);
+        assertEquals(DeliveryStatus.Outcome.DELIVERED, status.getOutcome());
+        assertEquals(3_000L, status.getLatencyMs());
+        assertEquals(1, tracker.delivered());
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void onReport_matchesByRecipient_whenReferenceWrappedAround() throws Exception {
+        CompletableFuture<DeliveryStatus> older = tracker.track(FIRST, List.of("7"), 0L);
+        CompletableFuture<DeliveryStatus> newer = tracker.track(SECOND, List.of("263"), 10L);
+
+        tracker.onReport(report(7, SECOND_SEMI_OCTETS, 0x41), 20L);
+
+        assertEquals(DeliveryStatus.Outcome.FAILED, newer.get(1, TimeUnit.SECONDS).getOutcome());
+        assertFalse(older.isDone());
+        assertEquals(1, tracker.size());
+    }
+
+    @Test
+    public void onReport_ignoresReportsStillInProgress() {
+        CompletableFuture<DeliveryStatus> future = tracker.track(FIRST, List.of("1"), 0L);
+
+        tracker.onReport(report(1, FIRST_SEMI_OCTETS, 0x20), 10L);
+
+        assertFalse(future.isDone());
+    }
+
+    @Test
+    public void track_completesMultipartOnlyAfterEverySegment() throws Exception {
+        CompletableFuture<DeliveryStatus> future = tracker.track(FIRST, List.of("1", "2"), 0L);
+
+        tracker.onReport(report(1, FIRST_SEMI_OCTETS, 0x00), 10L);
+        assertFalse(future.isDone());
+        tracker.onReport(report(2, FIRST_SEMI_OCTETS, 0x00), 20L);
+
+        assertTrue(future.get(1, TimeUnit.SECONDS).isDelivered());
+    }
+
+    @Test
+    public void evictExpired_completesAsExpired_afterTimeout() throws Exception {
+        CompletableFuture<DeliveryStatus> future = tracker.track(FIRST, List.of("5"), 0L);
+
+        tracker.evictExpired(10_000L);
+
+        assertEquals(DeliveryStatus.Outcome.EXPIRED, future.get(1, TimeUnit.SECONDS).getOutcome());
+        assertEquals(0, tracker.size());
+        assertEquals(1, tracker.undelivered());
+    }
+
+    @Test
+    public void track_matchesReportThatArrivedFirst() throws Exception {
+        tracker.onReport(report(9, FIRST_SEMI_OCTETS, 0x00), 0L);
+
+        CompletableFuture<DeliveryStatus> future = tracker.track(FIRST, List.of("9"), 5L);
+
+        assertTrue(future.get(1, TimeUnit.SECONDS).isDelivered());
+    }
+
+    @Test
+    public void track_boundsSlot_byExpiringOldest() {
+        CompletableFuture<DeliveryStatus> first = tracker.track(FIRST, List.of("3"), 0L);
+        for (int i = 1; i <= 8; i++) {
+            tracker.track(FIRST, List.of(String.valueOf(3 + 256 * i)), i);
+        }
+
+        assertTrue(first.isDone());
+        assertEquals(8, tracker.size());
+    }
+}
@@ -0,0 +1,151 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IdempotencyCacheTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Sms4j modem;
+
+    @After
+    public void tearDown() {
+        if (modem != null) {
+            modem.close();
+        }
+    }
+
+    @Test
+    public void putIfAbsent_returnsFirstFuture_untilExpired() {
+        IdempotencyCache cache = new IdempotencyCache(16, 100);
+        CompletableFuture<SmsSendResult> first = new CompletableFuture<>();
+
+        assertNull(cache.putIfAbsent(42, first, 0));
+        assertSame(first, cache.putIfAbsent(42, new CompletableFuture<>(), 99 * MS));
+        assertNull(cache.putIfAbsent(42, new CompletableFuture<>(), 100 * MS));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void putIfAbsent_forgetsOldest_whenFull() {
+        IdempotencyCache cache = new IdempotencyCache(2, 60_000);
+        cache.putIfAbsent(1, new CompletableFuture<>(), 0);
+        cache.putIfAbsent(2, new CompletableFuture<>(), 0);
+        cache.putIfAbsent(3, new CompletableFuture<>(), 0);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.putIfAbsent(1, new CompletableFuture<>(), 0));
+        assertTrue(cache.putIfAbsent(3, new CompletableFuture<>(), 0) != null);
+    }
+
+    @Test
+    public void table_matchesHashMap_underRandomInsertsAndRemoves() {
+        // Large enough that nothing is evicted; the table then has 2^17 slots
+        IdempotencyCache cache = new IdempotencyCache(32_768, 60_000);
+        Map<Long, CompletableFuture<SmsSendResult>> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            // Few distinct keys, all homed near the end of the table, so the probe run is long and wraps
+            long key = ((long) random.nextInt(48) << 17) | 0x1FFF0L;
+            if (random.nextBoolean()) {
+                CompletableFuture<SmsSendResult> future = new CompletableFuture<>();
+                CompletableFuture<SmsSendResult> existing = cache.putIfAbsent(key, future, 0);
+                assertSame(expected.get(key), existing);
+                if (existing == null) {
+                    expected.put(key, future);
+                }
+            } else if (expected.containsKey(key)) {
+                cache.remove(key, expected.remove(key));
+            }
+            assertEquals(expected.size(), cache.size());
+        }
+    }
+
+    @Test
+    public void keyOf_separatesRequestIdsFromContent() {
+        assertEquals(IdempotencyCache.keyOf("+5511999999999", "123456"),
+                IdempotencyCache.keyOf("+5511999999999", "123456"));
+        assertNotEquals(IdempotencyCache.keyOf("+5511999999999", "123456"),
+                IdempotencyCache.keyOf("+551199999999", "9123456"));
+        assertNotEquals(IdempotencyCache.keyOf("abc"), IdempotencyCache.keyOf("abd"));
+    }
+
+    @Test
+    public void sendSmsAsync_returnsFuture_whenMessageNull() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setIdempotencyCache(new IdempotencyCache(1000, 60_000));
+        modem.open();
+
+        assertEquals(IdempotencyCache.keyOf("+5511999999999", ""), IdempotencyCache.keyOf("+5511999999999", null));
+        CompletableFuture<SmsSendResult> future = modem.sendSmsAsync("+5511999999999", null);
+        assertNotNull(future);
+        future.handle((result, error) -> null).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void sendSmsAsync_returnsOriginalFuture_forDuplicateWithoutTouchingModem() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        sim.setLatencyMs("AT+CMGS", 50);
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setIdempotencyCache(new IdempotencyCache(1000, 60_000));
+        modem.open();
+
+        CompletableFuture<SmsSendResult> first = modem.sendSmsAsync("+5511999999999", "Code 1234");
+        CompletableFuture<SmsSendResult> pending = modem.sendSmsAsync("+5511999999999", "Code 1234");
+        SmsSendResult result = first.get(5, TimeUnit.SECONDS);
+        SmsSendResult later = modem.sendSms("+5511999999999", "Code 1234");
+        modem.sendSmsAsync("+5511999999999", "other body", Priority.HIGH, "req-1").get(5, TimeUnit.SECONDS);
+        modem.sendSmsAsync("+5511888888888", "retried body", Priority.HIGH, "req-1").get(5, TimeUnit.SECONDS);
+
+        assertSame(first, pending);
+        assertSame(result, later);
+        assertEquals(2, sim.getSubmittedCount());
+    }
+
+    @Test
+    public void sendSmsAsync_dedupes_whenNumberFormattedDifferently() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        sim.setLatencyMs("AT+CMGS", 50);
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setIdempotencyCache(new IdempotencyCache(1000, 60_000));
+        modem.open();
+
+        CompletableFuture<SmsSendResult> first = modem.sendSmsAsync("+55 11 99999-9999", "Code 1234");
+        CompletableFuture<SmsSendResult> retry = modem.sendSmsAsync("005511999999999", "Code 1234");
+        first.get(5, TimeUnit.SECONDS);
+        modem.sendSms("5511999999999", "Code 1234");
+
+        assertSame(first, retry);
+        assertEquals(1, sim.getSubmittedCount());
+    }
+
+    @Test
+    public void sendSms_sendsAgain_whenFirstAttemptFailed() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        sim.failNext("AT+CMGS", 1, "+CMS ERROR: 500");
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setIdempotencyCache(new IdempotencyCache(1000, 60_000));
+        modem.open();
+
+        assertFalse(modem.sendSms("+5511999999999", "Code 1234").isSuccess());
+        assertTrue(modem.sendSms("+5511999999999", "Code 1234").isSuccess());
+    }
+}
@@ -0,0 +1,90 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.at.Urc;
+import balbucio.sms4j.modem.ModemDriver;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncomingDispatcherTest {
+
+    private static final String DELIVER_PDU =
+            "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37";
+
+    private IncomingDispatcher dispatcher;
+
+    /** Driver whose storage read blocks until released, counting how often it is called. */
+    private static final class StorageDriver implements ModemDriver {
+
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public SmsSendResult sendSms(String phoneNumber, String message) {
+            return SmsSendResult.failure("unused", "");
+        }
+
+        @Override
+        public List<IncomingSms> fetchStoredMessages() {
+            fetches.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(IncomingSms.fromPdu(DELIVER_PDU));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void onUrc_decodesCmtInline() throws Exception {
+        BlockingQueue<IncomingSms> received = new LinkedBlockingQueue<>();
+        List<Consumer<IncomingSms>> listeners = List.of(received::add);
+        dispatcher = new IncomingDispatcher("test-incoming", new StorageDriver(), listeners);
+
+        dispatcher.onUrc(new Urc("+CMT", "+CMT: ,33", DELIVER_PDU));
+
+        IncomingSms sms = received.poll(5, TimeUnit.SECONDS);
+        assertEquals("hellohello", sms.getText());
+        assertEquals("27838890001", sms.getOriginator());
+    }
+
+    @Test
+    public void onUrc_coalescesCmtiBurstIntoFewFetches() throws Exception {
+        StorageDriver driver = new StorageDriver();
+        BlockingQueue<IncomingSms> received = new LinkedBlockingQueue<>();
+        dispatcher = new IncomingDispatcher("test-incoming", driver, List.of(received::add));
+
+        for (int i = 0; i < 50; i++) {
+            dispatcher.onUrc(new Urc("+CMTI", "+CMTI: \"SM\"," + i, null));
+        }
+        driver.release.countDown();
+
+        assertTrue(received.poll(5, TimeUnit.SECONDS) != null);
+        // One fetch running, at most one more scheduled behind it
+        Thread.sleep(100);
+        assertTrue("fetches: " + driver.fetches.get(), driver.fetches.get() <= 2);
+    }
+}
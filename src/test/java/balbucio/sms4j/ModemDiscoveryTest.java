@@ -0,0 +1,100 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.serial.SerialPortInfo;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModemDiscoveryTest {
+
+    private final Set<String> opened = ConcurrentHashMap.newKeySet();
+    private Map<String, Sms4j> found = Map.of();
+
+    @After
+    public void tearDown() {
+        found.values().forEach(Sms4j::close);
+    }
+
+    private ModemSimulator simulatorFor(String port) throws Sms4jException {
+        opened.add(port);
+        ModemSimulator sim = new ModemSimulator();
+        switch (port) {
+            case "/dev/ttyUSB0":
+            case "/dev/ttyUSB2":
+            case "/dev/ttyUSB10":
+                sim.setImei("861000000000001");
+                return sim;
+            case "/dev/ttyUSB3":
+                sim.setImei("861000000000002");
+                return sim;
+            case "/dev/ttyUSB4":
+                sim.setModel("Acme Widget 3000");
+                return sim;
+            default:
+                throw new Sms4jException("Port not found: " + port);
+        }
+    }
+
+    @Test
+    public void discover_returnsOneInstancePerImei_skippingDiagnosticPorts() throws Exception {
+        ModemDiscovery discovery = new ModemDiscovery();
+        discovery.setPortLister(() -> List.of(
+                new SerialPortInfo("/dev/ttyUSB3", "ZTE Modem"),
+                new SerialPortInfo("/dev/ttyUSB0", "ZTE Modem"),
+                new SerialPortInfo("/dev/ttyUSB1", "ZTE Diagnostics Interface"),
+                new SerialPortInfo("/dev/ttyUSB2", "ZTE User Interface"),
+                new SerialPortInfo("/dev/ttyUSB5", "ZTE NMEA Device"),
+                new SerialPortInfo("/dev/ttyUSB4", "Unknown modem"),
+                new SerialPortInfo("/dev/ttyUSB9", "Gone")));
+        discovery.setConnectionFactory(this::simulatorFor);
+        discovery.setProbeTimeoutMs(500);
+
+        found = discovery.discover();
+
+        assertEquals(List.of("861000000000001", "861000000000002"), List.copyOf(found.keySet()));
+        assertEquals("/dev/ttyUSB0", found.get("861000000000001").getPortName());
+        assertEquals("/dev/ttyUSB3", found.get("861000000000002").getPortName());
+        assertFalse(opened.contains("/dev/ttyUSB1"));
+        assertFalse(opened.contains("/dev/ttyUSB5"));
+        assertTrue(opened.contains("/dev/ttyUSB2"));
+        assertTrue(opened.contains("/dev/ttyUSB4"));
+
+        Sms4j modem = found.get("861000000000002");
+        modem.open();
+        assertTrue(modem.sendSms("+5511999999999", "found you").isSuccess());
+    }
+
+    @Test
+    public void discover_keepsLowestNumberedPort_whenModemAnswersOnSeveral() throws Exception {
+        ModemDiscovery discovery = new ModemDiscovery();
+        discovery.setPortLister(() -> List.of(
+                new SerialPortInfo("/dev/ttyUSB10", "ZTE Modem"),
+                new SerialPortInfo("/dev/ttyUSB2", "ZTE User Interface")));
+        discovery.setConnectionFactory(this::simulatorFor);
+        discovery.setProbeTimeoutMs(500);
+
+        found = discovery.discover();
+
+        assertEquals("/dev/ttyUSB2", found.get("861000000000001").getPortName());
+    }
+
+    @Test
+    public void comparePortNames_comparesNumbersByValue() {
+        List<String> ports = new ArrayList<>(List.of("ttyUSB10", "COM10", "ttyUSB2", "COM3", "ttyACM0", "ttyUSB1"));
+
+        ports.sort(ModemDiscovery::comparePortNames);
+
+        assertEquals(List.of("COM3", "COM10", "ttyACM0", "ttyUSB1", "ttyUSB2", "ttyUSB10"), ports);
+    }
+}
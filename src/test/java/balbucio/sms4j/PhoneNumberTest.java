@@ -0,0 +1,75 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PhoneNumberTest {
+
+    @Test
+    public void parse_normalizesToE164_whenFormatted() {
+        assertEquals("+5511999999999", PhoneNumber.parse("+55 (11) 99999-9999").toString());
+        assertEquals("+442079460958", PhoneNumber.parse("0044 20.7946.0958").toString());
+        assertEquals("+14155550123", PhoneNumber.parse(" 14155550123 ").toString());
+    }
+
+    @Test
+    public void parse_splitsCountryCode_ofOneTwoOrThreeDigits() {
+        PhoneNumber us = PhoneNumber.parse("+14155550123");
+        assertEquals(1, us.getCountryCode());
+        assertEquals("4155550123", us.getNationalNumber());
+        assertEquals(55, PhoneNumber.parse("+5511999999999").getCountryCode());
+        PhoneNumber portugal = PhoneNumber.parse("+351912345678");
+        assertEquals(351, portugal.getCountryCode());
+        assertEquals("912345678", portugal.getNationalNumber());
+        assertEquals(12, portugal.getDigitCount());
+    }
+
+    @Test
+    public void parse_rejects_whenMalformed() {
+        String[] invalid = {"", "+", "abc", "+55 11 9999x9999", "+5511999999999999", "011999999999",
+                "+2811234567", "+1415555012", "+55119999999999", "+12345"};
+        for (String text : invalid) {
+            try {
+                PhoneNumber.parse(text);
+                fail("expected " + text + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+                assertFalse(PhoneNumber.isValid(text));
+            }
+        }
+        assertFalse(PhoneNumber.isValid(null));
+    }
+
+    @Test
+    public void parse_returnsCachedInstance_forRepeatedRecipient() {
+        String text = "+55 11 98888-7777";
+        PhoneNumber first = PhoneNumber.parse(text);
+        assertSame(first, PhoneNumber.parse(new String(text)));
+        assertSame(first, PhoneNumber.parse("+5511988887777"));
+        assertEquals(first, PhoneNumber.parse("005511988887777"));
+    }
+
+    @Test
+    public void sendSms_failsWithoutTouchingModem_whenNumberInvalid() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        Sms4j modem = new Sms4j("SIM", null, null, name -> sim);
+        try {
+            modem.open();
+            SmsSendResult result = modem.sendSms("+55 11 9999x9999", "hello");
+            assertFalse(result.isSuccess());
+            assertTrue(result.getErrorMessage().contains("character 'x'"));
+            assertEquals(0, sim.getSubmittedCount());
+
+            assertTrue(modem.sendSms("+55 11 99999-9999", "hello").isSuccess());
+            assertEquals(1, sim.getSubmittedCount());
+        } finally {
+            modem.close();
+        }
+    }
+}
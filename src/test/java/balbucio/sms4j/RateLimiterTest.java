@@ -0,0 +1,79 @@
+package balbucio.sms4j;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void tryAcquire_allowsBurstUpToBudget_thenWaitsForRefill() {
+        RateLimiter limiter = new RateLimiter(5, 0, 0, 0);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire(0));
+        }
+
+        assertEquals(SECOND / 5, limiter.tryAcquire(0));
+        assertEquals(0, limiter.tryAcquire(SECOND / 5));
+    }
+
+    @Test
+    public void tryAcquire_isBoundByLongestWindow_whenShortOneHasTokens() {
+        RateLimiter limiter = new RateLimiter(10, 3, 0, 0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire(i * SECOND));
+        }
+
+        long wait = limiter.tryAcquire(3 * SECOND);
+        // The minute bucket refills one token per 20 s and holds 0.15 after 3 s
+        assertTrue(wait > 16 * SECOND && wait < 18 * SECOND);
+    }
+
+    @Test
+    public void nanosUntil_estimatesWaitForQueuedSends() {
+        RateLimiter limiter = new RateLimiter(0, 0, 24, 0);
+        limiter.tryAcquire(0);
+
+        assertEquals(0, limiter.nanosUntil(23, 0));
+        assertEquals(TimeUnit.HOURS.toNanos(2), limiter.nanosUntil(25, 0));
+    }
+
+    @Test
+    public void tryAcquire_takesOneTokenPerSegment() {
+        RateLimiter limiter = new RateLimiter(0, 10, 0, 0);
+
+        assertEquals(0, limiter.tryAcquire(0, 3));
+        assertEquals(0, limiter.tryAcquire(0, 3));
+        assertEquals(0, limiter.tryAcquire(0, 3));
+
+        // One token left, two more refill at one per 6 s
+        assertEquals(12 * SECOND, limiter.tryAcquire(0, 3));
+    }
+
+    @Test
+    public void tryAcquire_waitsForFullBucket_whenMessageExceedsBudget() {
+        RateLimiter limiter = new RateLimiter(2, 0, 0, 0);
+
+        assertEquals(0, limiter.tryAcquire(0, 5));
+
+        // Three tokens of debt plus the one needed, at two per second
+        assertEquals(2 * SECOND, limiter.tryAcquire(0, 1));
+    }
+
+    @Test
+    public void tryAcquire_takesNothing_whenItReturnsAWait() {
+        RateLimiter limiter = new RateLimiter(1, 0, 0, 0);
+        limiter.tryAcquire(0);
+
+        limiter.tryAcquire(SECOND / 2);
+
+        assertEquals(0, limiter.tryAcquire(SECOND));
+    }
+}
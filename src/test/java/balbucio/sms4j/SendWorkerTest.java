@@ -0,0 +1,156 @@
+package balbucio.sms4j;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SendWorkerTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private SendWorker worker;
+
+    private SmsSendResult blockingSend(SendRequest request) {
+        started.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sent.add(request.message());
+        return SmsSendResult.success(String.valueOf(sent.size()), "OK");
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (worker != null) {
+            worker.close(0);
+        }
+    }
+
+    @Test
+    public void submit_completesInOrder() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.REJECT);
+        CompletableFuture<SmsSendResult> first = worker.submit(new SendRequest("+1", "a"));
+        CompletableFuture<SmsSendResult> second = worker.submit(new SendRequest("+1", "b"));
+
+        release.countDown();
+
+        assertEquals("1", first.get(2, TimeUnit.SECONDS).getMessageRef());
+        assertEquals("2", second.get(2, TimeUnit.SECONDS).getMessageRef());
+        assertEquals(List.of("a", "b"), sent);
+    }
+
+    @Test
+    public void submit_rejects_whenQueueFull() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 1, Backpressure.REJECT);
+        worker.submit(new SendRequest("+1", "in flight"));
+        waitUntilInFlight();
+        worker.submit(new SendRequest("+1", "queued"));
+
+        CompletableFuture<SmsSendResult> rejected = worker.submit(new SendRequest("+1", "rejected"));
+
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            fail("Expected rejection");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SendQueueFullException);
+        }
+    }
+
+    @Test
+    public void submit_skipsSend_whenCancelledWhileQueued() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.REJECT);
+        CompletableFuture<SmsSendResult> first = worker.submit(new SendRequest("+1", "a"));
+        waitUntilInFlight();
+        CompletableFuture<SmsSendResult> cancelled = worker.submit(new SendRequest("+1", "b"));
+        CompletableFuture<SmsSendResult> third = worker.submit(new SendRequest("+1", "c"));
+
+        assertTrue(cancelled.cancel(false));
+        release.countDown();
+
+        assertTrue(first.get(2, TimeUnit.SECONDS).isSuccess());
+        assertTrue(third.get(2, TimeUnit.SECONDS).isSuccess());
+        assertEquals(List.of("a", "c"), sent);
+    }
+
+    @Test
+    public void close_drainsQueuedSends() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.BLOCK);
+        CompletableFuture<SmsSendResult> first = worker.submit(new SendRequest("+1", "a"));
+        CompletableFuture<SmsSendResult> second = worker.submit(new SendRequest("+1", "b"));
+        release.countDown();
+
+        worker.close(2000);
+
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+        assertTrue(worker.submit(new SendRequest("+1", "late")).isCompletedExceptionally());
+    }
+
+    @Test
+    public void close_failsQueuedSends_whenDrainTimesOut() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.REJECT);
+        worker.submit(new SendRequest("+1", "in flight"));
+        waitUntilInFlight();
+        CompletableFuture<SmsSendResult> queued = worker.submit(new SendRequest("+1", "queued"));
+
+        worker.close(50);
+
+        try {
+            queued.get(1, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Sms4jException);
+        }
+    }
+
+    @Test
+    public void submit_startsMoreUrgentSendsFirst_whenQueuedBehindBulk() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.REJECT);
+        worker.submit(new SendRequest("+1", "in flight"));
+        waitUntilInFlight();
+        worker.submit(new SendRequest("+1", "bulk 1", Priority.LOW));
+        worker.submit(new SendRequest("+1", "bulk 2", Priority.LOW));
+        worker.submit(new SendRequest("+1", "normal", Priority.NORMAL));
+        CompletableFuture<SmsSendResult> otp = worker.submit(new SendRequest("+1", "otp", Priority.HIGH));
+        assertEquals(3, worker.pendingAhead(Priority.NORMAL));
+
+        release.countDown();
+        worker.close(2000);
+
+        assertTrue(otp.isDone());
+        assertEquals(List.of("in flight", "otp", "normal", "bulk 1", "bulk 2"), sent);
+    }
+
+    @Test
+    public void submit_startsAgedLowPriorityFirst_whenItWaitedLongEnough() throws Exception {
+        worker = new SendWorker("test", this::blockingSend, 10, Backpressure.REJECT, 20);
+        worker.submit(new SendRequest("+1", "in flight"));
+        waitUntilInFlight();
+        worker.submit(new SendRequest("+1", "old bulk", Priority.LOW));
+        Thread.sleep(100);
+        worker.submit(new SendRequest("+1", "otp", Priority.HIGH));
+
+        release.countDown();
+        worker.close(2000);
+
+        assertEquals(List.of("in flight", "old bulk", "otp"), sent);
+    }
+
+    private void waitUntilInFlight() throws InterruptedException {
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+    }
+}
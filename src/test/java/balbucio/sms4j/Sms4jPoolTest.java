@@ -0,0 +1,305 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.at.AdaptiveTimeouts;
+import balbucio.sms4j.modem.DriverRegistry;
+import balbucio.sms4j.modem.ModemDriver;
+import balbucio.sms4j.serial.FakeSerialPortAccess;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Sms4jPoolTest {
+
+    private Sms4jPool pool;
+
+    /** Driver that sleeps for a fixed time per send and then succeeds, or always fails. */
+    private static final class StubDriver implements ModemDriver {
+
+        private final long latencyMs;
+        private final boolean fail;
+        private final AtomicInteger sends;
+
+        StubDriver(long latencyMs, boolean fail, AtomicInteger sends) {
+            this.latencyMs = latencyMs;
+            this.fail = fail;
+            this.sends = sends;
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public SmsSendResult sendSms(String phoneNumber, String message) {
+            sends.incrementAndGet();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return fail ? SmsSendResult.failure("+CMS ERROR: 500", "") : SmsSendResult.success("1", "OK");
+        }
+    }
+
+    /** Driver that answers in 2 ms, except that the next {@code slowSends} sends on any modem take {@code slowMs}. */
+    private static final class SlowOnDemandDriver implements ModemDriver {
+
+        private final AtomicInteger slowSends;
+        private final long slowMs;
+        private final AtomicInteger sends;
+
+        SlowOnDemandDriver(AtomicInteger slowSends, long slowMs, AtomicInteger sends) {
+            this.slowSends = slowSends;
+            this.slowMs = slowMs;
+            this.sends = sends;
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public SmsSendResult sendSms(String phoneNumber, String message) {
+            sends.incrementAndGet();
+            try {
+                Thread.sleep(slowSends.getAndDecrement() > 0 ? slowMs : 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SmsSendResult.success("1", "OK");
+        }
+    }
+
+    private static Sms4j slowOnDemandModem(String port, AtomicInteger slowSends, long slowMs, AtomicInteger sends) {
+        return new Sms4j(port, channel -> new SlowOnDemandDriver(slowSends, slowMs, sends),
+                DriverRegistry.createEmpty(),
+                name -> new FakeSerialPortAccess(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()));
+    }
+
+    private static Sms4j stubModem(String port, long latencyMs, boolean fail, AtomicInteger sends) {
+        return new Sms4j(port, channel -> new StubDriver(latencyMs, fail, sends), DriverRegistry.createEmpty(),
+                name -> new FakeSerialPortAccess(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream()));
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void sendSmsAsync_spreadsLoadAcrossModems() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        pool = new Sms4jPool(List.of(stubModem("A", 20, false, first), stubModem("B", 20, false, second)));
+        pool.open();
+
+        List<CompletableFuture<SmsSendResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(pool.sendSmsAsync("+5511999999999", "msg " + i));
+        }
+        for (CompletableFuture<SmsSendResult> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        assertEquals(10, first.get() + second.get());
+        assertTrue(first.get() >= 3);
+        assertTrue(second.get() >= 3);
+    }
+
+    @Test
+    public void sendSmsAsync_keepsModemsInRotation_whenNumbersInvalid() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        pool = new Sms4jPool(List.of(stubModem("A", 0, false, first), stubModem("B", 0, false, second)));
+        pool.setMaxConsecutiveFailures(2);
+        pool.open();
+
+        for (int i = 0; i < 5; i++) {
+            SmsSendResult result = pool.sendSmsAsync("+55 11 9999x999" + i, "msg").get(5, TimeUnit.SECONDS);
+            assertFalse(result.isSuccess());
+        }
+
+        assertEquals(0, first.get() + second.get());
+        assertTrue(pool.getStats().get(0).isHealthy());
+        assertTrue(pool.getStats().get(1).isHealthy());
+        assertTrue(pool.sendSmsAsync("+5511999999999", "msg").get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    @Test
+    public void sendSmsAsync_routesAwayFromModem_whileItReconnects() throws Exception {
+        ModemSimulator unplugged = new ModemSimulator();
+        ModemSimulator other = new ModemSimulator();
+        AtomicInteger opens = new AtomicInteger();
+        Sms4j reconnecting = new Sms4j("GONE", null, null, name -> {
+            if (opens.getAndIncrement() > 0) {
+                throw new Sms4jException("Port not found: " + name);
+            }
+            return unplugged;
+        });
+        reconnecting.setAutoReconnect(true);
+        reconnecting.setReconnectBackoff(10, 40);
+        pool = new Sms4jPool(List.of(reconnecting, new Sms4j("OTHER", null, null, name -> other)));
+        pool.open();
+
+        unplugged.unplug();
+        assertFalse(reconnecting.isConnected());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", "msg " + i).get(5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        assertEquals(0, unplugged.getSubmittedCount());
+        assertEquals(3, other.getSubmittedCount());
+    }
+
+    @Test
+    public void failingModem_isTakenOutOfRotation() throws Exception {
+        AtomicInteger bad = new AtomicInteger();
+        AtomicInteger good = new AtomicInteger();
+        pool = new Sms4jPool(List.of(stubModem("BAD", 0, true, bad), stubModem("GOOD", 50, false, good)));
+        pool.setMaxConsecutiveFailures(2);
+        pool.open();
+
+        for (int i = 0; i < 6; i++) {
+            pool.sendSmsAsync("+5511999999999", "msg").get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, bad.get());
+        assertEquals(4, good.get());
+        assertFalse(pool.getStats().get(0).isHealthy());
+        assertTrue(pool.getStats().get(1).isHealthy());
+    }
+
+    @Test
+    public void sendSmsAsync_routesAwayFromModem_whenItsBudgetIsSpent() throws Exception {
+        AtomicInteger limited = new AtomicInteger();
+        AtomicInteger open = new AtomicInteger();
+        Sms4j paced = stubModem("PACED", 1, false, limited);
+        paced.setRateLimit(0, 2, 0);
+        pool = new Sms4jPool(List.of(paced, stubModem("FREE", 30, false, open)));
+        pool.open();
+
+        for (int i = 0; i < 6; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", "msg " + i).get(5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        assertEquals(2, limited.get());
+        assertEquals(4, open.get());
+    }
+
+    @Test
+    public void sendSmsAsync_chargesBudgetPerSegment_whenMessageIsMultipart() throws Exception {
+        AtomicInteger limited = new AtomicInteger();
+        AtomicInteger open = new AtomicInteger();
+        Sms4j paced = stubModem("PACED", 1, false, limited);
+        paced.setRateLimit(0, 4, 0);
+        pool = new Sms4jPool(List.of(paced, stubModem("FREE", 30, false, open)));
+        pool.open();
+        String threeParts = "x".repeat(400);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", threeParts).get(5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        // The first message took 3 of the 4 tokens, so the second would wait 30 s on the paced SIM
+        assertEquals(1, limited.get());
+        assertEquals(1, open.get());
+    }
+
+    @Test
+    public void stuckModem_isTakenOutOfRotation_withinSeconds() throws Exception {
+        ModemSimulator stuckSim = new ModemSimulator();
+        ModemSimulator slowSim = new ModemSimulator();
+        slowSim.setLatencyMs("+CMGS", 50);
+        Sms4j stuck = new Sms4j("STUCK", null, null, name -> stuckSim);
+        Sms4j slow = new Sms4j("SLOW", null, null, name -> slowSim);
+        stuck.setAdaptiveTimeouts(new AdaptiveTimeouts(300, 100));
+        slow.setAdaptiveTimeouts(new AdaptiveTimeouts(300, 100));
+        pool = new Sms4jPool(List.of(stuck, slow));
+        pool.open();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(stuck.sendSms("+5511999999999", "warm-up").isSuccess());
+        }
+        assertTrue(slow.sendSms("+5511999999999", "warm-up").isSuccess());
+
+        // Still the preferred modem (faster), but it no longer finishes a send
+        stuckSim.setLatencyMs("+CMGS", 60_000);
+        long start = System.nanoTime();
+        SmsSendResult first = pool.sendSmsAsync("+5511999999999", "msg").get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertFalse(first.isSuccess());
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 3000);
+        assertFalse(stuck.isConnected());
+        assertFalse(pool.getStats().get(0).isHealthy());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", "msg " + i).get(5, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(6, slowSim.getSubmittedCount());
+    }
+
+    @Test
+    public void sendSmsAsync_hedgesOnOtherModem_whenHighSendIsSlow() throws Exception {
+        AtomicInteger slowSends = new AtomicInteger();
+        AtomicInteger sends = new AtomicInteger();
+        pool = new Sms4jPool(List.of(slowOnDemandModem("A", slowSends, 2000, sends),
+                slowOnDemandModem("B", slowSends, 2000, sends)));
+        pool.setHedging(0.9, 1.0);
+        pool.open();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", "warm-up", Priority.HIGH).get(5, TimeUnit.SECONDS)
+                    .isSuccess());
+        }
+        long hedgesBefore = pool.getHedgeCount();
+        int sendsBefore = sends.get();
+
+        slowSends.set(1);
+        long start = System.nanoTime();
+        SmsSendResult result = pool.sendSmsAsync("+5511999999999", "otp", Priority.HIGH).get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(result.isSuccess());
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 1000);
+        assertEquals(hedgesBefore + 1, pool.getHedgeCount());
+        assertEquals(sendsBefore + 2, sends.get());
+    }
+
+    @Test
+    public void sendSmsAsync_capsHedges_atConfiguredRatio() throws Exception {
+        AtomicInteger slowSends = new AtomicInteger();
+        AtomicInteger sends = new AtomicInteger();
+        pool = new Sms4jPool(List.of(slowOnDemandModem("A", slowSends, 50, sends),
+                slowOnDemandModem("B", slowSends, 50, sends)));
+        pool.setHedging(0.9, 0.1);
+        pool.open();
+        for (int i = 0; i < 30; i++) {
+            pool.sendSmsAsync("+5511999999999", "warm-up", Priority.HIGH).get(5, TimeUnit.SECONDS);
+        }
+
+        // Every send is now slow enough to be hedged; the budget earned is 0.1 per send
+        slowSends.set(Integer.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(pool.sendSmsAsync("+5511999999999", "otp " + i, Priority.HIGH).get(5, TimeUnit.SECONDS)
+                    .isSuccess());
+        }
+        // Normal sends are never hedged
+        pool.sendSmsAsync("+5511999999999", "news").get(5, TimeUnit.SECONDS);
+
+        assertTrue(pool.getHedgeCount() >= 1);
+        assertTrue("hedges: " + pool.getHedgeCount(), pool.getHedgeCount() <= 4);
+    }
+}
@@ -0,0 +1,111 @@
+package balbucio.sms4j;
+
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Sms4jReconnectTest {
+
+    private final List<ModemSimulator> sims = new ArrayList<>();
+    /** Number of opens that fail as if the device node were not back yet. */
+    private final AtomicInteger missingOpens = new AtomicInteger();
+    private Sms4j modem;
+
+    @After
+    public void tearDown() {
+        if (modem != null) {
+            modem.close(0);
+        }
+    }
+
+    private void openModem() throws Exception {
+        modem = new Sms4j("SIM", null, null, name -> {
+            if (!sims.isEmpty() && missingOpens.getAndDecrement() > 0) {
+                throw new Sms4jException("Port not found: " + name);
+            }
+            ModemSimulator sim = new ModemSimulator();
+            synchronized (sims) {
+                sims.add(sim);
+            }
+            return sim;
+        });
+        modem.setAutoReconnect(true);
+        modem.setReconnectBackoff(10, 40);
+        modem.open();
+    }
+
+    private ModemSimulator lastSim() {
+        synchronized (sims) {
+            return sims.get(sims.size() - 1);
+        }
+    }
+
+    @Test
+    public void sendSms_succeedsOnNewPort_whenModemUnplugged() throws Exception {
+        openModem();
+        assertTrue(modem.sendSms("+5511999999999", "before").isSuccess());
+
+        lastSim().unplug();
+        assertFalse(modem.isConnected());
+
+        assertTrue(modem.sendSms("+5511999999999", "after").isSuccess());
+        assertEquals(2, sims.size());
+        assertEquals(1, lastSim().getSubmittedCount());
+        assertTrue(modem.isConnected());
+    }
+
+    @Test
+    public void sendSmsAsync_queuesAndReplays_whileReopenFails() throws Exception {
+        openModem();
+        missingOpens.set(3);
+
+        // No port event: the reader hits end of stream
+        lastSim().close();
+        List<CompletableFuture<SmsSendResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(modem.sendSmsAsync("+5511999999999", "queued " + i));
+        }
+
+        for (CompletableFuture<SmsSendResult> future : futures) {
+            assertTrue(future.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(2, sims.size());
+        assertEquals(5, lastSim().getSubmittedCount());
+        assertEquals(5, modem.getStats().getSent());
+        assertEquals(0, modem.getStats().getFailed());
+    }
+
+    @Test
+    public void close_failsQueuedSends_whenModemNeverComesBack() throws Exception {
+        openModem();
+        missingOpens.set(Integer.MAX_VALUE);
+        lastSim().unplug();
+        assertFalse(modem.isConnected());
+
+        CompletableFuture<SmsSendResult> future = modem.sendSmsAsync("+5511999999999", "stuck");
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+
+        modem.close(0);
+        modem = null;
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected the send to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Sms4jException);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package balbucio.sms4j;
 
 import org.junit.Test;
 
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class SmsSendResultTest {
@@ -23,4 +25,12 @@ public class SmsSendResultTest {
         assertEquals("Network error", r.getErrorMessage());
         assertEquals("ERROR", r.getRawResponse());
     }
+
+    @Test
+    public void success_withSegments_keepsAllRefs() {
+        SmsSendResult r = SmsSendResult.success(List.of("12", "13", "14"), "OK");
+        assertTrue(r.isSuccess());
+        assertEquals("12", r.getMessageRef());
+        assertEquals(List.of("12", "13", "14"), r.getMessageRefs());
+    }
 }
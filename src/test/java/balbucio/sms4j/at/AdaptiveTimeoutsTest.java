@@ -0,0 +1,79 @@
+package balbucio.sms4j.at;
+
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveTimeoutsTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void timeoutMs_returnsCeiling_untilEnoughAnswers() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(100, 50);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES - 1; i++) {
+            timeouts.record("AT+CMGS=20", 200 * MS);
+        }
+        assertEquals(30_000, timeouts.timeoutMs("AT+CMGS=20", 30_000));
+
+        timeouts.record("AT+CMGS=20", 200 * MS);
+        assertEquals(350, timeouts.timeoutMs("AT+CMGS=20", 30_000));
+    }
+
+    @Test
+    public void timeoutMs_followsP99_withinFloorAndCeiling() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(2000, 1000);
+        for (int i = 0; i < AdaptiveTimeouts.WINDOW; i++) {
+            timeouts.record("AT+CMGS=20", (i == 0 ? 9000 : 1000 + i) * MS);
+            timeouts.record("AT+CSQ", 20 * MS);
+        }
+        // p99 of 128 samples is the second largest: 1127 ms, so 1.5 * 1127 + 1000
+        assertEquals(2691, timeouts.timeoutMs("AT+CMGS=21", 30_000));
+        assertEquals(2500, timeouts.timeoutMs("AT+CMGS=21", 2500));
+        assertEquals(2000, timeouts.timeoutMs("AT+CSQ", 5000));
+        assertEquals(5000, timeouts.timeoutMs("AT+COPS?", 5000));
+    }
+
+    @Test
+    public void timeoutMs_forgetsOldLatencies_afterWindow() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(100, 0);
+        for (int i = 0; i < AdaptiveTimeouts.WINDOW; i++) {
+            timeouts.record("AT+CMGS=20", 4000 * MS);
+        }
+        for (int i = 0; i < AdaptiveTimeouts.WINDOW; i++) {
+            timeouts.record("AT+CMGS=20", 400 * MS);
+        }
+        assertEquals(600, timeouts.timeoutMs("AT+CMGS=20", 30_000));
+    }
+
+    @Test
+    public void sendCommand_timesOutAtLearnedDeadline_whenModemStalls() {
+        ModemSimulator sim = new ModemSimulator();
+        AtChannel channel = new AtChannel(sim);
+        channel.setAdaptiveTimeouts(new AdaptiveTimeouts(200, 50));
+        try {
+            for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+                assertTrue(channel.sendCommand("AT+CSQ").isOk());
+            }
+            assertFalse(channel.isLastCommandTimedOut());
+
+            sim.setLatencyMs("+CSQ", 10_000);
+            long start = System.nanoTime();
+            AtResponse response = channel.sendCommand("AT+CSQ");
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertFalse(response.isOk());
+            assertTrue(channel.isLastCommandTimedOut());
+            assertTrue("took " + elapsedMs + " ms", elapsedMs >= 200 && elapsedMs < 1000);
+        } finally {
+            channel.close();
+            sim.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package balbucio.sms4j.at;
+
+import balbucio.sms4j.metrics.MetricsRecorder;
+import balbucio.sms4j.metrics.MetricsSnapshot;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AtBatchTest {
+
+    private final ModemSimulator sim = new ModemSimulator();
+    private final AtChannel channel = new AtChannel(sim);
+    private final AtTrace trace = new AtTrace();
+
+    @After
+    public void tearDown() {
+        channel.close();
+        sim.close();
+    }
+
+    private long commandLinesSent() {
+        return trace.dump().lines().filter(l -> l.contains(" TX AT")).count();
+    }
+
+    @Test
+    public void execute_chainsCommandsIntoOneLine_andSplitsResponses() {
+        sim.setImei("861234567890123");
+        channel.setTrace(trace);
+
+        List<AtResponse> responses = channel.batch()
+                .add("AT+CMEE=2").add("AT+CSQ").add("+CGSN").add("AT+CMGF=0")
+                .execute();
+
+        assertEquals(1, commandLinesSent());
+        assertEquals(4, responses.size());
+        for (AtResponse response : responses) {
+            assertTrue(response.isOk());
+        }
+        assertEquals(List.of("OK"), responses.get(0).getLines());
+        assertEquals(List.of("+CSQ: 20,99", "OK"), responses.get(1).getLines());
+        assertEquals(List.of("861234567890123", "OK"), responses.get(2).getLines());
+        assertEquals(List.of("OK"), responses.get(3).getLines());
+    }
+
+    @Test
+    public void execute_fallsBackToOneByOne_whenModemRejectsChaining() {
+        sim.setChaining(false);
+
+        List<AtResponse> responses = channel.batch().add("AT+CMEE=2").add("AT+CSQ").execute();
+
+        assertTrue(responses.get(0).isOk());
+        assertTrue(responses.get(1).isOk());
+        assertTrue(responses.get(1).getLines().contains("+CSQ: 20,99"));
+    }
+
+    @Test
+    public void execute_reportsPerCommandStatus_whenOneCommandFails() {
+        sim.failNext("AT+CFUN", 2, "+CME ERROR: 3");
+
+        List<AtResponse> responses = channel.batch().add("AT+CMEE=2").add("AT+CFUN=1,0").add("AT+CMGF=0")
+                .execute();
+
+        assertTrue(responses.get(0).isOk());
+        assertTrue(responses.get(1).isError());
+        assertTrue(responses.get(2).isOk());
+    }
+
+    @Test
+    public void execute_rerunsOnlyUnansweredCommands_whenChainedLineFails() {
+        sim.failNext("AT+CFUN", 2, "+CME ERROR: 3");
+        channel.setTrace(trace);
+
+        List<AtResponse> responses = channel.batch().add("AT+CMEE=2").add("AT+CSQ").add("AT+CFUN=1,0")
+                .add("AT+CMGF=0").execute();
+
+        // The chained line, then AT+CFUN and AT+CMGF on their own; AT+CMEE and AT+CSQ had already run
+        assertEquals(3, commandLinesSent());
+        assertEquals(0, trace.dump().lines()
+                .filter(l -> l.contains(" TX AT+CMEE=2<CR>") || l.contains(" TX AT+CSQ<CR>")).count());
+        assertTrue(responses.get(0).isOk());
+        assertEquals(List.of("+CSQ: 20,99", "OK"), responses.get(1).getLines());
+        assertTrue(responses.get(2).isError());
+        assertTrue(responses.get(3).isOk());
+    }
+
+    @Test
+    public void execute_failsEveryCommandWithoutRetry_whenChainedLineTimesOut() {
+        sim.setLatencyMs("AT+CSQ", 2000);
+        channel.setTrace(trace);
+
+        List<AtResponse> responses = channel.batch().add("AT+CMEE=2").add("AT+CSQ").add("AT+CMGF=0")
+                .timeoutMs(100).execute();
+
+        assertEquals(1, commandLinesSent());
+        assertEquals(3, responses.size());
+        for (AtResponse response : responses) {
+            assertTrue(response.isError());
+        }
+        assertTrue(channel.isLastCommandTimedOut());
+    }
+
+    @Test
+    public void execute_recordsMetricsPerCommand_whenChained() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        channel.setMetrics(recorder);
+
+        channel.batch().add("AT+CMEE=2").add("AT+CSQ").execute();
+
+        MetricsSnapshot snapshot = recorder.snapshot();
+        assertEquals(1, snapshot.getCommand("AT+CMEE").getCount());
+        assertEquals(1, snapshot.getCommand("AT+CSQ").getCount());
+        assertNull(snapshot.getCommand("AT+CMEE;+CSQ"));
+    }
+
+    @Test
+    public void execute_pipelined_matchesResponsesInOrder() {
+        sim.failNext("AT+CFUN", 1, "ERROR");
+        channel.setTrace(trace);
+
+        List<AtResponse> responses = channel.batch().mode(AtBatch.Mode.PIPELINED)
+                .add("ATI").add("AT+CFUN=1,0").add("AT+CSQ")
+                .execute();
+
+        assertEquals(3, commandLinesSent());
+        assertTrue(responses.get(0).getLines().contains("ZTE MF710"));
+        assertTrue(responses.get(1).isError());
+        assertTrue(responses.get(2).getLines().contains("+CSQ: 20,99"));
+        assertTrue(channel.sendCommand("AT").isOk());
+    }
+}
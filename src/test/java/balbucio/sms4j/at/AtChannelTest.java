@@ -2,18 +2,24 @@ package balbucio.sms4j.at;
 
 import balbucio.sms4j.serial.FakeSerialPortAccess;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -40,6 +46,15 @@ public class AtChannelTest {
         executor = Executors.newSingleThreadExecutor();
     }
 
+    @After
+    public void tearDown() throws Exception {
+        atChannel.close();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+        appWritesToModem.close();
+        modemWritesToApp.close();
+    }
+
     private void startModemResponder(String response) {
         executor.submit(() -> {
             try {
@@ -53,6 +68,17 @@ public class AtChannelTest {
         });
     }
 
+    private String readCommandLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = modemReceives.read()) >= 0 && b != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
     @Test
     public void sendCommand_returnsOk_whenModemRepliesOk() throws Exception {
         startModemResponder("\r\nOK\r\n");
@@ -94,11 +120,157 @@ public class AtChannelTest {
         assertTrue(response.getLines().stream().anyMatch(l -> l.contains("+FOO:")));
     }
 
-    @org.junit.After
-    public void tearDown() throws Exception {
-        executor.shutdown();
-        executor.awaitTermination(2, TimeUnit.SECONDS);
-        appWritesToModem.close();
+    @Test
+    public void sendCommand_routesUrcToListener_insteadOfResponse() throws Exception {
+        List<Urc> urcs = new CopyOnWriteArrayList<>();
+        atChannel.addUrcListener(urcs::add);
+        startModemResponder("\r\n+CSQ: 20,99\r\n+CMTI: \"SM\",3\r\nOK\r\n");
+
+        AtResponse response = atChannel.sendCommand("AT+CSQ");
+
+        assertTrue(response.isOk());
+        assertEquals(List.of("+CSQ: 20,99", "OK"), response.getLines());
+        assertEquals(1, urcs.size());
+        assertEquals("+CMTI", urcs.get(0).getName());
+        assertEquals("\"SM\",3", urcs.get(0).getArguments());
+    }
+
+    @Test
+    public void sendCommand_keepsOwnCodeAsResponse() throws Exception {
+        List<Urc> urcs = new CopyOnWriteArrayList<>();
+        atChannel.addUrcListener(urcs::add);
+        startModemResponder("\r\n+CREG: 0,1\r\nOK\r\n");
+
+        AtResponse response = atChannel.sendCommand("AT+CREG?");
+
+        assertTrue(response.getLines().contains("+CREG: 0,1"));
+        assertTrue(urcs.isEmpty());
+    }
+
+    @Test
+    public void urcWithDataLine_isDeliveredWhileIdle() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        List<Urc> urcs = new CopyOnWriteArrayList<>();
+        atChannel.addUrcListener(urc -> {
+            urcs.add(urc);
+            received.countDown();
+        });
+
+        modemWritesToApp.write("\r\n+CMT: ,24\r\n07915892000000F0\r\n".getBytes(StandardCharsets.US_ASCII));
+        modemWritesToApp.flush();
+
+        assertTrue(received.await(2, TimeUnit.SECONDS));
+        assertEquals("+CMT", urcs.get(0).getName());
+        assertEquals("07915892000000F0", urcs.get(0).getData());
+    }
+
+    @Test
+    public void sendCommandWithPayload_sendsPayloadAfterPrompt() throws Exception {
+        executor.submit(() -> {
+            try {
+                byte[] buf = new byte[256];
+                modemReceives.read(buf);
+                modemWritesToApp.write("\r\n> ".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+                modemReceives.read(buf);
+                modemWritesToApp.write("\r\n+CMGS: 42\r\n\r\nOK\r\n".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        AtResponse response = atChannel.sendCommandWithPayload("AT+CMGS=\"+5511999999999\"",
+                new byte[] {'h', 'i', 0x1A}, 2000);
+
+        assertTrue(response.isOk());
+        assertTrue(response.getLines().contains("+CMGS: 42"));
+    }
+
+    @Test
+    public void getConsecutiveFailures_countsSilentTimeouts_andResetsOnAnswer() throws Exception {
+        atChannel.sendCommand("AT", 50);
+        atChannel.sendCommand("AT", 50);
+        assertEquals(2, atChannel.getConsecutiveFailures());
+
+        modemReceives.skip(modemReceives.available());
+        executor.submit(() -> {
+            try {
+                // The bare AT that resyncs the channel after the timeouts, then the command
+                readCommandLine();
+                modemWritesToApp.write("\r\nOK\r\n".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+                readCommandLine();
+                modemWritesToApp.write("\r\nERROR\r\n".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        atChannel.sendCommand("AT+CMGF=9", 2000);
+
+        assertEquals(0, atChannel.getConsecutiveFailures());
+    }
+
+    @Test
+    public void setDisconnectListener_runs_whenInputEnds() throws Exception {
+        CountDownLatch lost = new CountDownLatch(1);
+        atChannel.setDisconnectListener(lost::countDown);
+        atChannel.addUrcListener(urc -> { });
+        assertFalse(atChannel.isDisconnected());
+
         modemWritesToApp.close();
+
+        assertTrue(lost.await(2, TimeUnit.SECONDS));
+        assertTrue(atChannel.isDisconnected());
+        assertEquals(AtResponse.Status.ERROR, atChannel.sendCommand("AT", 100).getStatus());
+    }
+
+    @Test
+    public void sendCommand_ignoresLateAnswer_toCommandThatTimedOut() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        executor.submit(() -> {
+            try {
+                received.add(readCommandLine());
+                // The late answer to the first command arrives only after the next line was written
+                received.add(readCommandLine());
+                modemWritesToApp.write("\r\n+CSQ: 1,1\r\nOK\r\n\r\nOK\r\n".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+                received.add(readCommandLine());
+                modemWritesToApp.write("\r\n+CSQ: 20,99\r\nOK\r\n".getBytes(StandardCharsets.US_ASCII));
+                modemWritesToApp.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertTrue(atChannel.sendCommand("AT+CSQ", 100).isError());
+        AtResponse response = atChannel.sendCommand("AT+CSQ", 2000);
+
+        assertEquals(List.of("+CSQ: 20,99", "OK"), response.getLines());
+        assertEquals(List.of("AT+CSQ", "AT", "AT+CSQ"), received);
+    }
+
+    @Test
+    public void sendCommand_marksDisconnected_whenWriteFails() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Device not configured");
+            }
+        };
+        AtChannel channel = new AtChannel(new FakeSerialPortAccess(appReadsFromModem, broken));
+        CountDownLatch lost = new CountDownLatch(1);
+        channel.setDisconnectListener(lost::countDown);
+        try {
+            AtResponse response = channel.sendCommand("AT", 2000);
+
+            assertTrue(response.isError());
+            assertTrue(response.getLines().contains("IOException: Device not configured"));
+            assertTrue(channel.isDisconnected());
+            assertTrue(lost.await(2, TimeUnit.SECONDS));
+        } finally {
+            channel.close();
+        }
     }
 }
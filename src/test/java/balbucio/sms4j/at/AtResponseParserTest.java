@@ -0,0 +1,124 @@
+package balbucio.sms4j.at;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AtResponseParserTest {
+
+    private static final long FAR = AtResponseParser.NO_DEADLINE;
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Returns at most one byte per read, like a slow serial line. */
+    private static InputStream trickle(String s) {
+        InputStream in = stream(s);
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return in.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    @Test
+    public void next_skipsBlankLinesAndTrims() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        InputStream in = stream("\r\n\r\n  +FOO: 1,2  \r\nOK\r\n");
+
+        assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+        assertEquals("+FOO: 1,2", parser.lineString());
+        assertEquals(AtResponseParser.LineType.INTERMEDIATE, parser.lineType());
+
+        assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+        assertEquals(AtResponseParser.LineType.OK, parser.lineType());
+        assertEquals(AtResponseParser.Event.EOF, parser.next(in, FAR));
+    }
+
+    @Test
+    public void lineType_classifiesFinalResultCodes() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        InputStream in = trickle("ok\r\nERROR\r\n+CME ERROR: 10\r\n+cms error: 500\r\nCommand unknown\r\nOKAY\r\n");
+
+        AtResponseParser.LineType[] expected = {
+                AtResponseParser.LineType.OK,
+                AtResponseParser.LineType.ERROR,
+                AtResponseParser.LineType.ERROR,
+                AtResponseParser.LineType.ERROR,
+                AtResponseParser.LineType.UNKNOWN,
+                AtResponseParser.LineType.INTERMEDIATE
+        };
+        for (AtResponseParser.LineType type : expected) {
+            assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+            assertEquals(type, parser.lineType());
+        }
+    }
+
+    @Test
+    public void next_reportsPromptOnlyWhenExpected() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        InputStream in = stream("\r\n> +CMGS: 7\r\n\r\nOK\r\n");
+
+        parser.setPromptExpected(true);
+        assertEquals(AtResponseParser.Event.PROMPT, parser.next(in, FAR));
+        assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+        assertEquals("+CMGS: 7", parser.lineString());
+        assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+        assertEquals(AtResponseParser.LineType.OK, parser.lineType());
+    }
+
+    @Test
+    public void drainPartialLine_returnsUnterminatedData() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        InputStream in = stream("+PARTIAL");
+
+        assertEquals(AtResponseParser.Event.EOF, parser.next(in, FAR));
+        assertEquals("+PARTIAL", parser.drainPartialLine());
+        assertNull(parser.drainPartialLine());
+    }
+
+    @Test
+    public void next_growsLineBufferForLongLines() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        String longLine = "+DATA: " + "A".repeat(1000);
+        InputStream in = stream(longLine + "\r\n");
+
+        assertEquals(AtResponseParser.Event.LINE, parser.next(in, FAR));
+        assertEquals(longLine, parser.lineString());
+    }
+
+    @Test
+    public void next_returnsTimeout_whenReadSlicesExpirePastDeadline() throws IOException {
+        AtResponseParser parser = new AtResponseParser();
+        InputStream silent = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new InterruptedIOException("slice");
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                throw new InterruptedIOException("slice");
+            }
+        };
+        long start = System.nanoTime();
+
+        assertEquals(AtResponseParser.Event.TIMEOUT, parser.next(silent, start + 20_000_000L));
+        assertTrue(System.nanoTime() - start >= 20_000_000L);
+    }
+}
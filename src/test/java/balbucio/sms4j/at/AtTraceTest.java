@@ -0,0 +1,87 @@
+package balbucio.sms4j.at;
+
+import balbucio.sms4j.Sms4j;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AtTraceTest {
+
+    @Test
+    public void dump_keepsNewestFrames_whenFull() {
+        AtTrace trace = new AtTrace(2, 4);
+        byte[] bytes = "AT\r\nOK\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        trace.record(AtTrace.Direction.TX, bytes, 0, 4);
+        trace.record(AtTrace.Direction.RX, bytes, 4, 4);
+        trace.record(AtTrace.Direction.TX, new byte[] {'A', 'T', 0x1A}, 0, 3);
+
+        String[] lines = trace.dump().split("\n");
+        assertEquals(2, trace.size());
+        assertEquals(2, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" RX OK<CR><LF>"));
+        assertTrue(lines[1], lines[1].endsWith(" TX AT<SUB>"));
+    }
+
+    @Test
+    public void dump_splitsLongWritesIntoFrames() {
+        AtTrace trace = new AtTrace(8, 4);
+        byte[] bytes = "AT+CMGF=0".getBytes(StandardCharsets.US_ASCII);
+
+        trace.record(AtTrace.Direction.TX, bytes, 0, bytes.length);
+
+        assertEquals(3, trace.size());
+        trace.clear();
+        assertEquals("", trace.dump());
+    }
+
+    @Test
+    public void sms4j_startsTracing_whileOpen() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        AtTrace trace = new AtTrace();
+        Sms4j modem = new Sms4j("SIM", null, null, name -> sim);
+        try {
+            modem.open();
+            modem.setTrace(trace);
+            assertTrue(modem.sendSms("+5511999999999", "traced").isSuccess());
+        } finally {
+            modem.close();
+            sim.close();
+        }
+
+        assertTrue(trace.dump(), trace.dump().contains(" TX AT+CMGS="));
+    }
+
+    @Test
+    public void sms4j_dumpsTrace_whenSendFails() throws Exception {
+        ModemSimulator sim = new ModemSimulator();
+        AtTrace trace = new AtTrace();
+        AtomicReference<String> dumped = new AtomicReference<>();
+        Sms4j modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setTrace(trace, dumped::set);
+        try {
+            modem.open();
+            assertTrue(modem.sendSms("+5511999999999", "ok").isSuccess());
+            assertNull(dumped.get());
+
+            sim.failNext("AT+CMGS", 1, "+CMS ERROR: 500");
+            assertFalse(modem.sendSms("+5511999999999", "fails").isSuccess());
+        } finally {
+            modem.close();
+            sim.close();
+        }
+
+        assertNotNull(dumped.get());
+        assertTrue(dumped.get(), dumped.get().startsWith("Send to +5511999999999 failed on SIM"));
+        assertTrue(dumped.get(), dumped.get().contains(" RX <CR><LF>+CMS ERROR: 500<CR><LF>"));
+    }
+}
@@ -0,0 +1,92 @@
+package balbucio.sms4j.metrics;
+
+import balbucio.sms4j.Sms4j;
+import balbucio.sms4j.at.AtChannel;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRecorderTest {
+
+    private final ModemSimulator sim = new ModemSimulator();
+
+    @After
+    public void tearDown() {
+        sim.close();
+    }
+
+    @Test
+    public void histogram_percentiles_withinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(50, snapshot.percentileMs(50), 50 * 0.125);
+        assertEquals(99, snapshot.percentileMs(99), 99 * 0.125);
+        assertTrue(snapshot.maxMs() >= 100);
+        assertEquals(50.5, snapshot.meanMs(), 50.5 * 0.125);
+    }
+
+    @Test
+    public void histogram_indexAndLowerBound_agree() {
+        for (long micros : new long[] {0, 7, 8, 9, 15, 16, 1_000, 123_456, 1L << 39}) {
+            int index = Histogram.indexOf(micros);
+            assertTrue(micros + " below bucket", Histogram.lowerBound(index) <= micros);
+            assertTrue(micros + " above bucket", Histogram.lowerBound(index + 1) > micros);
+        }
+    }
+
+    @Test
+    public void sms4j_recordsCommandsAndSends() throws Exception {
+        MetricsRecorder recorder = new MetricsRecorder();
+        Sms4j modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setMetrics(recorder);
+        modem.open();
+        try {
+            assertTrue(modem.sendSms("+5511999999999", "Hello").isSuccess());
+            sim.failNext("AT+CMGS", 1, "+CMS ERROR: 500");
+            modem.sendSms("+5511999999999", "Again");
+        } finally {
+            modem.close();
+        }
+
+        MetricsSnapshot snapshot = recorder.snapshot();
+        CommandStats cmgs = snapshot.getCommand("AT+CMGS");
+        assertNotNull(snapshot.getCommands().keySet().toString(), cmgs);
+        assertEquals(2, cmgs.getCount());
+        assertEquals(1, cmgs.getErrors());
+        assertEquals(2, cmgs.getPrompt().getCount());
+        assertEquals(2, cmgs.getFirstByte().getCount());
+        assertTrue(cmgs.getBytesIn() > 0);
+        assertTrue(cmgs.getBytesOut() > 0);
+        assertNotNull(snapshot.getCommand("AT"));
+        assertEquals(1, snapshot.getSendsSucceeded());
+        assertEquals(1, snapshot.getSendsFailed());
+        assertEquals(0.5, snapshot.getSendSuccessRate(), 1e-9);
+    }
+
+    @Test
+    public void atChannel_countsTimeouts_whenModemSilent() {
+        MetricsRecorder recorder = new MetricsRecorder();
+        AtChannel channel = new AtChannel(sim);
+        channel.setMetrics(recorder);
+        sim.setEcho(false);
+        sim.failNext("AT+CSQ", 1, null);
+
+        channel.sendCommand("AT+CSQ", 100);
+        channel.close();
+
+        CommandStats csq = recorder.snapshot().getCommand("AT+CSQ");
+        assertEquals(1, csq.getTimeouts());
+        assertEquals(0, csq.getFirstByte().getCount());
+    }
+}
@@ -0,0 +1,102 @@
+package balbucio.sms4j.modem;
+
+import balbucio.sms4j.Sms4j;
+import balbucio.sms4j.at.AtResponse;
+import balbucio.sms4j.metrics.CommandStats;
+import balbucio.sms4j.metrics.MetricsRecorder;
+import balbucio.sms4j.sim.ModemSimulator;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModemProfileTest {
+
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    private Sms4j modem;
+    private String imei = "861000000000001";
+    private Consumer<ModemSimulator> setup = sim -> { };
+
+    @After
+    public void tearDown() {
+        if (modem != null) {
+            modem.close();
+        }
+    }
+
+    private void openModem() throws Exception {
+        modem = new Sms4j("SIM", null, null, name -> {
+            ModemSimulator sim = new ModemSimulator();
+            sim.setImei(imei);
+            setup.accept(sim);
+            return sim;
+        });
+        modem.setMetrics(metrics);
+        modem.open();
+    }
+
+    private long count(String command) {
+        CommandStats stats = metrics.snapshot().getCommand(command);
+        return stats == null ? 0 : stats.getCount();
+    }
+
+    @Test
+    public void open_resumesFromProfile_whenSameModemReopened() throws Exception {
+        openModem();
+        modem.close();
+        long cgsn = count("AT+CGSN");
+        long cfun = count("AT+CFUN");
+        long cmee = count("AT+CMEE");
+
+        modem.open();
+
+        assertEquals(1, count("ATI"));
+        assertEquals(cgsn + 1, count("AT+CGSN"));
+        assertEquals(cfun + 1, count("AT+CFUN"));
+        // A fresh modem lost CMEE=2, so only that is sent again after the query
+        assertEquals(cmee + 2, count("AT+CMEE"));
+        assertTrue(modem.sendSms("+5511999999999", "back").isSuccess());
+    }
+
+    @Test
+    public void open_probesFromScratch_whenImeiChanged() throws Exception {
+        openModem();
+        modem.close();
+        imei = "861000000000002";
+
+        modem.open();
+
+        assertEquals(2, count("ATI"));
+        assertTrue(modem.sendSms("+5511999999999", "new modem").isSuccess());
+    }
+
+    @Test
+    public void open_skipsCmee_whenProfileSaysUnsupported() throws Exception {
+        setup = sim -> sim.respond("AT+CMEE=2", "ERROR");
+        openModem();
+        modem.close();
+        long cgsn = count("AT+CGSN");
+        long cmee = count("AT+CMEE");
+
+        modem.open();
+
+        assertEquals(1, count("ATI"));
+        assertEquals(cgsn + 1, count("AT+CGSN"));
+        assertEquals(cmee, count("AT+CMEE"));
+    }
+
+    @Test
+    public void parseImei_acceptsBareAndPrefixedAnswers() {
+        assertEquals("861000000000001", ModemProfile.parseImei(
+                new AtResponse(AtResponse.Status.OK, List.of("AT+CGSN", "861000000000001", "OK"))));
+        assertEquals("861000000000001", ModemProfile.parseImei(
+                new AtResponse(AtResponse.Status.OK, List.of("+CGSN: \"861000000000001\"", "OK"))));
+        assertNull(ModemProfile.parseImei(new AtResponse(AtResponse.Status.ERROR, List.of("ERROR"))));
+    }
+}
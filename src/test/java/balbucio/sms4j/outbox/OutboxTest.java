@@ -0,0 +1,87 @@
+package balbucio.sms4j.outbox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+
+    private Path directory;
+    private Outbox outbox;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sms4j-outbox");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (outbox != null) {
+            outbox.close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void pending_survivesReopen_whenNotMarked() throws Exception {
+        outbox = Outbox.open(directory);
+        long first = outbox.append("+5511999999999", "olá");
+        long second = outbox.append("+5511888888888", "second");
+        outbox.markSent(first);
+        outbox.close();
+
+        outbox = Outbox.open(directory);
+        List<OutboxEntry> pending = outbox.pending();
+        assertEquals(1, pending.size());
+        assertEquals(second, pending.get(0).getId());
+        assertEquals("+5511888888888", pending.get(0).getPhoneNumber());
+        assertEquals("second", pending.get(0).getMessage());
+        assertTrue(outbox.append("+5511777777777", "third") > second);
+    }
+
+    @Test
+    public void compact_keepsOnlyPending_andSwitchesJournal() throws Exception {
+        outbox = Outbox.open(directory);
+        for (int i = 0; i < 100; i++) {
+            long id = outbox.append("+5511999999999", "message " + i);
+            if (i % 10 != 0) {
+                outbox.markFailed(id);
+            }
+        }
+        outbox.compact();
+        outbox.append("+5511999999999", "after compaction");
+        outbox.close();
+
+        outbox = Outbox.open(directory);
+        List<OutboxEntry> pending = outbox.pending();
+        assertEquals(11, pending.size());
+        assertEquals("message 0", pending.get(0).getMessage());
+        assertEquals("after compaction", pending.get(10).getMessage());
+    }
+
+    @Test
+    public void append_growsJournal_whenMappingIsFull() throws Exception {
+        outbox = Outbox.open(directory);
+        String body = "x".repeat(10_000);
+        for (int i = 0; i < 200; i++) {
+            outbox.append("+5511999999999", body);
+        }
+        outbox.sync();
+        outbox.close();
+
+        outbox = Outbox.open(directory);
+        assertEquals(200, outbox.size());
+    }
+}
@@ -0,0 +1,46 @@
+package balbucio.sms4j.pdu;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GsmAlphabetTest {
+
+    @Test
+    public void pack_matchesReferenceVector() {
+        byte[] septets = GsmAlphabet.toSeptets("hellohello", 0, 10);
+
+        byte[] packed = GsmAlphabet.pack(septets, 0, septets.length, 0);
+
+        assertEquals("E8329BFD4697D9EC37", Hex.encode(packed, 0, packed.length));
+    }
+
+    @Test
+    public void unpack_reversesPack_withFillBits() {
+        String text = "Olà {mundo} €5 @ ÄÖÜ";
+        byte[] septets = GsmAlphabet.toSeptets(text, 0, text.length());
+
+        byte[] packed = GsmAlphabet.pack(septets, 0, septets.length, 1);
+        byte[] unpacked = GsmAlphabet.unpack(packed, 0, septets.length, 1);
+
+        assertArrayEquals(septets, unpacked);
+        assertEquals(text, GsmAlphabet.fromSeptets(unpacked, 0, unpacked.length));
+    }
+
+    @Test
+    public void septetCount_countsExtensionCharactersTwice() {
+        assertEquals(3, GsmAlphabet.septetCount("abc"));
+        assertEquals(6, GsmAlphabet.septetCount("{€}"));
+        assertEquals(-1, GsmAlphabet.septetCount("Привет"));
+    }
+
+    @Test
+    public void canEncode_rejectsCharactersOutsideTables() {
+        assertTrue(GsmAlphabet.canEncode("Ñoño ¿qué?"));
+        assertFalse(GsmAlphabet.canEncode("ção"));
+        assertFalse(GsmAlphabet.canEncode("😀"));
+    }
+}
@@ -0,0 +1,161 @@
+package balbucio.sms4j.pdu;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PduCodecTest {
+
+    @Test
+    public void encodeSubmit_gsm7_matchesReferencePdu() {
+        SubmitPdu pdu = PduEncoder.encodeSubmit("+46708251358", "hellohello");
+
+        assertEquals("0011000B916407281553F80000AA0AE8329BFD4697D9EC37", pdu.getHex());
+        assertEquals(23, pdu.getTpduLength());
+        assertEquals(DataCoding.GSM_7BIT, pdu.getDataCoding());
+    }
+
+    @Test
+    public void encodeSubmit_fallsBackToUcs2() {
+        SubmitPdu pdu = PduEncoder.encodeSubmit("5511999999999", "ção");
+
+        assertEquals(DataCoding.UCS2, pdu.getDataCoding());
+        // ... TOA 81, PID 00, DCS 08, VP AA, UDL 06, then UTF-16BE
+        assertEquals("0011000D81551199999999F90008AA0600E700E3006F", pdu.getHex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeSubmit_rejectsTooLongText() {
+        PduEncoder.encodeSubmit("+5511999999999", "x".repeat(161));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeSubmit_rejectsNonDigitNumber() {
+        PduEncoder.encodeSubmit("+55-11", "hi");
+    }
+
+    @Test
+    public void encodeSubmitParts_singleSegment_hasNoHeader() {
+        List<SubmitPdu> parts = PduEncoder.encodeSubmitParts("+46708251358", "hellohello", 7, false);
+
+        assertEquals(1, parts.size());
+        assertEquals("0011000B916407281553F80000AA0AE8329BFD4697D9EC37", parts.get(0).getHex());
+    }
+
+    @Test
+    public void encodeSubmitParts_gsm7_splitsAt153SeptetsWithConcatHeader() {
+        String text = "a".repeat(200);
+
+        List<SubmitPdu> parts = PduEncoder.encodeSubmitParts("+46708251358", text, 0x2A, false);
+
+        assertEquals(2, parts.size());
+        assertEquals(2, PduEncoder.segmentCount(text));
+        // First octet with UDHI, UDL = 7 header septets + 153, UDH = concat 8-bit ref 0x2A, part 1 of 2
+        assertTrue(parts.get(0).getHex().startsWith("0051000B916407281553F80000AAA00500032A0201"));
+        assertEquals(14 + 140, parts.get(0).getTpduLength());
+        // UDL = 7 + 47 remaining septets
+        assertTrue(parts.get(1).getHex().startsWith("0051000B916407281553F80000AA360500032A0202"));
+    }
+
+    @Test
+    public void encodeSubmitParts_ucs2_keepsSurrogatePairsTogether() {
+        String text = "ç" + "😀".repeat(40);
+
+        List<SubmitPdu> parts = PduEncoder.encodeSubmitParts("+5511999999999", text, 1, true);
+
+        assertEquals(2, parts.size());
+        // 66 code units per segment with a 16-bit reference: "ç" + 32 emoji = 65 units, the 33rd would split a pair
+        String firstHex = parts.get(0).getHex();
+        assertTrue(firstHex.contains("0608040001020100E7"));
+        assertEquals(DataCoding.UCS2, parts.get(0).getDataCoding());
+        assertEquals(15 + 7 + 65 * 2, parts.get(0).getTpduLength());
+    }
+
+    @Test
+    public void segmentCount_escapesCountDouble() {
+        assertEquals(1, PduEncoder.segmentCount("€".repeat(80)));
+        assertEquals(2, PduEncoder.segmentCount("€".repeat(81)));
+        assertEquals(1, PduEncoder.segmentCount("ç".repeat(70)));
+        assertEquals(2, PduEncoder.segmentCount("ç".repeat(71)));
+    }
+
+    @Test
+    public void decodeDeliver_gsm7() {
+        DeliverPdu pdu = PduDecoder.decodeDeliver(
+                "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37");
+
+        assertEquals("+27381000015", pdu.getServiceCenter());
+        assertEquals("27838890001", pdu.getOriginator());
+        assertEquals("hellohello", pdu.getText());
+        assertEquals(DataCoding.GSM_7BIT, pdu.getDataCoding());
+        assertEquals(3, pdu.getTimestamp().getMonthValue());
+        assertEquals(29, pdu.getTimestamp().getDayOfMonth());
+        assertEquals(2 * 3600, pdu.getTimestamp().getOffset().getTotalSeconds());
+        assertNull(pdu.getUserDataHeader());
+    }
+
+    @Test
+    public void decodeDeliver_ucs2FromInternationalSender() {
+        DeliverPdu pdu = PduDecoder.decodeDeliver(
+                "0791551010010201040D91551199999999F9000842103021000000060041004200C7");
+
+        assertEquals("+5511999999999", pdu.getOriginator());
+        assertEquals(DataCoding.UCS2, pdu.getDataCoding());
+        assertEquals("ABÇ", pdu.getText());
+        assertEquals(2024, pdu.getTimestamp().getYear());
+    }
+
+    @Test
+    public void decodeDeliver_throwsIllegalArgument_whenTimestampMalformed() {
+        String[] timestamps = {
+                "42313021000000",  // month 13
+                "42F03021000000",  // BCD nibble 0xF
+                "421030210000FF"}; // zone beyond 18 h
+        for (String timestamp : timestamps) {
+            try {
+                PduDecoder.decodeDeliver("0791551010010201040D91551199999999F90008" + timestamp
+                        + "060041004200C7");
+                fail("expected " + timestamp + " to be rejected");
+            } catch (IllegalArgumentException expected) {
+                // Callers skip the message on IllegalArgumentException
+            }
+        }
+    }
+
+    @Test
+    public void decodeDeliver_throwsIllegalArgument_whenUserDataLengthShorterThanHeader() {
+        try {
+            // UDHI set and a 6-octet concatenation header (7 septets), but UDL says 3 septets
+            PduDecoder.decodeDeliver("07917283010010F5440BC87238880900F10000993092516195800305"
+                    + "00032A0201E8329B");
+            fail("expected a UDL shorter than the header to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Callers skip the message on IllegalArgumentException
+        }
+    }
+
+    @Test
+    public void encodeSubmitParts_setsStatusReportRequest_whenAsked() {
+        List<SubmitPdu> parts = PduEncoder.encodeSubmitParts("+46708251358", "hellohello", 1, false, true);
+
+        assertEquals("0031000B916407281553F80000AA0AE8329BFD4697D9EC37", parts.get(0).getHex());
+    }
+
+    @Test
+    public void decodeStatusReport_readsReferenceRecipientAndStatus() {
+        StatusReportPdu report = PduDecoder.decodeStatusReport(
+                "00062A0D91551199999999F9" + "42103021000000" + "42103021501000" + "00");
+
+        assertEquals(42, report.getMessageReference());
+        assertEquals("+5511999999999", report.getRecipient());
+        assertEquals(5, report.getDischargeTime().getMinute());
+        assertEquals(1, report.getDischargeTime().getSecond());
+        assertTrue(report.isDelivered());
+        assertTrue(report.isFinal());
+    }
+}
@@ -25,9 +25,4 @@ public final class FakeSerialPortAccess implements SerialPortAccess {
     public OutputStream getOutputStream() {
         return outputStream;
     }
-
-    @Override
-    public void setReadTimeoutMs(int timeoutMs) {
-        // no-op for test
-    }
 }
@@ -0,0 +1,147 @@
+package balbucio.sms4j.sim;
+
+import balbucio.sms4j.Backpressure;
+import balbucio.sms4j.DeliveryStatus;
+import balbucio.sms4j.IncomingSms;
+import balbucio.sms4j.Sms4j;
+import balbucio.sms4j.SmsSendResult;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModemSimulatorTest {
+
+    private final ModemSimulator sim = new ModemSimulator();
+    private Sms4j modem;
+
+    @After
+    public void tearDown() {
+        if (modem != null) {
+            modem.close();
+        }
+        sim.close();
+    }
+
+    private Sms4j openModem() throws Exception {
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.open();
+        return modem;
+    }
+
+    @Test
+    public void sendSms_succeeds_throughAutoDetectedDriver() throws Exception {
+        openModem();
+
+        SmsSendResult result = modem.sendSms("+5511999999999", "Hello");
+
+        assertTrue(result.getErrorMessage(), result.isSuccess());
+        assertNotNull(result.getMessageRef());
+        assertEquals(1, sim.getSubmittedCount());
+    }
+
+    @Test
+    public void sendSmsAsync_sustainsThousandsOfMessages() throws Exception {
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setBackpressure(Backpressure.BLOCK);
+        modem.open();
+        int count = 2_000;
+
+        List<CompletableFuture<SmsSendResult>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(modem.sendSmsAsync("+5511999999999", "load " + i));
+        }
+        for (CompletableFuture<SmsSendResult> future : futures) {
+            assertTrue(future.get(30, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(count, sim.getSubmittedCount());
+    }
+
+    @Test
+    public void sendSms_fails_whenErrorInjected() throws Exception {
+        openModem();
+        sim.failNext("AT+CMGS", 1, "+CMS ERROR: 500");
+
+        assertFalse(modem.sendSms("+5511999999999", "first").isSuccess());
+        assertTrue(modem.sendSms("+5511999999999", "second").isSuccess());
+    }
+
+    @Test
+    public void deliveryStatus_completes_fromSimulatedStatusReport() throws Exception {
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.setDeliveryReports(true);
+        modem.open();
+
+        SmsSendResult result = modem.sendSms("+5511999999999", "tracked");
+
+        DeliveryStatus status = result.getDeliveryStatus().get(5, TimeUnit.SECONDS);
+        assertTrue(status.isDelivered());
+        assertEquals(1, modem.getStats().getDelivered());
+    }
+
+    @Test
+    public void onIncoming_receivesDirectAndStoredMessages() throws Exception {
+        String pdu = "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37";
+        BlockingQueue<IncomingSms> received = new LinkedBlockingQueue<>();
+        sim.respond("AT+CNMI=2,2,0,0,0", "ERROR");
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.onIncoming(received::add);
+        modem.open();
+
+        sim.receivePdu(pdu);
+
+        assertEquals("hellohello", received.poll(5, TimeUnit.SECONDS).getText());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sim.getStoredCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sim.getStoredCount());
+    }
+
+    @Test
+    public void onIncoming_deletesStoredMessages_whenOneIsMalformed() throws Exception {
+        String good = "07917283010010F5040BC87238880900F10000993092516195800AE8329BFD4697D9EC37";
+        // Same message with month 13 in the timestamp
+        String bad = "07917283010010F5040BC87238880900F10000993192516195800AE8329BFD4697D9EC37";
+        BlockingQueue<IncomingSms> received = new LinkedBlockingQueue<>();
+        sim.respond("AT+CNMI=2,2,0,0,0", "ERROR");
+        modem = new Sms4j("SIM", null, null, name -> sim);
+        modem.onIncoming(received::add);
+        modem.open();
+
+        sim.receivePdu(bad);
+        sim.receivePdu(good);
+
+        assertEquals("hellohello", received.poll(5, TimeUnit.SECONDS).getText());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sim.getStoredCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, sim.getStoredCount());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void baudRate_throttlesResponses() throws Exception {
+        openModem();
+        sim.setBaudRate(9_600);
+
+        long start = System.nanoTime();
+        modem.sendSms("+5511999999999", "x".repeat(150));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // About 170 bytes up and 30 down at 960 bytes/s
+        assertTrue("elapsed " + elapsedMs, elapsedMs >= 150);
+    }
+}